@@ -5,6 +5,7 @@ import com.badlogic.gdx.utils.TimeUtils;
 
 import java.text.Normalizer;
 
+import emu.joric.AudioClockPacer;
 import emu.joric.JOricRunner;
 import emu.joric.KeyboardMatrix;
 import emu.joric.Machine;
@@ -12,10 +13,14 @@ import emu.joric.MachineType;
 import emu.joric.PixelData;
 import emu.joric.Program;
 import emu.joric.RomConfig;
+import emu.joric.VsyncPacer;
 import emu.joric.config.AppConfigItem;
 import emu.joric.cpu.Cpu6502;
 import emu.joric.memory.RamType;
 import emu.joric.sound.AYPSG;
+import emu.joric.video.FrameScaler;
+import emu.joric.video.PipelinedRasteriser;
+import emu.joric.video.ThreadedFrameScaler;
 
 public class AndroidJOricRunner extends JOricRunner {
 
@@ -23,6 +28,9 @@ public class AndroidJOricRunner extends JOricRunner {
 
     private Machine machine;
 
+    private AudioClockPacer audioClockPacer;
+    private VsyncPacer vsyncPacer;
+
     /**
      * Constructor for AndroidJOricRunner.
      *
@@ -32,6 +40,8 @@ public class AndroidJOricRunner extends JOricRunner {
      */
     public AndroidJOricRunner(KeyboardMatrix keyboardMatrix, PixelData pixelData, AYPSG psg) {
         super(keyboardMatrix, pixelData, psg);
+        this.audioClockPacer = new AudioClockPacer(psg);
+        this.vsyncPacer = new VsyncPacer(psg);
     }
 
     @Override
@@ -71,6 +81,18 @@ public class AndroidJOricRunner extends JOricRunner {
                 MachineType.valueOf(appConfigItem.getMachineType()),
                 RamType.valueOf(appConfigItem.getRam()));
 
+        // The cycle-stepped CPU is too slow on low end Android devices, so we step
+        // the CPU an instruction at a time instead.
+        machine.setInstructionStepped(true);
+
+        // If there is a spare core, then the pixels are rasterised on a separate thread.
+        PipelinedRasteriser rasteriser = null;
+        if (PipelinedRasteriser.isWorthwhile()) {
+            rasteriser = new PipelinedRasteriser(pixelData);
+            rasteriser.start();
+            machine.setRasteriser(rasteriser);
+        }
+
         long lastTime = TimeUtils.nanoTime();
 
         while (true) {
@@ -93,22 +115,41 @@ public class AndroidJOricRunner extends JOricRunner {
 
             if (exit) {
                 // Returning from the method will stop the thread cleanly.
+                if (rasteriser != null) {
+                    rasteriser.stop();
+                }
                 pixelData.clearPixels();
                 break;
             }
 
             // Updates the Machine's state for a frame.
-            machine.update(warpSpeed);
+            machine.setWarpSpeed(warpSpeed);
+            machine.runFrame();
+
+            boolean vsyncPaced = false;
+            if (!warpSpeed && isVsyncPacing() && vsyncPacer.isDisplaySynced()) {
+                // One frame per display refresh, with the audio resampled to match.
+                vsyncPacer.updateAudioRate();
+                vsyncPaced = vsyncPacer.waitForFrame();
+            }
 
-            if (!warpSpeed) {
-                // Throttle at expected FPS. Note that the PSG naturally throttles at 50 FPS
-                // without the yield.
-                while (TimeUtils.nanoTime() - lastTime <= 0L) {
-                    Thread.yield();
-                }
-                lastTime += NANOS_PER_FRAME;
-            } else {
+            if (vsyncPaced) {
                 lastTime = TimeUtils.nanoTime();
+            } else {
+                vsyncPacer.resetAudioRate();
+
+                // The frame length is adjusted to keep pace with the audio output's clock.
+                long frameNanos = audioClockPacer.getFrameNanos(NANOS_PER_FRAME);
+
+                if (!warpSpeed && (frameNanos > 0)) {
+                    // Throttle at expected FPS.
+                    while (TimeUtils.nanoTime() - lastTime <= 0L) {
+                        Thread.yield();
+                    }
+                    lastTime += frameNanos;
+                } else {
+                    lastTime = TimeUtils.nanoTime();
+                }
             }
         }
 
@@ -136,6 +177,11 @@ public class AndroidJOricRunner extends JOricRunner {
         }
     }
 
+    @Override
+    public void displayRefreshed() {
+        vsyncPacer.refresh();
+    }
+
     @Override
     public void reset() {
         exit = false;
@@ -148,6 +194,11 @@ public class AndroidJOricRunner extends JOricRunner {
         return ((machineThread != null) && !machineThread.isAlive());
     }
 
+    @Override
+    public FrameScaler createFrameScaler(int width, int height, int scale) {
+        return new ThreadedFrameScaler(pixelData, width, height, scale);
+    }
+
     @Override
     public boolean hasTouchScreen() {
         // We assume this for Android.
@@ -20,6 +20,9 @@ import java.util.HashMap;
 import java.util.Map;
 
 import emu.joric.JOric;
+import emu.joric.SwapChainPixelData;
+import emu.joric.sound.AY38912PSG;
+import emu.joric.sound.RingBufferAudioSink;
 import emu.joric.ui.DialogHandler;
 import emu.joric.ui.ConfirmResponseHandler;
 import emu.joric.ui.OpenFileResponseHandler;
@@ -38,8 +41,8 @@ public class AndroidLauncher extends AndroidApplication implements DialogHandler
         configuration.useImmersiveMode = true;
         Map<String, String> argsMap = new HashMap<>();
         AndroidJOricRunner androidJOricRunner = new AndroidJOricRunner(
-                new AndroidKeyboardMatrix(), new AndroidPixelData(),
-                new AY38912PSG()
+                new AndroidKeyboardMatrix(), new SwapChainPixelData(),
+                new AY38912PSG(new RingBufferAudioSink(new AudioTrackAudioSink()))
         );
         initialize(new JOric(androidJOricRunner, this, argsMap), configuration);
         pickiT = new PickiT(this, this, this);
@@ -0,0 +1,110 @@
+package emu.joric.android;
+
+import com.badlogic.gdx.Gdx;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import emu.joric.sound.AudioSink;
+
+/**
+ * AudioSink for the Android platform, which plays the samples via an AudioTrack. The
+ * samples are written as floats, so they don't need to be converted.
+ *
+ * @author Lance Ewing
+ */
+public class AudioTrackAudioSink implements AudioSink {
+
+    private static final int SAMPLE_RATE = 44100;
+
+    // The samples are written in blocks of 10ms.
+    private static final int BLOCK_SIZE = (SAMPLE_RATE / 100);
+
+    private AudioTrack audioLine;
+
+    // The number of samples written to the AudioTrack since it was created. The
+    // AudioTrack's playback head position counts from the same point, so the
+    // difference is what is still queued. Both are allowed to wrap.
+    private volatile int samplesWritten;
+
+    @Override
+    public void open() {
+        if (audioLine != null) {
+            return;
+        }
+
+        int blockBytes = BLOCK_SIZE * 4;
+        int minOutputBufferSize = AudioTrack.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_OUT_MONO,
+                AudioFormat.ENCODING_PCM_FLOAT);
+        int audioBufferSize = (((minOutputBufferSize + blockBytes) / blockBytes) * blockBytes);
+        Gdx.app.log("AudioTrackAudioSink", String.format("audioBufferSize: %s", audioBufferSize));
+        Gdx.app.log("AudioTrackAudioSink", String.format("blockSize: %s", BLOCK_SIZE));
+
+        audioLine = new AudioTrack(AudioManager.STREAM_MUSIC, SAMPLE_RATE, AudioFormat.CHANNEL_OUT_MONO,
+                AudioFormat.ENCODING_PCM_FLOAT, audioBufferSize, AudioTrack.MODE_STREAM);
+        samplesWritten = 0;
+        audioLine.play();
+    }
+
+    @Override
+    public int getSampleRate() {
+        return SAMPLE_RATE;
+    }
+
+    @Override
+    public int getBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    @Override
+    public void writeSamples(float[] samples, int count) {
+        if (audioLine != null) {
+            int written = audioLine.write(samples, 0, count, AudioTrack.WRITE_BLOCKING);
+            if (written > 0) {
+                samplesWritten += written;
+            }
+        }
+    }
+
+    @Override
+    public int getQueuedSampleCount() {
+        AudioTrack track = audioLine;
+        if (track == null) {
+            return -1;
+        }
+        return Math.max(0, samplesWritten - track.getPlaybackHeadPosition());
+    }
+
+    @Override
+    public void pause() {
+        if (audioLine != null) {
+            audioLine.pause();
+        }
+    }
+
+    @Override
+    public void resume() {
+        if (audioLine != null) {
+            audioLine.play();
+        }
+    }
+
+    @Override
+    public boolean isPlaying() {
+        if (audioLine != null) {
+            return (audioLine.getPlayState() == AudioTrack.PLAYSTATE_PLAYING);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if (audioLine != null) {
+            audioLine.flush();
+            audioLine.stop();
+            audioLine.release();
+            audioLine = null;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package emu.joric;
+
+import emu.joric.sound.AYPSG;
+
+/**
+ * Paces the emulation from the audio output's clock, rather than from the system
+ * clock alone. This is the same idea as the web worker, which generates however many
+ * samples are needed to keep the audio queue at a fixed level, but adapted to the
+ * desktop and Android runners, which throttle a frame at a time.
+ *
+ * After each frame, the number of samples that are queued ahead of the audio output
+ * is compared with the target. The length of the next frame is then stretched or
+ * shortened in proportion, by no more than a couple of percent, so that the
+ * emulation gradually speeds up or slows down to match the rate that the audio
+ * hardware is actually playing at. This replaces the occasional dropping or padding
+ * of whole blocks of samples, which could be heard, with a continuous adjustment
+ * that can't be.
+ *
+ * @author Lance Ewing
+ */
+public class AudioClockPacer {
+
+    // The target amount of audio to have queued ahead of the audio output. This is
+    // the mid-point of the desktop audio line's buffer, which is where its own drift
+    // management aims for, so that it is left with nothing to do.
+    private static final int TARGET_LATENCY_MS = 100;
+
+    // How strongly the frame length responds to the queued audio being away from
+    // the target, and the most that it can be adjusted by. At full adjustment, a
+    // whole frame is gained or lost every 50 frames, i.e. once a second.
+    private static final double ADJUSTMENT_GAIN = 0.2;
+    private static final double MAX_ADJUSTMENT = 0.02;
+
+    // If the queued audio drops below this fraction of the target, e.g. when the
+    // sound has just been turned on, the frames are run without any delay until it
+    // has caught up.
+    private static final double CATCH_UP_THRESHOLD = 0.5;
+
+    private AYPSG psg;
+
+    /**
+     * Constructor for AudioClockPacer.
+     *
+     * @param psg The AY-3-8912 that is generating the samples.
+     */
+    public AudioClockPacer(AYPSG psg) {
+        this.psg = psg;
+    }
+
+    /**
+     * Gets the length of time that the next frame should take, based on the amount
+     * of audio that is currently queued ahead of the audio output. If that isn't
+     * known, e.g. the sound is turned off, then the normal frame length is returned,
+     * which means that the emulation is paced by the system clock.
+     *
+     * @param nanosPerFrame The normal length of a frame, in nanoseconds.
+     *
+     * @return The length of the next frame, in nanoseconds.
+     */
+    public long getFrameNanos(long nanosPerFrame) {
+        int queuedSamples = psg.getQueuedSampleCount();
+        int sampleRate = psg.getSampleRate();
+        if ((queuedSamples < 0) || (sampleRate <= 0)) {
+            return nanosPerFrame;
+        }
+
+        // This is called just after a frame's samples have been generated, so half a
+        // frame's worth is added to the target, so that it is on average what's queued.
+        int targetSamples = (sampleRate * TARGET_LATENCY_MS) / 1000;
+        targetSamples += (int)((sampleRate * nanosPerFrame) / 2000000000L);
+        double deviation = ((double)(queuedSamples - targetSamples)) / targetSamples;
+        if (deviation < -CATCH_UP_THRESHOLD) {
+            return 0;
+        }
+
+        double adjustment = Math.max(-MAX_ADJUSTMENT, Math.min(MAX_ADJUSTMENT, deviation * ADJUSTMENT_GAIN));
+        return Math.round(nanosPerFrame * (1.0 + adjustment));
+    }
+}
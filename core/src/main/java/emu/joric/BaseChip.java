@@ -15,17 +15,10 @@ public abstract class BaseChip {
   protected Memory memory;
   
   /**
-   * Holds a direct reference to the int array holding the machine's memory. This
+   * Holds a direct reference to the byte array holding the machine's memory. This
    * is often used for faster reading and writing when it is safe to do so.
    */
-  protected int mem[];
-
-  /**
-   * Holds an array of references to instances of MemoryMappedChip where each
-   * instance determines the behaviour of reading or writing to the given memory
-   * address.
-   */
-  protected MemoryMappedChip memoryMap[];
+  protected byte mem[];
   
   /**
    * Sets a reference to the Oric memory map. 
@@ -35,6 +28,5 @@ public abstract class BaseChip {
   public void setMemory(Memory memory) {
     this.memory = memory;
     this.mem = memory.getMemoryArray();
-    this.memoryMap = memory.getMemoryMap();
   }
 }
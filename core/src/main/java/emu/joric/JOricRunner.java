@@ -1,5 +1,7 @@
 package emu.joric;
 
+import java.nio.ByteBuffer;
+
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.graphics.Pixmap;
@@ -7,6 +9,8 @@ import com.badlogic.gdx.graphics.Pixmap;
 import emu.joric.config.AppConfigItem;
 import emu.joric.sound.AYPSG;
 import emu.joric.ui.MachineInputProcessor;
+import emu.joric.video.FrameScaler;
+import emu.joric.video.TextureStreamer;
 
 /**
  * Using this JOricRunner with a Thread/Web Worker is an alternative to relying on 
@@ -52,9 +56,9 @@ public abstract class JOricRunner {
     // accuracy issue, but downstream it would make the audio sample production
     // rate run 0.16% slower than the audio hardware's consumption rate,
     // causing the audio buffer to slowly drain and producing periodic
-    // audible glitches as the buffer drops too low. See the drift
-    // management logic in AY38912PSG.writeSample for how the audio side
-    // handles any residual audio timing drift.
+    // audible glitches as the buffer drops too low. Any residual drift
+    // between this and the audio hardware's clock is absorbed by the
+    // AudioClockPacer, which adjusts the frame length to match.
     protected static final int NANOS_PER_FRAME = 19_968_000;
     
     protected MachineScreen machineScreen;
@@ -66,6 +70,7 @@ public abstract class JOricRunner {
     protected boolean exit = false;
     protected boolean paused = true;
     protected boolean warpSpeed = false;
+    private volatile boolean vsyncPacing = false;
     
     /**
      * Constructor for JOricRunner.
@@ -136,11 +141,69 @@ public abstract class JOricRunner {
      * PixelData.
      * 
      * @param pixmap
+     * 
+     * @return true if the Pixmap was updated, false if there was no new frame to copy.
      */
-    public void updatePixmap(Pixmap pixmap) {
-        pixelData.updatePixmap(pixmap);
+    public boolean updatePixmap(Pixmap pixmap) {
+        return pixelData.updatePixmap(pixmap);
+    }
+    
+    /**
+     * Returns whether the implementation specific PixelData can provide the raw colour
+     * indexes in a direct ByteBuffer.
+     * 
+     * @return true if takeIndexBuffer is supported.
+     */
+    public boolean isIndexBufferSupported() {
+        return pixelData.isIndexBufferSupported();
+    }
+    
+    /**
+     * Takes the latest completed frame of colour indexes from our implementation 
+     * specific PixelData.
+     * 
+     * @return The direct ByteBuffer holding the new frame, or null if there was no new frame.
+     */
+    public ByteBuffer takeIndexBuffer() {
+        return pixelData.takeIndexBuffer();
+    }
+    
+    /**
+     * Returns a hash of each line of the frame that was last copied to the Pixmap,
+     * if supported by the implementation specific PixelData.
+     * 
+     * @return The line hashes, or null if line hashes are not supported.
+     */
+    public long[] getLineHashes() {
+        return pixelData.getLineHashes();
     }
         
+    /**
+     * Creates the TextureStreamer that MachineScreen uses to upload the screen to the
+     * GPU. Platforms that can stream textures asynchronously override this to create 
+     * their own implementation. This is called on the GL thread.
+     * 
+     * @return The TextureStreamer to use.
+     */
+    public TextureStreamer createTextureStreamer() {
+        return new TextureStreamer();
+    }
+    
+    /**
+     * Creates a FrameScaler that takes the frames of colour indexes from our 
+     * implementation specific PixelData and scales them up by the given factor. Only
+     * platforms that support threads, and takeIndexBuffer, override this.
+     * 
+     * @param width The width of the unscaled frames.
+     * @param height The height of the unscaled frames.
+     * @param scale The factor to scale the frames by, i.e. 2 or 3.
+     * 
+     * @return The FrameScaler, or null if scaled output is not supported.
+     */
+    public FrameScaler createFrameScaler(int width, int height, int scale) {
+        return null;
+    }
+    
     /**
      * Toggles the current warp speed state.
      */
@@ -157,6 +220,35 @@ public abstract class JOricRunner {
         return warpSpeed;
     }
     
+    /**
+     * Sets whether the emulation should be paced by the display's vsync, i.e. one 
+     * Machine frame per refresh, when the display's rate allows. Only the platforms
+     * that run the Machine on a thread of their own support this.
+     * 
+     * @param vsyncPacing true to pace the emulation by the display's vsync.
+     */
+    public void setVsyncPacing(boolean vsyncPacing) {
+        this.vsyncPacing = vsyncPacing;
+    }
+
+    /**
+     * Returns whether pacing of the emulation by the display's vsync has been requested.
+     * 
+     * @return true if vsync pacing has been requested, even if the display's rate
+     *         doesn't currently allow it.
+     */
+    public boolean isVsyncPacing() {
+        return vsyncPacing;
+    }
+    
+    /**
+     * Invoked by MachineScreen on every render, which with vsync on is once per 
+     * display refresh. Platforms that support vsync pacing override this.
+     */
+    public void displayRefreshed() {
+        // Nothing to do by default.
+    }
+    
     /**
      * Pauses the MachineRunnable.
      */
@@ -1,5 +1,7 @@
 package emu.joric;
 
+import java.util.function.BooleanSupplier;
+
 import emu.joric.cpu.Cpu6502;
 import emu.joric.io.Disk;
 import emu.joric.io.Keyboard;
@@ -8,8 +10,10 @@ import emu.joric.io.Via;
 import emu.joric.memory.Memory;
 import emu.joric.memory.RamType;
 import emu.joric.snap.Snapshot;
+import emu.joric.sound.AY38912PSG;
 import emu.joric.sound.AYPSG;
-import emu.joric.sound.libgdx.AY38912PSG;
+import emu.joric.sound.libgdx.AudioDeviceSink;
+import emu.joric.video.Rasteriser;
 import emu.joric.video.Ula;
 
 /**
@@ -26,6 +30,13 @@ public class Machine {
     private AYPSG psg;
     private Cpu6502 cpu;
 
+    // Keeps the machine cycle clock and fires the chips' timed events.
+    private Scheduler scheduler;
+
+    // Synthesises the PSG samples up to the current cycle each time it fires, then
+    // reschedules itself for when the next block of samples will be full.
+    private Scheduler.Event psgSampleEvent;
+
     // Peripherals.
     private Keyboard keyboard;
     private Tape tape;
@@ -38,6 +49,9 @@ public class Machine {
     private boolean paused = true;
     private boolean lastWarpSpeed = false;
 
+    // Whether the CPU is stepped an instruction at a time, rather than a cycle at a time.
+    private boolean instructionStepped = false;
+
     private MachineType machineType;
 
     // These control what part of the generate pixel data is rendered to the screen.
@@ -59,7 +73,7 @@ public class Machine {
         if (psg != null) {
             this.psg = psg;
         } else {
-            this.psg = new AY38912PSG();
+            this.psg = new AY38912PSG(new AudioDeviceSink());
         }
         this.keyboardMatrix = keyboardMatrix;
         this.pixelData = pixelData;
@@ -83,6 +97,9 @@ public class Machine {
         
         this.machineType = machineType;
 
+        // Create the scheduler, which all of the chips share the cycle clock of.
+        scheduler = new Scheduler();
+
         // Create the microprocessor.
         cpu = new Cpu6502(snapshot);
 
@@ -93,13 +110,21 @@ public class Machine {
         keyboard = new Keyboard(keyboardMatrix, psg);
 
         // Create the VIA chip.
-        via = new Via(cpu, keyboard, snapshot);
+        via = new Via(cpu, keyboard, scheduler, snapshot);
 
         // Initialise the AY-3-8912 PSG
         psg.init(via, keyboard, snapshot);
+        via.setPsg(psg);
+        psgSampleEvent = new Scheduler.Event() {
+            public void fire() {
+                long cycle = scheduler.getCycles();
+                scheduler.schedule(this, cycle + psg.emulateSamples(cycle));
+            }
+        };
+        scheduler.schedule(psgSampleEvent, scheduler.getCycles() + 1);
 
         // Create Microdisc disk controller.
-        microdisc = new Disk(cpu);
+        microdisc = new Disk(cpu, scheduler);
 
         // Now we create the memory, which will include mapping the ULA chip,
         // the VIA chips, and the creation of RAM chips and ROM chips.
@@ -148,24 +173,150 @@ public class Machine {
      * @param warpSpeed true If the machine is running at warp speed.
      */
     public void update(boolean warpSpeed) {
-        boolean frameComplete = false;
+        setWarpSpeed(warpSpeed);
+        runFrame();
+    }
+
+    /**
+     * Sets whether the machine is running at warp speed. Sound is paused while in warp
+     * speed, and the instruction-stepped CPU core is always used.
+     * 
+     * @param warpSpeed true If the machine is running at warp speed.
+     */
+    public void setWarpSpeed(boolean warpSpeed) {
         if (warpSpeed && !lastWarpSpeed) {
-            // We pause sound during warp speed
+            // We pause sound during warp speed, so no samples are generated.
             psg.pauseSound();
+            scheduler.cancel(psgSampleEvent);
         } else if (lastWarpSpeed && !warpSpeed) {
             // And resume sound when warp speed ends.
             psg.resumeSound();
+            scheduler.schedule(psgSampleEvent, scheduler.getCycles() + 1);
         }
         lastWarpSpeed = warpSpeed;
-        do {
-            frameComplete |= ula.emulateCycle();
-            cpu.emulateCycle();
-            via.emulateCycle();
-            microdisc.emulateCycle();
-            if (!warpSpeed) {
-                psg.emulateCycle();
+    }
+
+    /**
+     * Runs the machine until the ULA has completed a frame.
+     * 
+     * @return The number of cycles that were emulated.
+     */
+    public long runFrame() {
+        long startCycle = scheduler.getCycles();
+        if (instructionStepped || lastWarpSpeed) {
+            // The faster CPU core runs a whole instruction in one go, after which the
+            // ULA is caught up by the number of cycles that it took. The other chips 
+            // catch up on their own when accessed, or when their next event is due.
+            while (!emulateInstruction());
+        } else {
+            while (!emulateCycle());
+        }
+        return scheduler.getCycles() - startCycle;
+    }
+
+    /**
+     * Runs the machine for the given number of cycles. When the CPU is stepped an
+     * instruction at a time, this can overrun by up to the length of one instruction.
+     * 
+     * @param numOfCycles The number of cycles to emulate.
+     * 
+     * @return The number of cycles that were emulated.
+     */
+    public long runCycles(long numOfCycles) {
+        long startCycle = scheduler.getCycles();
+        long endCycle = startCycle + numOfCycles;
+        if (instructionStepped || lastWarpSpeed) {
+            while (scheduler.getCycles() < endCycle) {
+                emulateInstruction();
+            }
+        } else {
+            while (scheduler.getCycles() < endCycle) {
+                emulateCycle();
             }
-        } while (!frameComplete);
+        }
+        return scheduler.getCycles() - startCycle;
+    }
+
+    /**
+     * Runs the machine until the given condition holds. The condition is tested after
+     * each cycle, or after each instruction when the CPU is instruction-stepped.
+     * 
+     * @param condition The condition to stop on.
+     * 
+     * @return The number of cycles that were emulated.
+     */
+    public long runUntil(BooleanSupplier condition) {
+        long startCycle = scheduler.getCycles();
+        if (instructionStepped || lastWarpSpeed) {
+            do {
+                emulateInstruction();
+            } while (!condition.getAsBoolean());
+        } else {
+            do {
+                emulateCycle();
+            } while (!condition.getAsBoolean());
+        }
+        return scheduler.getCycles() - startCycle;
+    }
+
+    /**
+     * Emulates a single CPU instruction, and then catches the ULA up by the number of 
+     * cycles that it took.
+     * 
+     * @return true If the ULA chip has indicated that a frame should be rendered.
+     */
+    private boolean emulateInstruction() {
+        boolean render = false;
+        int cycles = cpu.emulateInstruction();
+        for (int i = 0; i < cycles; i++) {
+            render |= ula.emulateCycle();
+        }
+        scheduler.advance(cycles);
+        return render;
+    }
+
+    /**
+     * Sets the number of frames that the ULA skips rendering between each rendered 
+     * frame. By default, the ULA skips a frame whenever the UI thread hasn't taken the 
+     * previous frame, which is mainly the case when running at warp speed.
+     * 
+     * @param frameSkip The number of frames to skip, 0 to render every frame, or Ula.AUTO_FRAME_SKIP.
+     */
+    public void setFrameSkip(int frameSkip) {
+        ula.setFrameSkip(frameSkip);
+    }
+    
+    /**
+     * Sets the Rasteriser that turns the video data that the ULA captures into pixels.
+     * If null, which is the default, then the ULA renders the pixels itself.
+     * 
+     * @param rasteriser The Rasteriser to use, or null.
+     */
+    public void setRasteriser(Rasteriser rasteriser) {
+        ula.setRasteriser(rasteriser);
+    }
+    
+    /**
+     * Sets whether the CPU is stepped an instruction at a time, rather than a cycle at
+     * a time. The instruction-stepped core is a lot faster but the other chips no longer
+     * see the CPU's reads and writes on the exact cycle. This can be changed at any time,
+     * since the registers and flags are shared between the two CPU cores. The 
+     * instruction-stepped core is always used during warp speed.
+     * 
+     * @param instructionStepped true to step the CPU an instruction at a time.
+     */
+    public void setInstructionStepped(boolean instructionStepped) {
+        this.instructionStepped = instructionStepped;
+    }
+
+    /**
+     * Gets whether the CPU is stepped an instruction at a time, rather than a cycle at
+     * a time (outside of warp speed).
+     * 
+     * @return true if the CPU is stepped an instruction at a time.
+     */
+    public boolean isInstructionStepped() {
+        return instructionStepped;
     }
 
     /**
@@ -227,9 +378,7 @@ public class Machine {
     public boolean emulateCycle() {
         boolean render = ula.emulateCycle();
         cpu.emulateCycle();
-        via.emulateCycle();
-        microdisc.emulateCycle();
-        psg.emulateCycle();
+        scheduler.advance(1);
         return render;
     }
 
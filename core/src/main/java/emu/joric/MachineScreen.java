@@ -1,5 +1,6 @@
 package emu.joric;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -14,6 +15,8 @@ import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.scenes.scene2d.ui.Skin;
 import com.badlogic.gdx.scenes.scene2d.ui.Touchpad;
@@ -28,6 +31,9 @@ import emu.joric.ui.MachineInputProcessor;
 import emu.joric.ui.MachineInputProcessor.JoystickAlignment;
 import emu.joric.ui.MachineInputProcessor.ScreenSize;
 import emu.joric.ui.ViewportManager;
+import emu.joric.video.FrameScaler;
+import emu.joric.video.PaletteShader;
+import emu.joric.video.TextureStreamer;
 
 /**
  * The main screen in the JOric emulator, i.e. the one that shows the video
@@ -80,11 +86,34 @@ public class MachineScreen implements Screen {
     private int updateScreen = 0;
     private int textureOffset = 0;
 
+    // When the colour indexes are looked up on the GPU, a single Alpha format index
+    // texture is used instead of the six RGBA8888 textures above. It is uploaded 
+    // directly from the buffer that the ULA rendered into, so there is no Pixmap.
+    private PaletteShader paletteShader;
+    private Texture indexTexture;
+
+    // When the scaled output is enabled, the FrameScaler takes the frames of colour 
+    // indexes instead, and the scaled frames are uploaded to this larger Alpha format 
+    // texture, which is then drawn instead of the index texture.
+    private FrameScaler frameScaler;
+    private Texture scaledTexture;
+
+    // The output scale that has been chosen, i.e. 1, 2 or 3. This is remembered even
+    // when the platform doesn't support the scaled output, so that it can be cycled.
+    private int outputScale;
+
     // Screen resources for each MachineType.
     private Map<MachineType, Pixmap> machineTypePixmaps;
     private Map<MachineType, Camera> machineTypeCameras;
     private Map<MachineType, ExtendViewport> machineTypeViewports;
     private Map<MachineType, Texture[]> machineTypeTextures;
+    private Map<MachineType, Texture> machineTypeIndexTextures;
+
+    // The line hashes of the frame that each screen Texture was last updated with.
+    private Map<Texture, long[]> textureLineHashes;
+
+    // Uploads the changed lines to the screen Textures.
+    private TextureStreamer textureStreamer;
 
     // UI components.
     private Texture screenSizeIcon;
@@ -100,6 +129,13 @@ public class MachineScreen implements Screen {
 
     private ViewportManager viewportManager;
 
+    // The UI elements are rendered into this FrameBuffer only when the overlay state,
+    // i.e. the controls' state and the viewport, changes.
+    private FrameBuffer overlayFrameBuffer;
+    private float[] overlayState = new float[15];
+    private boolean overlayStateValid;
+    private Matrix4 overlayProjection = new Matrix4();
+
     // Touchpad
     private Stage portraitStage;
     private Stage landscapeStage;
@@ -146,13 +182,29 @@ public class MachineScreen implements Screen {
         joricRunner.init(this, machineType.getTotalScreenWidth(), machineType.getTotalScreenHeight());
 
         batch = new SpriteBatch();
+        textureStreamer = joricRunner.createTextureStreamer();
+
+        // If the platform's PixelData can provide the raw colour indexes, then we 
+        // upload those and look up the colours in a shader.
+        if (joricRunner.isIndexBufferSupported()) {
+            paletteShader = new PaletteShader();
+            if (!paletteShader.isCompiled()) {
+                paletteShader.dispose();
+                paletteShader = null;
+            }
+        }
 
         machineTypePixmaps = new HashMap<MachineType, Pixmap>();
         machineTypeTextures = new HashMap<MachineType, Texture[]>();
         machineTypeViewports = new HashMap<MachineType, ExtendViewport>();
         machineTypeCameras = new HashMap<MachineType, Camera>();
+        machineTypeIndexTextures = new HashMap<MachineType, Texture>();
+        textureLineHashes = new HashMap<Texture, long[]>();
 
         createScreenResourcesForMachineType(MachineType.PAL);
+        outputScale = joric.getPreferences().getInteger("output_scale", 1);
+        createFrameScaler(outputScale);
+        joricRunner.setVsyncPacing(joric.getPreferences().getBoolean("vsync_pacing", false));
 
         screenSizeIcon = new Texture("png/screen_icon.png");
         playIcon = new Texture("png/play.png");
@@ -224,6 +276,7 @@ public class MachineScreen implements Screen {
         MachineType machineType = MachineType.valueOf(appConfigItem.getMachineType());
         screenPixmap = machineTypePixmaps.get(machineType);
         screens = machineTypeTextures.get(machineType);
+        indexTexture = machineTypeIndexTextures.get(machineType);
         camera = machineTypeCameras.get(machineType);
         viewport = machineTypeViewports.get(machineType);
 
@@ -237,6 +290,24 @@ public class MachineScreen implements Screen {
      * @param machineType The MachineType to create the screen resources for.
      */
     private void createScreenResourcesForMachineType(MachineType machineType) {
+        Camera camera = new OrthographicCamera();
+        ExtendViewport viewport = new ExtendViewport(
+                ((machineType.getVisibleScreenHeight() / 4) * 5),
+                machineType.getVisibleScreenHeight(), 
+                camera);
+        machineTypeCameras.put(machineType, camera);
+        machineTypeViewports.put(machineType, viewport);
+        
+        if (paletteShader != null) {
+            // One byte per pixel colour indexes. The index texture must always use the 
+            // Nearest filter. The PaletteShader does the blurring itself, if enabled.
+            Texture indexTexture = new Texture(machineType.getTotalScreenWidth(), machineType.getTotalScreenHeight(), 
+                    Pixmap.Format.Alpha);
+            indexTexture.setFilter(Texture.TextureFilter.Nearest, Texture.TextureFilter.Nearest);
+            machineTypeIndexTextures.put(machineType, indexTexture);
+            return;
+        }
+        
         // Create the libGDX screen resources used by the Oric screen to the size
         // required by the MachineType.
         Pixmap screenPixmap = new Pixmap(machineType.getTotalScreenWidth(), machineType.getTotalScreenHeight(), 
@@ -257,16 +328,8 @@ public class MachineScreen implements Screen {
         screens[5] = new Texture(screenPixmap, Pixmap.Format.RGBA8888, false);
         screens[5].setFilter(Texture.TextureFilter.Linear, Texture.TextureFilter.Linear);
         
-        Camera camera = new OrthographicCamera();
-        ExtendViewport viewport = new ExtendViewport(
-                ((machineType.getVisibleScreenHeight() / 4) * 5),
-                machineType.getVisibleScreenHeight(), 
-                camera);
-        
         machineTypePixmaps.put(machineType, screenPixmap);
         machineTypeTextures.put(machineType, screens);
-        machineTypeCameras.put(machineType, camera);
-        machineTypeViewports.put(machineType, viewport);
     }
 
     private long renderCount;
@@ -276,6 +339,9 @@ public class MachineScreen implements Screen {
         long fps = Gdx.graphics.getFramesPerSecond();
         boolean draw = false;
 
+        // With vsync on, each render is a display refresh, which can pace the emulation.
+        joricRunner.displayRefreshed();
+
         if (joricRunner.hasStopped()) {
             // If game has ended then go back to home screen. It has to be the UI thread
             // that calls the setScreen method. The JOricRunner itself can't do this.
@@ -295,7 +361,7 @@ public class MachineScreen implements Screen {
             draw = ((fps < 30) || ((renderCount % (fps / 30)) == 0));
 
         } else {
-            // TODO: See if we can check if there is a new frame ready before copying??
+            // Only a new frame from the machine thread needs to be uploaded to the GPU.
             copyPixels();
             draw = true;
         }
@@ -311,13 +377,89 @@ public class MachineScreen implements Screen {
     }
     
     public boolean copyPixels() {
-        joricRunner.updatePixmap(screenPixmap);
-        screens[updateScreen + textureOffset].draw(screenPixmap, 0, 0);
+        if (frameScaler != null) {
+            // The scaled frames have no line hashes, so are always uploaded in full.
+            ByteBuffer scaledBuffer = frameScaler.takeScaledBuffer();
+            if (scaledBuffer == null) {
+                return false;
+            }
+            drawChangedLines(scaledTexture, scaledBuffer, null, 1, GL20.GL_ALPHA, GL20.GL_UNSIGNED_BYTE);
+            return true;
+        }
+        if (paletteShader != null) {
+            ByteBuffer indexBuffer = joricRunner.takeIndexBuffer();
+            if (indexBuffer == null) {
+                return false;
+            }
+            drawChangedLines(indexTexture, indexBuffer, joricRunner.getLineHashes(), 
+                    1, GL20.GL_ALPHA, GL20.GL_UNSIGNED_BYTE);
+            return true;
+        }
+        if (!joricRunner.updatePixmap(screenPixmap)) {
+            return false;
+        }
+        Texture screen = screens[updateScreen + textureOffset];
+        if (joricRunner.getLineHashes() == null) {
+            screen.draw(screenPixmap, 0, 0);
+        } else {
+            drawChangedLines(screen, screenPixmap.getPixels(), joricRunner.getLineHashes(), 
+                    4, screenPixmap.getGLFormat(), screenPixmap.getGLType());
+        }
         updateScreen = (updateScreen + 1) % 3;
         drawScreen = (drawScreen + 1) % 3;
         return true;
     }
     
+    /**
+     * Uploads the lines of the given pixels that have changed since the given Texture 
+     * was last updated. Each run of adjacent changed lines is uploaded as a single sub 
+     * image by the TextureStreamer. If nothing has changed, then nothing is uploaded. If the Texture hasn't 
+     * been updated before, or there are no line hashes, then all lines are uploaded.
+     * 
+     * @param texture The Texture to update.
+     * @param pixels The pixels of the latest frame.
+     * @param lineHashes The line hashes of the latest frame, or null if there aren't any.
+     * @param bytesPerPixel The number of bytes per pixel.
+     * @param glFormat The GL format of the pixels.
+     * @param glType The GL type of the pixels.
+     */
+    private void drawChangedLines(Texture texture, ByteBuffer pixels, long[] lineHashes, 
+            int bytesPerPixel, int glFormat, int glType) {
+        long[] lastLineHashes = textureLineHashes.get(texture);
+        boolean drawAll = ((lineHashes == null) || (lastLineHashes == null));
+        int height = texture.getHeight();
+        boolean begun = false;
+        int line = 0;
+        
+        if ((lineHashes != null) && (lastLineHashes == null)) {
+            lastLineHashes = new long[height];
+            textureLineHashes.put(texture, lastLineHashes);
+        }
+        
+        while (line < height) {
+            if (!drawAll && (lineHashes[line] == lastLineHashes[line])) {
+                line++;
+                continue;
+            }
+            int startLine = line;
+            while ((line < height) && (drawAll || (lineHashes[line] != lastLineHashes[line]))) {
+                if (lineHashes != null) {
+                    lastLineHashes[line] = lineHashes[line];
+                }
+                line++;
+            }
+            if (!begun) {
+                textureStreamer.begin(texture, pixels, bytesPerPixel, glFormat, glType);
+                begun = true;
+            }
+            textureStreamer.drawLines(startLine, line - startLine);
+        }
+        
+        if (begun) {
+            textureStreamer.end();
+        }
+    }
+    
     private void draw(float delta) {
         // Get the KeyboardType currently being used by the MachineScreenProcessor.
         KeyboardType keyboardType = machineInputProcessor.getKeyboardType();
@@ -361,23 +503,166 @@ public class MachineScreen implements Screen {
         camera.update();
         batch.setProjectionMatrix(camera.combined);
         batch.disableBlending();
+        Texture screenTexture;
+        int outputScale = 1;
+        if (frameScaler != null) {
+            batch.setShader(paletteShader.getShaderProgram());
+            screenTexture = scaledTexture;
+            outputScale = frameScaler.getScale();
+        } else if (paletteShader != null) {
+            batch.setShader(paletteShader.getShaderProgram());
+            screenTexture = indexTexture;
+        } else {
+            screenTexture = screens[drawScreen + textureOffset];
+        }
         batch.begin();
+        if (paletteShader != null) {
+            paletteShader.setUniforms(screenTexture);
+        }
         Color c = batch.getColor();
         batch.setColor(c.r, c.g, c.b, 1f);
         
         // Texture isn't always drawn to match physical pixels.
         batch.draw(
-                screens[drawScreen + textureOffset], 
+                screenTexture, 
                 0, 0, currentScreenSize.getRenderWidth(), currentScreenSize.getRenderHeight(),
-                0, 0, ORIC_SCREEN_WIDTH, ORIC_SCREEN_HEIGHT, 
+                0, 0, ORIC_SCREEN_WIDTH * outputScale, ORIC_SCREEN_HEIGHT * outputScale, 
                 false, false);
         batch.end();
+        batch.setShader(null);
+
+        // Render the UI elements, e.g. the keyboard and joystick icons. These only 
+        // change when a control's state or the viewport changes, so they're rendered
+        // into the overlay FrameBuffer when that happens, which is otherwise drawn
+        // as a single quad.
+        if (updateOverlayState(keyboardType, cameraXOffset, sidePaddingWidth)) {
+            renderOverlay(keyboardType, cameraXOffset, sidePaddingWidth);
+        }
+        if (overlayFrameBuffer != null) {
+            Texture overlayTexture = overlayFrameBuffer.getColorBufferTexture();
+            batch.setProjectionMatrix(overlayProjection);
+            batch.enableBlending();
+            // The overlay's colours are already multiplied by their alpha.
+            batch.setBlendFunction(GL20.GL_ONE, GL20.GL_ONE_MINUS_SRC_ALPHA);
+            batch.begin();
+            batch.setColor(c.r, c.g, c.b, 1f);
+            batch.draw(
+                    overlayTexture, 
+                    -1, -1, 2, 2, 
+                    0, 0, overlayTexture.getWidth(), overlayTexture.getHeight(), 
+                    false, true);
+            batch.end();
+            batch.setBlendFunction(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+        }
+        
+        // The joystick touch pad is updated and rendered via the Stage.
+        if (!joystickAlignment.equals(JoystickAlignment.OFF)) {
+            float joyX = 0;
+            float joyY = 0;
+            if (viewportManager.isPortrait()) {
+                portraitStage.act(delta);
+                portraitStage.draw();
+                joyX = portraitTouchpad.getKnobPercentX();
+                joyY = portraitTouchpad.getKnobPercentY();
+            } else {
+                landscapeStage.act(delta);
+                landscapeStage.draw();
+                joyX = landscapeTouchpad.getKnobPercentX();
+                joyY = landscapeTouchpad.getKnobPercentY();
+            }
+            processJoystickInput(joyX, joyY);
+        }
+    }
 
-        // Render the UI elements, e.g. the keyboard and joystick icons.
+    /**
+     * Updates the overlay state with the current state of everything that affects
+     * how the UI elements are rendered, and returns whether it has changed since the
+     * overlay was last rendered.
+     * 
+     * @param keyboardType The KeyboardType currently being used.
+     * @param cameraXOffset The X offset of the Oric screen's camera.
+     * @param sidePaddingWidth The width of the padding at the sides of the Oric screen.
+     * 
+     * @return true if the overlay needs to be rendered again.
+     */
+    private boolean updateOverlayState(KeyboardType keyboardType, float cameraXOffset, float sidePaddingWidth) {
+        boolean keyboardRendered = (keyboardType.isRendered() || viewportManager.isPortrait()) && 
+                (keyboardType.getTexture() != null);
+        boolean changed = !overlayStateValid;
+        changed |= updateOverlayValue(0, Gdx.graphics.getBackBufferWidth());
+        changed |= updateOverlayValue(1, Gdx.graphics.getBackBufferHeight());
+        changed |= updateOverlayValue(2, viewportManager.getWidth());
+        changed |= updateOverlayValue(3, viewportManager.getHeight());
+        changed |= updateOverlayValue(4, viewportManager.isPortrait()? 1 : 0);
+        changed |= updateOverlayValue(5, viewportManager.getOricScreenBase());
+        changed |= updateOverlayValue(6, cameraXOffset);
+        changed |= updateOverlayValue(7, sidePaddingWidth);
+        changed |= updateOverlayValue(8, keyboardType.ordinal());
+        changed |= updateOverlayValue(9, keyboardRendered? 1 : 0);
+        changed |= updateOverlayValue(10, keyboardRendered? keyboardType.getOpacity() : 0);
+        changed |= updateOverlayValue(11, keyboardRendered? keyboardType.getRenderOffset() : 0);
+        changed |= updateOverlayValue(12, keyboardRendered? keyboardType.getHeight() : 0);
+        changed |= updateOverlayValue(13, machineInputProcessor.isSpeakerOn()? 1 : 0);
+        changed |= updateOverlayValue(14, joricRunner.isPaused()? 1 : 0);
+        overlayStateValid = true;
+        return changed;
+    }
+    
+    /**
+     * Stores a value in the overlay state, in place, so that nothing is allocated on
+     * each render.
+     * 
+     * @param index The index of the value within the overlay state.
+     * @param value The current value.
+     * 
+     * @return true if the value is different from what was stored before.
+     */
+    private boolean updateOverlayValue(int index, float value) {
+        if (overlayState[index] == value) {
+            return false;
+        }
+        overlayState[index] = value;
+        return true;
+    }
+    
+    /**
+     * Renders the UI elements, e.g. the keyboard and joystick icons, into the overlay
+     * FrameBuffer. The colours are multiplied by their alpha, and the alpha values are
+     * accumulated, so that the overlay can then be blended over the Oric screen in one
+     * go, with the same result as rendering each UI element directly to the screen.
+     * 
+     * @param keyboardType The KeyboardType currently being used.
+     * @param cameraXOffset The X offset of the Oric screen's camera.
+     * @param sidePaddingWidth The width of the padding at the sides of the Oric screen.
+     */
+    private void renderOverlay(KeyboardType keyboardType, float cameraXOffset, float sidePaddingWidth) {
+        int width = Gdx.graphics.getBackBufferWidth();
+        int height = Gdx.graphics.getBackBufferHeight();
+        if ((width == 0) || (height == 0)) {
+            // Nothing can be rendered, e.g. when the window is minimised.
+            overlayStateValid = false;
+            return;
+        }
+        if ((overlayFrameBuffer == null) || (overlayFrameBuffer.getWidth() != width) || 
+                (overlayFrameBuffer.getHeight() != height)) {
+            if (overlayFrameBuffer != null) {
+                overlayFrameBuffer.dispose();
+            }
+            overlayFrameBuffer = new FrameBuffer(Pixmap.Format.RGBA8888, width, height, false);
+        }
+        
+        overlayFrameBuffer.begin();
+        Gdx.gl.glClearColor(0, 0, 0, 0);
+        Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+        
         viewportManager.getCurrentCamera().update();
         batch.setProjectionMatrix(viewportManager.getCurrentCamera().combined);
         batch.enableBlending();
+        batch.setBlendFunctionSeparate(
+                GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA, 
+                GL20.GL_ONE, GL20.GL_ONE_MINUS_SRC_ALPHA);
         batch.begin();
+        Color c = batch.getColor();
         
         // The keyboard is always render in portrait mode, as there is space for it,
         // but in landscape mode, it needs to be enabled via the keyboard icon.
@@ -454,24 +739,8 @@ public class MachineScreen implements Screen {
         }
         
         batch.end();
-        
-        // The joystick touch pad is updated and rendered via the Stage.
-        if (!joystickAlignment.equals(JoystickAlignment.OFF)) {
-            float joyX = 0;
-            float joyY = 0;
-            if (viewportManager.isPortrait()) {
-                portraitStage.act(delta);
-                portraitStage.draw();
-                joyX = portraitTouchpad.getKnobPercentX();
-                joyY = portraitTouchpad.getKnobPercentY();
-            } else {
-                landscapeStage.act(delta);
-                landscapeStage.draw();
-                joyX = landscapeTouchpad.getKnobPercentX();
-                joyY = landscapeTouchpad.getKnobPercentY();
-            }
-            processJoystickInput(joyX, joyY);
-        }
+        batch.setBlendFunction(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+        overlayFrameBuffer.end();
     }
 
     private static final int[] DIRECTION_TO_KEY_MAP = new int[] {
@@ -580,12 +849,18 @@ public class MachineScreen implements Screen {
     @Override
     public void resume() {
         KeyboardType.init();
+        // The keyboard Textures are recreated, and the FrameBuffer's and the screen 
+        // Textures' contents may have been lost, so the next frame is uploaded in full.
+        overlayStateValid = false;
+        textureLineHashes.clear();
         joricRunner.resume();
     }
 
     @Override
     public void show() {
         KeyboardType.init();
+        overlayStateValid = false;
+        textureLineHashes.clear();
         
         if (viewportManager.isPortrait()) {
             Gdx.input.setInputProcessor(portraitInputProcessor);
@@ -619,6 +894,9 @@ public class MachineScreen implements Screen {
         pauseIcon.dispose();
         nmiIcon.dispose();
         screenSizeIcon.dispose();
+        if (overlayFrameBuffer != null) {
+            overlayFrameBuffer.dispose();
+        }
         batch.dispose();
         joricRunner.stop();
         disposeScreens();
@@ -639,6 +917,15 @@ public class MachineScreen implements Screen {
             screens[4].dispose();
             screens[5].dispose();
         }
+        for (Texture indexTexture : machineTypeIndexTextures.values()) {
+            indexTexture.dispose();
+        }
+        disposeFrameScaler();
+        textureLineHashes.clear();
+        textureStreamer.dispose();
+        if (paletteShader != null) {
+            paletteShader.dispose();
+        }
     }
     
     /**
@@ -648,6 +935,80 @@ public class MachineScreen implements Screen {
      */
     public void changeBlur(boolean blurOn) {
         textureOffset = (blurOn? 3 : 0);
+        if (paletteShader != null) {
+            paletteShader.setBlur(blurOn);
+        }
+    }
+
+    /**
+     * Changes the scaled output mode. A scale of 2 or 3 scales each frame up with the
+     * Scale2x or Scale3x filter on a separate thread before it is uploaded. A scale
+     * of 1 turns the scaled output off. The scaled output is only supported when the
+     * colours are looked up by the PaletteShader, and the platform supports threads.
+     * 
+     * @param scale The output scale, i.e. 1, 2 or 3.
+     */
+    public void changeOutputScale(int scale) {
+        outputScale = scale;
+        disposeFrameScaler();
+        createFrameScaler(scale);
+        joric.getPreferences().putInteger("output_scale", scale);
+        joric.getPreferences().flush();
+    }
+    
+    /**
+     * Gets the output scale that has been chosen, whether or not the platform supports
+     * the scaled output.
+     * 
+     * @return The output scale, i.e. 1, 2 or 3.
+     */
+    public int getOutputScale() {
+        return outputScale;
+    }
+    
+    /**
+     * Changes whether the emulation is paced by the display's vsync, i.e. one frame per
+     * refresh, rather than by the audio output. This is only used when the display's 
+     * refresh rate is close to a multiple of the Oric's 50.08 Hz.
+     * 
+     * @param vsyncPacing true to pace the emulation by the display's vsync.
+     */
+    public void changeVsyncPacing(boolean vsyncPacing) {
+        joricRunner.setVsyncPacing(vsyncPacing);
+        joric.getPreferences().putBoolean("vsync_pacing", vsyncPacing);
+        joric.getPreferences().flush();
+    }
+    
+    /**
+     * Creates the FrameScaler, and the Texture that the scaled frames are uploaded to,
+     * if the given scale is supported.
+     * 
+     * @param scale The output scale, i.e. 1, 2 or 3.
+     */
+    private void createFrameScaler(int scale) {
+        if ((paletteShader == null) || (scale < 2) || (scale > 3)) {
+            return;
+        }
+        int width = machineType.getTotalScreenWidth();
+        int height = machineType.getTotalScreenHeight();
+        frameScaler = joricRunner.createFrameScaler(width, height, scale);
+        if (frameScaler != null) {
+            scaledTexture = new Texture(width * scale, height * scale, Pixmap.Format.Alpha);
+            scaledTexture.setFilter(Texture.TextureFilter.Nearest, Texture.TextureFilter.Nearest);
+        }
+    }
+    
+    /**
+     * Stops the FrameScaler, if there is one, after which the frames are taken from
+     * the PixelData by copyPixels again.
+     */
+    private void disposeFrameScaler() {
+        if (frameScaler != null) {
+            frameScaler.dispose();
+            frameScaler = null;
+            scaledTexture.dispose();
+            scaledTexture = null;
+        }
     }
 
     /**
@@ -1,19 +1,80 @@
 package emu.joric;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
 import com.badlogic.gdx.graphics.Pixmap;
 
 /**
  * An Interface for plotting individual pixels. The desktop, mobile, and HTML 
  * platforms will implement this in their own way. The HTML platform in particular
  * is a bit different and needs to be handled in a platform specific way, which is 
- * the primary reason this interface exists. All platforms use the same colour
- * format though, i.e. RGBA8888, which makes things a little easier. For both
+ * the primary reason this interface exists. The ULA writes a one byte colour index
+ * for each pixel, rather than a full colour. Bits 0-2 are the Oric colour, and bit 3
+ * is set if the cell is inverse video. All platforms convert these to the same 
+ * colour format, i.e. RGBA8888, once per frame when the Pixmap is updated, unless the
+ * colour indexes are uploaded directly to the GPU. For both
  * HTML5, where the Pixmap is a wrapper around an HTML5 canvas, and for Desktop
  * and Android, the colours are updated via a byte array where the RGBA components
  * are stored in the order R, G, B, A.
  */
 public abstract class PixelData {
 
+    /**
+     * The bit in a colour index that is set when the pixel is inverse video.
+     */
+    public static final int INVERSE = 0x08;
+
+    /**
+     * RGBA8888 colours for each of the 16 colour indexes. The last 8 are the inverse
+     * video versions of the first 8, i.e. with the RGB components inverted.
+     */
+    public static final int[] PALETTE = {
+        0x000000FF,         // BLACK
+        0xFF0000FF,         // RED
+        0x00FF00FF,         // GREEN
+        0xFFFF00FF,         // YELLOW
+        0x0000FFFF,         // BLUE
+        0xFF00FFFF,         // PURPLE
+        0x00FFFFFF,         // CYAN
+        0xFFFFFFFF,         // WHITE
+        0xFFFFFFFF,         // INVERSE BLACK
+        0x00FFFFFF,         // INVERSE RED
+        0xFF00FFFF,         // INVERSE GREEN
+        0x0000FFFF,         // INVERSE YELLOW
+        0xFFFF00FF,         // INVERSE BLUE
+        0x00FF00FF,         // INVERSE PURPLE
+        0xFF0000FF,         // INVERSE CYAN
+        0x000000FF          // INVERSE WHITE
+    };
+
+    /**
+     * Masks for each of the 64 possible values of a cell's 6 bits of data, with the 6
+     * pixels packed into a long in the same way as for putCellPixels. A pixel's byte is
+     * 0xFF if it is ink, and 0x00 if it is paper.
+     */
+    public static final long[] CELL_MASKS = new long[64];
+
+    // Multiplying a colour index by this repeats it in each of the 6 bytes of a cell.
+    private static final long CELL_BYTES = 0x010101010101L;
+
+    static {
+        for (int cellData = 0; cellData < CELL_MASKS.length; cellData++) {
+            long mask = 0;
+            for (int bit = 0x20, shift = 0; bit != 0; bit >>= 1, shift += 8) {
+                if ((cellData & bit) != 0) {
+                    mask |= (0xFFL << shift);
+                }
+            }
+            CELL_MASKS[cellData] = mask;
+        }
+    }
+
+    /**
+     * Invoked whenever a frame has been completed, if set.
+     */
+    protected volatile Runnable frameCompleteListener;
+
     /**
      * Initialises the PixelData implementation with the given width and height.
      * 
@@ -26,20 +87,172 @@ public abstract class PixelData {
      * Puts a single pixel into the pixel data using an index position.
      * 
      * @param index AGI screen position (i.e. (y * 320) + x
-     * @param rgba8888Colour
+     * @param colourIndex The colour index, i.e. Oric colour plus the INVERSE bit.
      */
-    public abstract void putPixel(int index, int rgba8888Colour);
+    public abstract void putPixel(int index, int colourIndex);
+    
+    /**
+     * Puts the 6 pixels of a ULA cell into the pixel data, starting at the given index 
+     * position. Bit 5 of the cell data is the leftmost pixel. Implementations should 
+     * override this to write the cell in one go, since the ULA renders a whole cell 
+     * at a time.
+     * 
+     * @param index Screen position of the cell's leftmost pixel.
+     * @param cellData The 6 bits of cell data, where a set bit is ink and clear is paper.
+     * @param ink The colour index for ink pixels.
+     * @param paper The colour index for paper pixels.
+     */
+    public void putCell(int index, int cellData, int ink, int paper) {
+        putCellPixels(index, decodeCell(cellData, ink, paper));
+    }
+    
+    /**
+     * Decodes the given cell data into 6 colour indexes, packed into a long with the 
+     * leftmost pixel in the low byte, as expected by putCellPixels.
+     * 
+     * @param cellData The cell data, where bit 5 is the leftmost pixel. Only the low 6 bits are used.
+     * @param ink The colour index for ink pixels.
+     * @param paper The colour index for paper pixels.
+     * 
+     * @return The packed colour indexes.
+     */
+    public static long decodeCell(int cellData, int ink, int paper) {
+        long mask = CELL_MASKS[cellData & 0x3F];
+        return ((mask & (ink * CELL_BYTES)) | (~mask & (paper * CELL_BYTES)));
+    }
+    
+    /**
+     * Puts the 6 already decoded pixels of a ULA cell into the pixel data, starting at
+     * the given index position. This is used for cells that come from the ULA's 
+     * decoded glyph cache. Implementations should override this to write the pixels
+     * in one go.
+     * 
+     * @param index Screen position of the cell's leftmost pixel.
+     * @param pixels The 6 colour indexes, packed with the leftmost pixel in the low byte.
+     */
+    public void putCellPixels(int index, long pixels) {
+        putPixel(index,     (int)(pixels & 0xFF));
+        putPixel(index + 1, (int)((pixels >>> 8) & 0xFF));
+        putPixel(index + 2, (int)((pixels >>> 16) & 0xFF));
+        putPixel(index + 3, (int)((pixels >>> 24) & 0xFF));
+        putPixel(index + 4, (int)((pixels >>> 32) & 0xFF));
+        putPixel(index + 5, (int)((pixels >>> 40) & 0xFF));
+    }
     
     /**
      * Clears all pixels, i.e. sets to black.
      */
     public abstract void clearPixels();
     
+    /**
+     * Invoked by the ULA when it has finished rendering a frame. Implementations that
+     * hand frames over from the emulation thread to the UI thread via a swap chain of 
+     * buffers should override this to publish the completed frame. The default 
+     * implementation does nothing, i.e. the UI thread reads the pixels as they are.
+     */
+    public void frameComplete() {
+    }
+    
+    /**
+     * Sets a listener to be invoked, on the thread that completed the frame, whenever
+     * a frame has been completed. This is used by the FrameScaler to wake up when
+     * there is a new frame to take. Only implementations that hand frames over via a
+     * swap chain of buffers invoke the listener.
+     * 
+     * @param frameCompleteListener The listener, or null to remove the listener.
+     */
+    public void setFrameCompleteListener(Runnable frameCompleteListener) {
+        this.frameCompleteListener = frameCompleteListener;
+    }
+    
+    /**
+     * Returns whether the UI thread would display a frame that is rendered now. This is
+     * checked just after a frame has been completed. If the UI thread hasn't yet taken 
+     * the frame before that one either, then the ULA can skip rendering the next frame,
+     * since the UI thread is not keeping up with the frame rate anyway, e.g. when 
+     * running at warp speed. The default implementation always returns true, i.e. 
+     * every frame is rendered.
+     * 
+     * @return true if the next frame should be rendered.
+     */
+    public boolean isFrameNeeded() {
+        return true;
+    }
+    
     /**
      * Updates Pixmap with the latest local changes. 
      * 
      * @param pixmap 
+     * 
+     * @return true if the Pixmap was updated, false if there was no new frame to copy.
      */
-    public abstract void updatePixmap(Pixmap pixmap);
+    public abstract boolean updatePixmap(Pixmap pixmap);
     
+    /**
+     * Returns whether this PixelData can provide the raw colour indexes in a direct
+     * ByteBuffer, which can be uploaded straight to an Alpha format Texture for the 
+     * colours to be looked up on the GPU by the PaletteShader.
+     * 
+     * @return true if takeIndexBuffer is supported.
+     */
+    public boolean isIndexBufferSupported() {
+        return false;
+    }
+    
+    /**
+     * Takes the latest completed frame of colour indexes, one byte per pixel, for 
+     * uploading to the GPU. The ULA renders directly into these buffers, so there
+     * is no copy. The returned buffer belongs to the caller until the next call. The
+     * default implementation, for when isIndexBufferSupported returns false, never has
+     * a new frame to give.
+     * 
+     * @return The direct ByteBuffer holding the new frame, or null if there was no new frame.
+     */
+    public ByteBuffer takeIndexBuffer() {
+        return null;
+    }
+    
+    /**
+     * Returns a hash of each line of the frame that was last taken by updatePixmap
+     * or takeIndexBuffer. Comparing these with the hashes of the frame
+     * that a Texture was last updated with tells us which lines have changed, so that 
+     * only those lines need to be uploaded to the GPU.
+     * 
+     * @return The line hashes, or null if line hashes are not supported.
+     */
+    public long[] getLineHashes() {
+        return null;
+    }
+    
+    /**
+     * Converts the given colour index data to RGBA8888 colours.
+     * 
+     * @param indexData The colour indexes to convert.
+     * @param rgbaData The buffer to write the RGBA8888 colours to.
+     */
+    protected static void convertToRgba8888(ByteBuffer indexData, IntBuffer rgbaData) {
+        for (int i = 0, length = indexData.capacity(); i < length; i++) {
+            rgbaData.put(i, PALETTE[indexData.get(i)]);
+        }
+    }
+    
+    /**
+     * Calculates a hash of each line of the given colour index data. This is a 64 bit
+     * FNV-1a hash, so that the chance of a changed line having the same hash as 
+     * before is negligible.
+     * 
+     * @param indexData The colour indexes to calculate the line hashes for.
+     * @param width The number of pixels in each line.
+     * @param lineHashes The array to write the line hashes to.
+     */
+    protected static void hashLines(ByteBuffer indexData, int width, long[] lineHashes) {
+        for (int line = 0, index = 0; line < lineHashes.length; line++) {
+            long hash = 0xcbf29ce484222325L;
+            for (int end = index + width; index < end; index++) {
+                hash ^= indexData.get(index);
+                hash *= 0x100000001b3L;
+            }
+            lineHashes[line] = hash;
+        }
+    }
 }
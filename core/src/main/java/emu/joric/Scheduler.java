@@ -0,0 +1,217 @@
+package emu.joric;
+
+/**
+ * Keeps the machine's cycle clock, along with a queue of timed events, so that the
+ * chips only need to be advanced when something is due to happen (e.g. a VIA timer
+ * underflow) or when the CPU accesses them, rather than on every single cycle. The
+ * queue is a binary heap held in an array, ordered by due cycle, so that scheduling
+ * and firing events does not allocate.
+ *
+ * @author Lance Ewing
+ */
+public class Scheduler {
+
+    /**
+     * An event that can be scheduled to fire on a given machine cycle. An Event can
+     * only be in the queue once. Scheduling an Event that is already queued moves it
+     * to the new due cycle.
+     */
+    public static abstract class Event {
+
+        /**
+         * The machine cycle on which this Event is due.
+         */
+        private long dueCycle;
+
+        /**
+         * The position of this Event within the heap, or -1 if it isn't scheduled.
+         */
+        private int heapIndex = -1;
+
+        /**
+         * Invoked when the machine cycle clock reaches this Event's due cycle. The
+         * Event has been removed from the queue by this point, so can reschedule itself.
+         */
+        public abstract void fire();
+
+        /**
+         * @return The machine cycle on which this Event is, or was most recently, due.
+         */
+        public long getDueCycle() {
+            return dueCycle;
+        }
+
+        /**
+         * @return true if this Event is currently in the queue.
+         */
+        public boolean isScheduled() {
+            return (heapIndex >= 0);
+        }
+    }
+
+    /**
+     * The number of machine cycles that have been completed.
+     */
+    private long cycles;
+
+    /**
+     * The due cycle of the Event at the top of the heap, or Long.MAX_VALUE if the
+     * queue is empty. Cached here to keep the per cycle check as cheap as possible.
+     */
+    private long nextEventCycle = Long.MAX_VALUE;
+
+    /**
+     * The queued events, as a binary heap ordered by due cycle.
+     */
+    private Event[] heap = new Event[16];
+
+    /**
+     * The number of events in the heap.
+     */
+    private int size;
+
+    /**
+     * Gets the current value of the machine cycle clock, i.e. the number of cycles
+     * that have been completed.
+     *
+     * @return The current machine cycle.
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Gets the machine cycle on which the next event is due.
+     *
+     * @return The due cycle of the next event, or Long.MAX_VALUE if none are scheduled.
+     */
+    public long getNextEventCycle() {
+        return nextEventCycle;
+    }
+
+    /**
+     * Advances the machine cycle clock by the given number of cycles, and then fires
+     * any events that have become due.
+     *
+     * @param numOfCycles The number of cycles that have been emulated.
+     */
+    public void advance(int numOfCycles) {
+        cycles += numOfCycles;
+        if (cycles >= nextEventCycle) {
+            fireDueEvents();
+        }
+    }
+
+    /**
+     * Schedules the given Event to fire on the given machine cycle. If the Event is
+     * already scheduled, it is moved.
+     *
+     * @param event The Event to schedule.
+     * @param dueCycle The machine cycle on which the Event should fire.
+     */
+    public void schedule(Event event, long dueCycle) {
+        if (event.heapIndex >= 0) {
+            long oldDueCycle = event.dueCycle;
+            event.dueCycle = dueCycle;
+            if (dueCycle < oldDueCycle) {
+                siftUp(event.heapIndex);
+            } else {
+                siftDown(event.heapIndex);
+            }
+        } else {
+            if (size == heap.length) {
+                Event[] newHeap = new Event[size << 1];
+                System.arraycopy(heap, 0, newHeap, 0, size);
+                heap = newHeap;
+            }
+            event.dueCycle = dueCycle;
+            event.heapIndex = size;
+            heap[size++] = event;
+            siftUp(event.heapIndex);
+        }
+        nextEventCycle = heap[0].dueCycle;
+    }
+
+    /**
+     * Removes the given Event from the queue, if it is scheduled.
+     *
+     * @param event The Event to cancel.
+     */
+    public void cancel(Event event) {
+        int index = event.heapIndex;
+        if (index >= 0) {
+            event.heapIndex = -1;
+            Event last = heap[--size];
+            heap[size] = null;
+            if (index < size) {
+                heap[index] = last;
+                last.heapIndex = index;
+                siftDown(index);
+                siftUp(last.heapIndex);
+            }
+            nextEventCycle = (size > 0? heap[0].dueCycle : Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Fires, in due cycle order, all events that are due on or before the current
+     * machine cycle, including any that become due as a result of the others firing.
+     */
+    private void fireDueEvents() {
+        while ((size > 0) && (heap[0].dueCycle <= cycles)) {
+            Event event = heap[0];
+            cancel(event);
+            event.fire();
+        }
+    }
+
+    /**
+     * Moves the Event at the given heap index up towards the top of the heap until its
+     * parent is due no later than it is.
+     *
+     * @param index The heap index of the Event to move.
+     */
+    private void siftUp(int index) {
+        Event event = heap[index];
+        while (index > 0) {
+            int parentIndex = (index - 1) >> 1;
+            Event parent = heap[parentIndex];
+            if (parent.dueCycle <= event.dueCycle) {
+                break;
+            }
+            heap[index] = parent;
+            parent.heapIndex = index;
+            index = parentIndex;
+        }
+        heap[index] = event;
+        event.heapIndex = index;
+    }
+
+    /**
+     * Moves the Event at the given heap index down towards the bottom of the heap until
+     * both of its children are due no earlier than it is.
+     *
+     * @param index The heap index of the Event to move.
+     */
+    private void siftDown(int index) {
+        Event event = heap[index];
+        int half = size >> 1;
+        while (index < half) {
+            int childIndex = (index << 1) + 1;
+            Event child = heap[childIndex];
+            int rightIndex = childIndex + 1;
+            if ((rightIndex < size) && (heap[rightIndex].dueCycle < child.dueCycle)) {
+                childIndex = rightIndex;
+                child = heap[childIndex];
+            }
+            if (event.dueCycle <= child.dueCycle) {
+                break;
+            }
+            heap[index] = child;
+            child.heapIndex = index;
+            index = childIndex;
+        }
+        heap[index] = event;
+        event.heapIndex = index;
+    }
+}
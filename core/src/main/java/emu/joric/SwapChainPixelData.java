@@ -0,0 +1,127 @@
+package emu.joric;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.badlogic.gdx.graphics.Pixmap;
+
+import emu.joric.video.FrameSwapChain;
+
+/**
+ * PixelData implementation for the platforms that run the machine on its own thread,
+ * i.e. desktop and Android.
+ *
+ * The ULA renders on the machine thread, while the Pixmap is updated on the UI
+ * thread, so the colour indexes are handed over through a FrameSwapChain. The ULA
+ * renders directly into the swap chain's back buffer, and the UI thread either
+ * converts the front buffer to RGBA8888 or uploads it straight to the GPU.
+ *
+ * A hash of each line is calculated as each frame is completed, so that the UI
+ * thread can work out which lines have changed since a Texture was last updated.
+ *
+ * @author Lance Ewing
+ */
+public class SwapChainPixelData extends PixelData {
+
+    private FrameSwapChain swapChain;
+
+    // The hash of each line of each of the buffers in the swap chain.
+    private long[][] bufferLineHashes;
+
+    // The buffer that the ULA is currently rendering to. Owned by the machine thread.
+    private ByteBuffer indexData;
+
+    // The number of pixels in each line.
+    private int width;
+
+    @Override
+    public void init(int width, int height) {
+        swapChain = new FrameSwapChain(width * height);
+        bufferLineHashes = new long[3][height];
+        this.width = width;
+        indexData = swapChain.getBackBuffer();
+    }
+
+    @Override
+    public void putPixel(int ulaIndex, int colourIndex) {
+        indexData.put(ulaIndex, (byte)colourIndex);
+    }
+
+    @Override
+    public void putCell(int ulaIndex, int cellData, int ink, int paper) {
+        putCellPixels(ulaIndex, decodeCell(cellData, ink, paper));
+    }
+
+    @Override
+    public void putCellPixels(int ulaIndex, long pixels) {
+        // The buffers are little endian, so the low byte is written to the lowest index.
+        indexData.putInt(ulaIndex, (int)pixels);
+        indexData.putShort(ulaIndex + 4, (short)(pixels >>> 32));
+    }
+
+    @Override
+    public void clearPixels() {
+        // Publish a cleared frame, so that the UI thread picks it up on its next update.
+        for (int i = 0, length = indexData.capacity(); i < length; i++) {
+            indexData.put(i, (byte)0);
+        }
+        frameComplete();
+    }
+
+    @Override
+    public void frameComplete() {
+        hashLines(indexData, width, bufferLineHashes[swapChain.getBackBufferIndex()]);
+        indexData = swapChain.publish();
+        Runnable listener = frameCompleteListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    @Override
+    public boolean isFrameNeeded() {
+        // The frame that has just been completed is always pending when this is checked,
+        // so it is only when the UI thread hasn't taken the frame before that either that
+        // it has fallen behind.
+        return (swapChain.getPendingFrameCount() < 2);
+    }
+
+    @Override
+    public boolean updatePixmap(Pixmap pixmap) {
+        ByteBuffer frontBuffer = swapChain.take();
+        if (frontBuffer == null) {
+            return false;
+        }
+
+        convertFrame(frontBuffer, pixmap);
+        return true;
+    }
+
+    /**
+     * Converts a frame of colour indexes to the RGBA8888 colours in the Pixmap.
+     * Platforms with a faster way of doing this can override it.
+     *
+     * @param indexData The colour indexes of the frame.
+     * @param pixmap The Pixmap to write the RGBA8888 colours to.
+     */
+    protected void convertFrame(ByteBuffer indexData, Pixmap pixmap) {
+        // Viewed as big endian ints, the RGBA8888 colours are in the R, G, B, A byte
+        // order that the Pixmap's buffer expects.
+        convertToRgba8888(indexData, pixmap.getPixels().duplicate().order(ByteOrder.BIG_ENDIAN).asIntBuffer());
+    }
+
+    @Override
+    public boolean isIndexBufferSupported() {
+        return true;
+    }
+
+    @Override
+    public ByteBuffer takeIndexBuffer() {
+        return swapChain.take();
+    }
+
+    @Override
+    public long[] getLineHashes() {
+        return bufferLineHashes[swapChain.getFrontBufferIndex()];
+    }
+}
@@ -0,0 +1,198 @@
+package emu.joric;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import emu.joric.sound.AYPSG;
+
+/**
+ * Paces the emulation from the display's vertical sync, so that exactly one Machine
+ * frame is emulated for each refresh of a 50 Hz display, or each second refresh of a
+ * 100 Hz display, and so on. Every emulated frame is then shown for the same amount
+ * of time, so scrolling is smooth, and the machine thread sleeps between frames
+ * rather than spinning.
+ *
+ * The UI thread tells the VsyncPacer each time that it renders, which with vsync on
+ * is once per refresh. The interval between refreshes is measured, rather than
+ * trusting the reported display mode, and the vsync pacing is only used if the
+ * display's rate is within 1% of a whole multiple of the Oric's 50.08 Hz. The
+ * difference that remains is absorbed by resampling the audio by a small adaptive
+ * ratio, which is nudged further by how much audio is queued, so that the audio
+ * output's clock is kept in step with the display's clock.
+ *
+ * @author Lance Ewing
+ */
+public class VsyncPacer {
+
+    // The display's rate has to be within this fraction of a whole multiple of the
+    // Oric's frame rate for the vsync pacing to be used.
+    private static final double MAX_RATE_MISMATCH = 0.01;
+
+    // The most number of refreshes per Oric frame, i.e. up to 200 Hz displays.
+    private static final int MAX_REFRESHES_PER_FRAME = 4;
+
+    // The number of refreshes that are measured before the refresh interval is trusted.
+    private static final int WARM_UP_REFRESHES = 60;
+
+    // How much each refresh interval contributes to the average.
+    private static final double INTERVAL_SMOOTHING = 0.02;
+
+    // The target amount of audio to have queued, and how strongly, and by how much
+    // at most, the resampling ratio is nudged when the queued audio is away from it.
+    private static final int TARGET_LATENCY_MS = 100;
+    private static final double ADJUSTMENT_GAIN = 0.02;
+    private static final double MAX_ADJUSTMENT = 0.005;
+
+    private AYPSG psg;
+
+    // The number of times that the display has refreshed. Incremented by the UI thread.
+    private AtomicLong refreshCount;
+
+    // The time of the last refresh, and the average interval between refreshes. Updated
+    // by the UI thread.
+    private long lastRefreshTime;
+    private volatile double averageRefreshNanos;
+    private int measuredRefreshes;
+
+    // The number of refreshes per Oric frame, or 0 if the display's rate isn't close
+    // enough to a multiple of the Oric's frame rate.
+    private volatile int refreshesPerFrame;
+
+    // The refresh count at which the last frame was emulated. Owned by the machine thread.
+    private long lastFrameRefreshCount;
+
+    private volatile Thread machineThread;
+
+    /**
+     * Constructor for VsyncPacer.
+     *
+     * @param psg The AY-3-8912 that is generating the samples.
+     */
+    public VsyncPacer(AYPSG psg) {
+        this.psg = psg;
+        this.refreshCount = new AtomicLong();
+    }
+
+    /**
+     * Invoked by the UI thread each time that it renders. Measures the interval since
+     * the last refresh, and wakes the machine thread.
+     */
+    public void refresh() {
+        long now = System.nanoTime();
+        if (lastRefreshTime != 0) {
+            long interval = now - lastRefreshTime;
+            if (measuredRefreshes == 0) {
+                averageRefreshNanos = interval;
+                measuredRefreshes++;
+            } else if (interval < (averageRefreshNanos * 2)) {
+                // Long gaps, e.g. while a window is being dragged, aren't counted.
+                averageRefreshNanos += (interval - averageRefreshNanos) * INTERVAL_SMOOTHING;
+                measuredRefreshes++;
+            }
+            if (measuredRefreshes >= WARM_UP_REFRESHES) {
+                refreshesPerFrame = calculateRefreshesPerFrame(averageRefreshNanos);
+            }
+        }
+        lastRefreshTime = now;
+
+        refreshCount.incrementAndGet();
+        Thread thread = machineThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Works out how many display refreshes there are per Oric frame.
+     *
+     * @param refreshNanos The interval between display refreshes, in nanoseconds.
+     *
+     * @return The number of refreshes per Oric frame, or 0 if it isn't a whole number.
+     */
+    private static int calculateRefreshesPerFrame(double refreshNanos) {
+        int refreshes = (int)Math.round(JOricRunner.NANOS_PER_FRAME / refreshNanos);
+        if ((refreshes < 1) || (refreshes > MAX_REFRESHES_PER_FRAME)) {
+            return 0;
+        }
+        double mismatch = Math.abs((refreshes * refreshNanos) - JOricRunner.NANOS_PER_FRAME);
+        return ((mismatch / JOricRunner.NANOS_PER_FRAME) <= MAX_RATE_MISMATCH? refreshes : 0);
+    }
+
+    /**
+     * Returns whether the display's rate is suitable for the vsync pacing.
+     *
+     * @return true if the emulation can be paced by the display's vsync.
+     */
+    public boolean isDisplaySynced() {
+        return (refreshesPerFrame > 0);
+    }
+
+    /**
+     * Invoked by the machine thread after each frame. Waits until the display has
+     * refreshed enough times for the next frame to be due. If the display stops
+     * refreshing, e.g. the window has been minimised, then this gives up after a
+     * couple of frames' worth of time, so that the caller can pace by the system
+     * clock instead.
+     *
+     * @return true if the next frame is due, or false if the wait timed out.
+     */
+    public boolean waitForFrame() {
+        machineThread = Thread.currentThread();
+        int refreshes = refreshesPerFrame;
+        long currentRefreshCount = refreshCount.get();
+        if ((currentRefreshCount - lastFrameRefreshCount) > refreshes) {
+            // The machine thread has either fallen behind, or has been paced by something
+            // else in the meantime. Either way, the next frame starts from now.
+            lastFrameRefreshCount = currentRefreshCount;
+        }
+
+        long deadline = System.nanoTime() + (JOricRunner.NANOS_PER_FRAME * 2L);
+        while ((currentRefreshCount = refreshCount.get()) < (lastFrameRefreshCount + refreshes)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+        lastFrameRefreshCount = currentRefreshCount;
+        return true;
+    }
+
+    /**
+     * Sets the resampling ratio of the audio, for the difference between the display's
+     * rate and the Oric's frame rate, nudged by how far the queued audio is from the
+     * target. Invoked by the machine thread while the vsync pacing is in use.
+     */
+    public void updateAudioRate() {
+        int refreshes = refreshesPerFrame;
+        if (refreshes == 0) {
+            return;
+        }
+
+        // The emulation runs faster or slower than a real Oric by this ratio, so the
+        // samples per emulated second have to be adjusted by the inverse.
+        double speed = JOricRunner.NANOS_PER_FRAME / (refreshes * averageRefreshNanos);
+        double rateAdjustment = 1.0 / speed;
+
+        int queuedSamples = psg.getQueuedSampleCount();
+        int sampleRate = psg.getSampleRate();
+        if ((queuedSamples >= 0) && (sampleRate > 0)) {
+            // As with the AudioClockPacer, this is just after a frame's samples have
+            // been generated, so on average half a frame's worth more is queued.
+            int targetSamples = (sampleRate * TARGET_LATENCY_MS) / 1000;
+            targetSamples += (int)((sampleRate * (long)JOricRunner.NANOS_PER_FRAME) / 2000000000L);
+            double deviation = ((double)(targetSamples - queuedSamples)) / targetSamples;
+            rateAdjustment *= 1.0 + Math.max(-MAX_ADJUSTMENT, Math.min(MAX_ADJUSTMENT, deviation * ADJUSTMENT_GAIN));
+        }
+
+        psg.setRateAdjustment(rateAdjustment);
+    }
+
+    /**
+     * Removes the audio resampling. Invoked by the machine thread when the emulation
+     * is no longer paced by the display.
+     */
+    public void resetAudioRate() {
+        psg.setRateAdjustment(1.0);
+    }
+}
@@ -1,9 +1,5 @@
 package emu.joric.cpu;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.Callable;
-
 import emu.joric.BaseChip;
 import emu.joric.snap.Snapshot;
 
@@ -27,29 +23,18 @@ public class Cpu6502 extends BaseChip {
   
   /**
    * An opcode outside normal range that is used to execute a trap routine, 
-   * which can perform miscellaneous logic, such as the quick tape load.
+   * which can perform miscellaneous logic, such as the quick tape load. It is
+   * never stored in memory, which only holds bytes. Instead, the op code fetch
+   * substitutes it when there is a trap routine registered at the PC.
    */
   private static final int EMU_TRAP_CODE = 0x100;
   
   /**
-   * Data type used as the values within the traps Map.
-   */
-  private class Trap {
-    int originalByte;
-    Callable<Integer> trapRoutine;
-    Trap(int originalByte, Callable<Integer> trapRoutine) {
-      this.originalByte = originalByte;
-      this.trapRoutine = trapRoutine;
-    }
-  };
-  
-  /**
-   * Trap routines currently registered with this Cpu6502. The key is the
-   * memory address and the Trap contains the code to run when the PC
-   * is at that address and is used for storing the original byte at the
-   * trap address for when the trap routine is deregistered.
+   * Trap routines currently registered with this Cpu6502, indexed by the memory
+   * address. The TrapRoutine contains the code to run when the PC is at that 
+   * address. Unused entries are null.
    */
-  private Map<Integer, Trap> traps;
+  private TrapRoutine[] trapRoutines;
   
   // Instruction constants.
   private static final int ADC = 0;
@@ -622,7 +607,7 @@ public class Cpu6502 extends BaseChip {
    * @param snapshot An optional machine Snapshot to restore the CPU state from.
    */
   public Cpu6502(Snapshot snapshot) {
-    traps = new HashMap<Integer, Trap>();
+    trapRoutines = new TrapRoutine[0x10000];
     
     if (snapshot != null) {
       // Set the program counter to the reset vector.
@@ -682,7 +667,7 @@ public class Cpu6502 extends BaseChip {
    * @param address the address of the word to get.
    */
   private int getWordFromMemory(int address) {
-    return (memoryMap[address].readMemory(address) | ((memoryMap[address + 1].readMemory(address + 1) << 8) & 0xFF00));
+    return (memory.readMemory(address) | ((memory.readMemory(address + 1) << 8) & 0xFF00));
   }
 
   /**
@@ -758,25 +743,36 @@ public class Cpu6502 extends BaseChip {
 
   /**
    * Registers a trap routine with this Cpu6502. When the PC is at the given address,
-   * it will execute the given Runnable routine.
+   * it will execute the given TrapRoutine. The memory at the address is left as it is.
    * 
    * @param address The address to set the trap up at.
    * @param trapRoutine The code to run when that trap is hit.
    */
-  public void registerTrapRoutine(int address, Callable<Integer> trapRoutine) {
-    traps.put(address, new Trap(memory.readMemory(address), trapRoutine));
-    memory.forceWrite(address, EMU_TRAP_CODE);
+  public void registerTrapRoutine(int address, TrapRoutine trapRoutine) {
+    trapRoutines[address] = trapRoutine;
   }
   
   /**
-   * Deregisters a trap routine. The original byte at the address is restored to the
-   * trap address. 
+   * Deregisters a trap routine. The instruction at the address will run as normal
+   * the next time that the PC reaches it.
    * 
    * @param address The address that the trap was set up at.
    */
   public void deregisterTrapRoutine(int address) {
-    Trap trap = traps.remove(address);
-    memory.forceWrite(address, trap.originalByte);
+    trapRoutines[address] = null;
+  }
+  
+  /**
+   * Fetches the op code at the PC, and increments the PC. If there is a trap routine 
+   * registered at the PC, then the emulation trap code is returned instead of the 
+   * byte in memory.
+   * 
+   * @return The op code to execute.
+   */
+  private int fetchOpCode() {
+    int opcode = (trapRoutines[programCounter & 0xFFFF] == null? memory.readMemory(programCounter) : EMU_TRAP_CODE);
+    programCounter++;
+    return opcode;
   }
   
   /**
@@ -1141,14 +1137,12 @@ public class Cpu6502 extends BaseChip {
 
       case TRAP:
         // A Trap pretends to be 6502 subroutine, allowing the emulator to hook non-standard features into the emulation.
-        Trap trap = traps.get(programCounter - 1);
-        if (trap != null) {
-          try {
-            Integer newPC = trap.trapRoutine.call();
-            if (newPC != null) {
-              programCounter = newPC;
-            }
-          } catch (Exception e) { /* Will never happen. It's part of the Callable interface so has to be caught. */ }
+        TrapRoutine trapRoutine = trapRoutines[(programCounter - 1) & 0xFFFF];
+        if (trapRoutine != null) {
+          int newPC = trapRoutine.execute();
+          if (newPC != TrapRoutine.NO_PC_CHANGE) {
+            programCounter = newPC;
+          }
         } else {
           System.err.print("Failed to run trap routine. No routine matches PC value of: " + programCounter);
         }
@@ -1162,6 +1156,16 @@ public class Cpu6502 extends BaseChip {
   // TODO: Decide whether to keep this long term. Its here mainly for timing debugging at present.
   private long totalCycles;
   
+  /**
+   * Gets the total number of cycles that either core has emulated. Used by the unit
+   * tests to compare the timing of the two cores.
+   * 
+   * @return The total number of cycles emulated.
+   */
+  long getTotalCycles() {
+    return totalCycles;
+  }
+  
   /**
    * Steps through a single instruction. Used mainly for unit tests and debugging CPU.
    */
@@ -1217,7 +1221,7 @@ public class Cpu6502 extends BaseChip {
 
         case EXECUTE_BRANCH:
           // Fetch offset
-          inputDataLatch = memoryMap[programCounter].readMemory(programCounter);
+          inputDataLatch = memory.readMemory(programCounter);
           programCounter++;
           // Execute the branch test.
           executeInstruction();
@@ -1239,8 +1243,7 @@ public class Cpu6502 extends BaseChip {
           currentInstructionStep = 0;
           if ((interruptStatus == 0) || (((interruptStatus & S_NMI) == 0) && interruptDisableFlag)) {
             // No interrupts, so proceed to next instruction.
-            instructionRegister = memoryMap[programCounter].readMemory(programCounter);
-            programCounter++;
+            instructionRegister = fetchOpCode();
             instructionSteps = INSTRUCTION_DECODE_MATRIX[instructionRegister];
           }
           else {
@@ -1252,7 +1255,7 @@ public class Cpu6502 extends BaseChip {
 
         case EXECUTE_MID_ADL:           // Executes (does a write unmodified data at same time)
           // Dummy write. No I/O in page zero (ASL, LSR, ROL, ROR, DEC, INC - Zero Page)
-          mem[effectiveAddressLow] = inputDataLatch;
+          mem[effectiveAddressLow] = (byte)inputDataLatch;
           executeInstruction();
           break;
 
@@ -1264,7 +1267,7 @@ public class Cpu6502 extends BaseChip {
 
         case EXECUTE_MID_BAL:
           // Dummy write. No I/O in page zero (ASL, LSR, ROL, ROR, DEC, INC - Zero Page, X)
-          mem[baseAddressLow] = inputDataLatch;
+          mem[baseAddressLow] = (byte)inputDataLatch;
           executeInstruction();
           break;
 
@@ -1277,7 +1280,7 @@ public class Cpu6502 extends BaseChip {
         case EXECUTE_STORE_ADL:
           // No I/O in pzge zero (STA, STX, STY - Zero Page)
           executeInstruction();
-          mem[effectiveAddressLow] = dataBusBuffer;
+          mem[effectiveAddressLow] = (byte)dataBusBuffer;
           break;
 
         case EXECUTE_STORE_EA:
@@ -1295,88 +1298,88 @@ public class Cpu6502 extends BaseChip {
         case EXECUTE_STORE_BAL:
           // No I/O in page zero (STY, STA, STX - Zero Page, X & Y)
           executeInstruction();
-          mem[baseAddressLow] = dataBusBuffer;
+          mem[baseAddressLow] = (byte)dataBusBuffer;
           break;
 
 
         case FETCH_ADH_BAL:
           // No I/O in page zero, so we can access memory directly.
-          effectiveAddressHigh = (mem[baseAddressLow] << 8);
+          effectiveAddressHigh = ((mem[baseAddressLow] & 0xFF) << 8);
           break;
 
         case FETCH_ADH_FFFB:
-          effectiveAddressHigh = (memoryMap[0xFFFB].readMemory(0xFFFB) << 8);
+          effectiveAddressHigh = (memory.readMemory(0xFFFB) << 8);
           break;
 
         case FETCH_ADH_FFFF:
-          effectiveAddressHigh = (memoryMap[0xFFFF].readMemory(0xFFFF) << 8);
+          effectiveAddressHigh = (memory.readMemory(0xFFFF) << 8);
           break;
 
         case FETCH_ADH_PC:
           // Program counter is highly unlikely to be pointing at I/O
-          effectiveAddressHigh = (memoryMap[programCounter].readMemory(programCounter) << 8);
+          effectiveAddressHigh = (memory.readMemory(programCounter) << 8);
           programCounter++;
           break;
 
         case FETCH_ADH_IA:
           // Only used by JMP, so not likely to have IO address involved.
           int indirectAddress = indirectAddressHigh | indirectAddressLow;
-          effectiveAddressHigh = (memoryMap[indirectAddress].readMemory(indirectAddress) << 8);
+          effectiveAddressHigh = (memory.readMemory(indirectAddress) << 8);
           break;
 
         case FETCH_ADL_BAL:
           // No I/O in page zero, so we can access memory directly.
-          effectiveAddressLow = mem[baseAddressLow];
+          effectiveAddressLow = (mem[baseAddressLow] & 0xFF);
           baseAddressLow = ((baseAddressLow + 1) & 0xFF);
           break;
 
         case FETCH_ADL_FFFA:
-          effectiveAddressLow = memoryMap[0xFFFA].readMemory(0xFFFA);
+          effectiveAddressLow = memory.readMemory(0xFFFA);
           break;
 
         case FETCH_ADL_FFFE:
-          effectiveAddressLow = memoryMap[0xFFFE].readMemory(0xFFFE);
+          effectiveAddressLow = memory.readMemory(0xFFFE);
           break;
 
         case FETCH_ADL_PC:
           // Program counter is highly unlikely to be pointing at I/O
-          effectiveAddressLow = memoryMap[programCounter].readMemory(programCounter);
+          effectiveAddressLow = memory.readMemory(programCounter);
           programCounter++;
           break;
 
         case FETCH_ADL_IA:
           // Only used by JMP, so not likely to have IO address involved.
           indirectAddress = indirectAddressHigh | indirectAddressLow;
-          effectiveAddressLow = memoryMap[indirectAddress].readMemory(indirectAddress);
+          effectiveAddressLow = memory.readMemory(indirectAddress);
           indirectAddressLow = ((indirectAddressLow + 1) & 0xFF); // Well known NMOS 6502 bug
           break;
 
         case FETCH_BAH_IAL:
           // No I/O in page zero.
-          baseAddressHigh = (mem[indirectAddressLow] << 8);
+          baseAddressHigh = ((mem[indirectAddressLow] & 0xFF) << 8);
           break;
 
         case FETCH_BAH_PC:
           // Program counter is highly unlikely to be pointing at I/O
-          baseAddressHigh = (memoryMap[programCounter].readMemory(programCounter) << 8);
+          baseAddressHigh = (memory.readMemory(programCounter) << 8);
           programCounter++;
           break;
 
         case FETCH_BAL_IAL:             // Increments IAL by 1 aswell (& 0xFF??)
           // No I/O in page zero.
-          baseAddressLow = mem[indirectAddressLow];
+          baseAddressLow = (mem[indirectAddressLow] & 0xFF);
           indirectAddressLow = ((indirectAddressLow + 1) & 0xFF);
           break;
 
         case FETCH_BAL_PC:
           // Program counter is highly unlikely to be pointing at I/O
-          baseAddressLow = memoryMap[programCounter].readMemory(programCounter);
+          baseAddressLow = memory.readMemory(programCounter);
           programCounter++;
           break;
 
         case FETCH_DATA_ADL:
           // No I/O in page zero.
-          inputDataLatch = mem[effectiveAddressLow];
+          inputDataLatch = (mem[effectiveAddressLow] & 0xFF);
           break;
 
         case FETCH_DATA_BA:
@@ -1417,7 +1420,7 @@ public class Cpu6502 extends BaseChip {
 
         case FETCH_DATA_BAL:
           // No I/O in page zero
-          inputDataLatch = mem[baseAddressLow];
+          inputDataLatch = (mem[baseAddressLow] & 0xFF);
           break;
 
         case FETCH_DATA_EA:
@@ -1426,14 +1429,14 @@ public class Cpu6502 extends BaseChip {
 
         case FETCH_DATA_PC:
           // Program counter is highly unlikely to be pointing at I/O
-          inputDataLatch = memoryMap[programCounter].readMemory(programCounter);
+          inputDataLatch = memory.readMemory(programCounter);
           programCounter++;
           break;
 
         case FETCH_DATA_SP:
           // No I/O in the stack page (PLP, PLA)
           stackPointer = ((stackPointer + 1) & 0xFF);
-          inputDataLatch = mem[stackPointer + 0x100];
+          inputDataLatch = (mem[stackPointer + 0x100] & 0xFF);
           break;
 
         case FETCH_DIS_BA_X:
@@ -1475,7 +1478,7 @@ public class Cpu6502 extends BaseChip {
         case FETCH_DIS_PC:              // Fetches using PC but doesn't increment PC.
           // Program counter is highly unlikely to be pointing at I/O (PLA, PLP. RTS, RTI, IRQ, NMI)
           // TODO: Apparently it does fetch data using PC, but having this here affects the sound. ?!
-          //memoryMap[programCounter].readMemory(programCounter);
+          //memory.readMemory(programCounter);
           break;
 
         case FETCH_DIS_SP:
@@ -1484,45 +1487,45 @@ public class Cpu6502 extends BaseChip {
 
         case FETCH_IAH_PC:
           // Program counter is highly unlikely to be pointing at I/O
-          indirectAddressHigh = (memoryMap[programCounter].readMemory(programCounter) << 8);
+          indirectAddressHigh = (memory.readMemory(programCounter) << 8);
           programCounter++;
           break;
 
         case FETCH_IAL_PC:
           // Program counter is highly unlikely to be pointing at I/O
-          indirectAddressLow = memoryMap[programCounter].readMemory(programCounter);
+          indirectAddressLow = memory.readMemory(programCounter);
           programCounter++;
           break;
           
         case FETCH_INC_PC:
           // Fetch using PC, discard data, then increment PC.
-          memoryMap[programCounter].readMemory(programCounter);
+          memory.readMemory(programCounter);
           programCounter++;
           break;
           
         case FETCH_P_SP:
           // No I/O in the stack page (RTI)
           stackPointer = ((stackPointer + 1) & 0xFF);
-          processorStatusRegister = mem[stackPointer + 0x100];
+          processorStatusRegister = (mem[stackPointer + 0x100] & 0xFF);
           unpackPSR();
           break;
           
         case FETCH_PCH_SP:
           // No I/O in the stack page (RTS, RTI)
           stackPointer = ((stackPointer + 1) & 0xFF);
-          programCounter = (programCounter | (mem[stackPointer + 0x100] << 8));
+          programCounter = (programCounter | ((mem[stackPointer + 0x100] & 0xFF) << 8));
           break;
 
         case FETCH_PCL_SP:
           // No I/O in the stack page (RTS, RTI)
           stackPointer = ((stackPointer + 1) & 0xFF);
-          programCounter = mem[stackPointer + 0x100];
+          programCounter = (mem[stackPointer + 0x100] & 0xFF);
           break;
 
 
         case STORE_DATA_ADL:
           // No I/O in zero page (ASL, ROL, LSR, ROR, DEC, INC - Zero Page)
-          mem[effectiveAddressLow] = dataBusBuffer;
+          mem[effectiveAddressLow] = (byte)dataBusBuffer;
           break;
 
         case STORE_DATA_BA:
@@ -1532,7 +1535,7 @@ public class Cpu6502 extends BaseChip {
 
         case STORE_DATA_BAL:
           // No I/O in zero page (ASL, ROL, LSR, ROR, DEC, INC - Zero Page, X)
-          mem[baseAddressLow] = dataBusBuffer;
+          mem[baseAddressLow] = (byte)dataBusBuffer;
           break;
 
         case STORE_DATA_EA:
@@ -1542,26 +1545,26 @@ public class Cpu6502 extends BaseChip {
 
         case STORE_DATA_SP:
           // No I/O in the stack page (PHP, PHA)
-          mem[stackPointer + 0x100] = dataBusBuffer;
+          mem[stackPointer + 0x100] = (byte)dataBusBuffer;
           stackPointer = ((stackPointer - 1) & 0xFF);
           break;
 
         case STORE_P_SP:
           // No I/O in the stack page (BRK)
           packPSR();
-          mem[stackPointer + 0x100] = (processorStatusRegister | (instructionRegister == 0? 0x10 : 0)); // BRK flag only exists on stack.
+          mem[stackPointer + 0x100] = (byte)(processorStatusRegister | (instructionRegister == 0? 0x10 : 0)); // BRK flag only exists on stack.
           stackPointer = ((stackPointer - 1) & 0xFF);
           break;
 
         case STORE_PCH_SP:
           // No I/O in the stack page (BRK, JSR)
-          mem[stackPointer + 0x100] = (programCounter >> 8);
+          mem[stackPointer + 0x100] = (byte)(programCounter >> 8);
           stackPointer = ((stackPointer - 1) & 0xFF);
           break;
 
         case STORE_PCL_SP:
           // No I/O in the stack page (BRK, JSR)
-          mem[stackPointer + 0x100] = (programCounter & 0xFF);
+          mem[stackPointer + 0x100] = (byte)(programCounter & 0xFF);
           stackPointer = ((stackPointer - 1) & 0xFF);
           break;
 
@@ -1578,8 +1581,7 @@ public class Cpu6502 extends BaseChip {
 
       if ((interruptStatus == 0) || (((interruptStatus & S_NMI) == 0) && interruptDisableFlag)) {
         // No interrupts, so proceed to next instruction.
-        instructionRegister = memoryMap[programCounter].readMemory(programCounter);
-        programCounter++;
+        instructionRegister = fetchOpCode();
         instructionSteps = INSTRUCTION_DECODE_MATRIX[instructionRegister];
       }
       else {
@@ -1590,7 +1592,434 @@ public class Cpu6502 extends BaseChip {
       numOfInstructionSteps = instructionSteps.length;
     }
   }
-  
+
+  /**
+   * Emulates a whole instruction in one go, rather than a single machine cycle, and
+   * returns the number of cycles that the instruction took. This is the faster of the
+   * two CPU cores, since it avoids dispatching on every step of the decode matrix. The
+   * other chips are not interleaved with the individual cycles of the instruction, so it
+   * is up to the caller to catch them up by the returned number of cycles.
+   *
+   * Both cores share the same registers and flags, so it is possible to switch between
+   * them at any point. If the cycle-stepped core was part way through an instruction,
+   * then that instruction is completed first.
+   *
+   * @return The number of cycles that were emulated.
+   */
+  public int emulateInstruction() {
+    int cycles = 0, opcode = 0, interrupt = 0, address = 0;
+
+    if ((currentInstructionStep > 1) && (currentInstructionStep < numOfInstructionSteps)) {
+      // The cycle-stepped core is part way through an instruction, so finish it off.
+      do {
+        emulateCycle();
+        cycles++;
+      } while ((currentInstructionStep > 1) && (currentInstructionStep < numOfInstructionSteps));
+      return cycles;
+    }
+
+    if ((currentInstructionStep == 1) && (numOfInstructionSteps > 1)) {
+      // The cycle-stepped core has already fetched the op code (or started the interrupt
+      // sequence), which has used up the first cycle of the instruction.
+      cycles = -1;
+      if (instructionSteps == IRQ_STEPS) {
+        interrupt = S_IRQ;
+      } else if (instructionSteps == NMI_STEPS) {
+        interrupt = S_NMI;
+      } else {
+        opcode = instructionRegister;
+      }
+    } else if ((interruptStatus == 0) || (((interruptStatus & S_NMI) == 0) && interruptDisableFlag)) {
+      // No interrupts, so proceed to next instruction.
+      opcode = fetchOpCode();
+    } else {
+      // An interrupt occurred.
+      interrupt = ((interruptStatus & S_NMI) == 0? S_IRQ : S_NMI);
+    }
+
+    // Leave the cycle-stepped core in a state where it will fetch the next op code.
+    currentInstructionStep = 0;
+    numOfInstructionSteps = 0;
+
+    if (interrupt != 0) {
+      // No I/O in the stack page. B flag is not set for IRQ and NMI.
+      stackPush(programCounter >> 8);
+      stackPush(programCounter & 0xFF);
+      packPSR();
+      stackPush(processorStatusRegister);
+      interruptDisableFlag = true;
+      if (interrupt == S_NMI) {
+        programCounter = getWordFromMemory(0xFFFA);
+        // NMI signals occur on the negative transition only, so we need to reset.
+        interruptStatus &= ~S_NMI;
+      } else {
+        programCounter = getWordFromMemory(0xFFFE);
+      }
+      cycles += 7;
+      totalCycles += cycles;
+      return cycles;
+    }
+
+    instructionRegister = opcode;
+    instructionSteps = INSTRUCTION_DECODE_MATRIX[opcode];
+
+    switch (opcode) {
+      case 0x09: case 0x29: case 0x49: case 0x69: case 0xA0: case 0xA2:
+      case 0xA9: case 0xC0: case 0xC9: case 0xE0: case 0xE9:
+        // Immediate
+        inputDataLatch = fetchOperand();
+        executeInstruction();
+        cycles += 2;
+        break;
+
+      case 0x05: case 0x24: case 0x25: case 0x45: case 0x65: case 0xA4:
+      case 0xA5: case 0xA6: case 0xC4: case 0xC5: case 0xE4: case 0xE5:
+        // Zero Page. No I/O in page zero.
+        inputDataLatch = (mem[fetchOperand()] & 0xFF);
+        executeInstruction();
+        cycles += 3;
+        break;
+
+      case 0x15: case 0x35: case 0x55: case 0x75: case 0xB4: case 0xB5:
+      case 0xD5: case 0xF5:
+        // Zero Page, X
+        inputDataLatch = (mem[(fetchOperand() + indexRegisterX) & 0xFF] & 0xFF);
+        executeInstruction();
+        cycles += 4;
+        break;
+
+      case 0xB6:
+        // Zero Page, Y
+        inputDataLatch = (mem[(fetchOperand() + indexRegisterY) & 0xFF] & 0xFF);
+        executeInstruction();
+        cycles += 4;
+        break;
+
+      case 0x0D: case 0x2C: case 0x2D: case 0x4D: case 0x6D: case 0xAC:
+      case 0xAD: case 0xAE: case 0xCC: case 0xCD: case 0xEC: case 0xED:
+        // Absolute
+        inputDataLatch = memory.readMemory(fetchAbsoluteAddress());
+        executeInstruction();
+        cycles += 4;
+        break;
+
+      case 0x1D: case 0x3D: case 0x5D: case 0x7D: case 0xBC: case 0xBD:
+      case 0xDD: case 0xFD:
+        // Absolute, X
+        cycles += 4 + fetchDataIndexed(fetchAbsoluteAddress(), indexRegisterX);
+        executeInstruction();
+        break;
+
+      case 0x19: case 0x39: case 0x59: case 0x79: case 0xB9: case 0xBE:
+      case 0xD9: case 0xF9:
+        // Absolute, Y
+        cycles += 4 + fetchDataIndexed(fetchAbsoluteAddress(), indexRegisterY);
+        executeInstruction();
+        break;
+
+      case 0x01: case 0x21: case 0x41: case 0x61: case 0xA1: case 0xC1:
+      case 0xE1:
+        // (Indirect, X)
+        inputDataLatch = memory.readMemory(fetchIndexedIndirectAddress());
+        executeInstruction();
+        cycles += 6;
+        break;
+
+      case 0x11: case 0x31: case 0x51: case 0x71: case 0xB1: case 0xD1:
+      case 0xF1:
+        // (Indirect), Y
+        cycles += 5 + fetchDataIndexed(fetchIndirectBaseAddress(), indexRegisterY);
+        executeInstruction();
+        break;
+
+      case 0x06: case 0x26: case 0x46: case 0x66: case 0xC6: case 0xE6:
+        // ASL, ROL, LSR, ROR, DEC, INC - Zero Page. The dummy write has no effect in page zero.
+        address = fetchOperand();
+        inputDataLatch = (mem[address] & 0xFF);
+        executeInstruction();
+        mem[address] = (byte)dataBusBuffer;
+        cycles += 5;
+        break;
+
+      case 0x16: case 0x36: case 0x56: case 0x76: case 0xD6: case 0xF6:
+        // ASL, ROL, LSR, ROR, DEC, INC - Zero Page, X
+        address = ((fetchOperand() + indexRegisterX) & 0xFF);
+        inputDataLatch = (mem[address] & 0xFF);
+        executeInstruction();
+        mem[address] = (byte)dataBusBuffer;
+        cycles += 6;
+        break;
+
+      case 0x0E: case 0x2E: case 0x4E: case 0x6E: case 0xCE: case 0xEE:
+        // ASL, ROL, LSR, ROR, DEC, INC - Absolute
+        readModifyWrite(fetchAbsoluteAddress());
+        cycles += 6;
+        break;
+
+      case 0x1E: case 0x3E: case 0x5E: case 0x7E: case 0xDE: case 0xFE:
+        // ASL, ROL, LSR, ROR, DEC, INC - Absolute, X
+        readModifyWrite(fetchDiscardIndexed(fetchAbsoluteAddress(), indexRegisterX));
+        cycles += 7;
+        break;
+
+      case 0x84: case 0x85: case 0x86:
+        // STY, STA, STX - Zero Page
+        address = fetchOperand();
+        executeInstruction();
+        mem[address] = (byte)dataBusBuffer;
+        cycles += 3;
+        break;
+
+      case 0x94: case 0x95:
+        // STY, STA - Zero Page, X
+        address = ((fetchOperand() + indexRegisterX) & 0xFF);
+        executeInstruction();
+        mem[address] = (byte)dataBusBuffer;
+        cycles += 4;
+        break;
+
+      case 0x96:
+        // STX - Zero Page, Y
+        address = ((fetchOperand() + indexRegisterY) & 0xFF);
+        executeInstruction();
+        mem[address] = (byte)dataBusBuffer;
+        cycles += 4;
+        break;
+
+      case 0x8C: case 0x8D: case 0x8E:
+        // STY, STA, STX - Absolute
+        address = fetchAbsoluteAddress();
+        executeInstruction();
+        memory.writeMemory(address, dataBusBuffer);
+        cycles += 4;
+        break;
+
+      case 0x9D:
+        // STA - Absolute, X
+        address = fetchDiscardIndexed(fetchAbsoluteAddress(), indexRegisterX);
+        executeInstruction();
+        memory.writeMemory(address, dataBusBuffer);
+        cycles += 5;
+        break;
+
+      case 0x99:
+        // STA - Absolute, Y
+        address = fetchDiscardIndexed(fetchAbsoluteAddress(), indexRegisterY);
+        executeInstruction();
+        memory.writeMemory(address, dataBusBuffer);
+        cycles += 5;
+        break;
+
+      case 0x81:
+        // STA - (Indirect, X)
+        address = fetchIndexedIndirectAddress();
+        executeInstruction();
+        memory.writeMemory(address, dataBusBuffer);
+        cycles += 6;
+        break;
+
+      case 0x91:
+        // STA - (Indirect), Y
+        address = fetchDiscardIndexed(fetchIndirectBaseAddress(), indexRegisterY);
+        executeInstruction();
+        memory.writeMemory(address, dataBusBuffer);
+        cycles += 6;
+        break;
+
+      case 0x0A: case 0x18: case 0x2A: case 0x38: case 0x4A: case 0x58:
+      case 0x6A: case 0x78: case 0x88: case 0x8A: case 0x98: case 0x9A:
+      case 0xA8: case 0xAA: case 0xB8: case 0xBA: case 0xC8: case 0xCA:
+      case 0xD8: case 0xE8: case 0xEA: case 0xF8: case EMU_TRAP_CODE:
+        // Single byte instructions, and the emulation trap routine.
+        executeInstruction();
+        cycles += 2;
+        break;
+
+      case 0x10: case 0x30: case 0x50: case 0x70: case 0x90: case 0xB0:
+      case 0xD0: case 0xF0:
+        // Branches take 2 cycles, plus 1 if taken, plus 1 more if a page is crossed.
+        inputDataLatch = fetchOperand();
+        executeInstruction();
+        cycles += 2;
+        if (branchFlag) {
+          inputDataLatch = ((inputDataLatch & 0x80) == 0? inputDataLatch : inputDataLatch - 0x100);
+          branchAddress = ((programCounter + inputDataLatch) & 0xFFFF);
+          cycles += ((programCounter & 0xFF00) == (branchAddress & 0xFF00)? 1 : 2);
+          programCounter = branchAddress;
+        }
+        break;
+
+      case 0x00:
+        // BRK. Fetches the byte after the op code and discards it.
+        fetchOperand();
+        stackPush(programCounter >> 8);
+        stackPush(programCounter & 0xFF);
+        packPSR();
+        stackPush(processorStatusRegister | 0x10); // BRK flag only exists on stack.
+        interruptDisableFlag = true;
+        programCounter = getWordFromMemory(0xFFFE);
+        cycles += 7;
+        break;
+
+      case 0x20:
+        // JSR. The return address is pushed before the high byte is fetched.
+        address = fetchOperand();
+        stackPush(programCounter >> 8);
+        stackPush(programCounter & 0xFF);
+        address |= (fetchOperand() << 8);
+        programCounter = address;
+        cycles += 6;
+        break;
+
+      case 0x40:
+        // RTI
+        processorStatusRegister = stackPop();
+        unpackPSR();
+        programCounter = stackPop();
+        programCounter |= (stackPop() << 8);
+        cycles += 6;
+        break;
+
+      case 0x60:
+        // RTS. The final fetch is what moves the PC on from the pushed return address.
+        programCounter = stackPop();
+        programCounter |= (stackPop() << 8);
+        fetchOperand();
+        cycles += 6;
+        break;
+
+      case 0x08: case 0x48:
+        // PHP, PHA
+        executeInstruction();
+        stackPush(dataBusBuffer);
+        cycles += 3;
+        break;
+
+      case 0x28: case 0x68:
+        // PLP, PLA
+        inputDataLatch = stackPop();
+        executeInstruction();
+        cycles += 4;
+        break;
+
+      case 0x4C:
+        // JMP - Absolute
+        programCounter = fetchAbsoluteAddress();
+        cycles += 3;
+        break;
+
+      case 0x6C:
+        // JMP - Indirect. Includes the well known NMOS 6502 page wrap bug.
+        address = fetchAbsoluteAddress();
+        programCounter = memory.readMemory(address);
+        address = ((address & 0xFF00) | ((address + 1) & 0xFF));
+        programCounter |= (memory.readMemory(address) << 8);
+        cycles += 5;
+        break;
+
+      default: // Unknown instruction. Behaves like a single cycle NOP.
+        cycles += 1;
+        break;
+    }
+
+    totalCycles += cycles;
+    return cycles;
+  }
+
+  /**
+   * Fetches the byte at the program counter and then increments the program counter.
+   *
+   * @return The byte that was fetched.
+   */
+  private int fetchOperand() {
+    // Program counter is highly unlikely to be pointing at I/O
+    int value = memory.readMemory(programCounter);
+    programCounter++;
+    return value;
+  }
+
+  /**
+   * Fetches a two byte absolute address from the program counter.
+   *
+   * @return The absolute address.
+   */
+  private int fetchAbsoluteAddress() {
+    int addressLow = fetchOperand();
+    return ((fetchOperand() << 8) | addressLow);
+  }
+
+  /**
+   * Fetches the effective address for the (Indirect, X) addressing mode.
+   *
+   * @return The effective address.
+   */
+  private int fetchIndexedIndirectAddress() {
+    // No I/O in page zero.
+    int pointer = ((fetchOperand() + indexRegisterX) & 0xFF);
+    return ((mem[pointer] & 0xFF) | ((mem[(pointer + 1) & 0xFF] & 0xFF) << 8));
+  }
+
+  /**
+   * Fetches the base address for the (Indirect), Y addressing mode, i.e. before Y is added.
+   *
+   * @return The base address.
+   */
+  private int fetchIndirectBaseAddress() {
+    // No I/O in page zero.
+    int pointer = fetchOperand();
+    return ((mem[pointer] & 0xFF) | ((mem[(pointer + 1) & 0xFF] & 0xFF) << 8));
+  }
+
+  /**
+   * Fetches the data for an indexed read into the input data latch. If a page boundary
+   * is crossed, the 6502 first reads from the address with the unfixed high byte, which
+   * takes an extra cycle.
+   *
+   * @param baseAddress The address before the index is added.
+   * @param index The value of the index register.
+   *
+   * @return The number of extra cycles taken, i.e. 1 if a page was crossed, otherwise 0.
+   */
+  private int fetchDataIndexed(int baseAddress, int index) {
+    int address = baseAddress + index;
+    if (((baseAddress ^ address) & 0xFF00) != 0) {
+      memory.readMemory((baseAddress & 0xFF00) | (address & 0xFF));
+      inputDataLatch = memory.readMemory(address & 0xFFFF);
+      return 1;
+    } else {
+      inputDataLatch = memory.readMemory(address);
+      return 0;
+    }
+  }
+
+  /**
+   * Performs the discarded read that indexed writes and read-modify-write instructions
+   * always do from the address with the unfixed high byte, then returns the real address.
+   *
+   * @param baseAddress The address before the index is added.
+   * @param index The value of the index register.
+   *
+   * @return The effective address.
+   */
+  private int fetchDiscardIndexed(int baseAddress, int index) {
+    int address = baseAddress + index;
+    memory.readMemory((baseAddress & 0xFF00) | (address & 0xFF));
+    return (address & 0xFFFF);
+  }
+
+  /**
+   * Reads, modifies and writes back the data at the given address, including the dummy
+   * write of the unmodified data (ASL, LSR, ROL, ROR, DEC, INC).
+   *
+   * @param address The address to modify.
+   */
+  private void readModifyWrite(int address) {
+    inputDataLatch = memory.readMemory(address);
+    memory.writeMemory(address, inputDataLatch);
+    executeInstruction();
+    memory.writeMemory(address, dataBusBuffer);
+  }
+
   ///////////////////////////////// DEBUG /////////////////////////////////////////
 
   /**
@@ -1691,9 +2120,9 @@ public class Cpu6502 extends BaseChip {
   public void setDecimalModeFlag(boolean value) { decimalModeFlag = value; }
   public boolean getInterruptDisableFlag() { return interruptDisableFlag; }
   public void setInterruptDisableFlag(boolean value) { interruptDisableFlag = value; }
-  public void stackPush(int value) { mem[stackPointer + 0x100] = value; stackPointer = ((stackPointer - 1) & 0xFF); }
-  public int stackPeek() { return mem[0x100 + stackPointer + 1]; }
-  public int stackPop() { stackPointer = ((stackPointer + 1) & 0xFF); return mem[stackPointer + 0x100]; }
+  public void stackPush(int value) { mem[stackPointer + 0x100] = (byte)value; stackPointer = ((stackPointer - 1) & 0xFF); }
+  public int stackPeek() { return (mem[0x100 + stackPointer + 1] & 0xFF); }
+  public int stackPop() { stackPointer = ((stackPointer + 1) & 0xFF); return (mem[stackPointer + 0x100] & 0xFF); }
   public boolean isNmiAsserted() { return (interruptStatus & S_NMI) != 0; }
   public boolean isIrqAsserted() { return (interruptStatus & S_IRQ) != 0; }
 }
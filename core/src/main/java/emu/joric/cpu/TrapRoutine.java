@@ -0,0 +1,26 @@
+package emu.joric.cpu;
+
+/**
+ * Interface for trap routines registered with the Cpu6502. A trap routine is run
+ * instead of the 6502 code at the address that it was registered at, allowing the
+ * emulator to hook non-standard features into the emulation, such as the quick 
+ * tape load.
+ * 
+ * @author Lance Ewing
+ */
+public interface TrapRoutine {
+
+  /**
+   * Value to return from execute when the trap routine does not want the program 
+   * counter to be changed.
+   */
+  public static final int NO_PC_CHANGE = -1;
+  
+  /**
+   * Executes the trap routine.
+   * 
+   * @return The new value for the program counter, or NO_PC_CHANGE to leave it as is.
+   */
+  public int execute();
+  
+}
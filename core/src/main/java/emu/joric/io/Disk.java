@@ -2,6 +2,7 @@ package emu.joric.io;
 
 import com.badlogic.gdx.Gdx;
 
+import emu.joric.Scheduler;
 import emu.joric.cpu.Cpu6502;
 import emu.joric.io.Disk.MfmDiskImage.Sector;
 import emu.joric.memory.MemoryMappedChip;
@@ -83,13 +84,20 @@ public class Disk extends MemoryMappedChip {
    */
   private WD1793 wd1793;
   
+  /**
+   * The machine's Scheduler, used for the WD1793's delayed INTRQ and DRQ signals.
+   */
+  private Scheduler scheduler;
+  
   /**
    * Constructor for Disk.
    * 
    * @param cpu The 6502 CPU in which to raise the IRQs against.
+   * @param scheduler The machine's Scheduler, used for timing the WD1793's delayed signals.
    */
-  public Disk(Cpu6502 cpu) {
+  public Disk(Cpu6502 cpu, Scheduler scheduler) {
     this.cpu = cpu;
+    this.scheduler = scheduler;
     this.wd1793 = new WD1793();
   }
   
@@ -223,13 +231,6 @@ public class Disk extends MemoryMappedChip {
     dataRequest = false;
   } 
   
-  /**
-   * Emulates a single cycle for the Microdisc.
-   */
-  public void emulateCycle() {
-    wd1793.emulateCycle();
-  }
-
   /**
    * Emulates the WD1793 Floppy Disk Controller chip.
    */
@@ -286,8 +287,9 @@ public class Disk extends MemoryMappedChip {
     private Sector currentSector;        // Pointers to the current sector in the disk image being used by an active read or write operation
     private int currentSectorLength;     // The length of the current sector
     private int currentSectorOffset;     // Current offset into the above sector
-    private int delayedIrqCounter;       // A cycle counter for simulating a delay before INTRQ is asserted
-    private int delayedDrqCounter;       // A cycle counter for simulating a delay before DRQ is asserted
+    private long delayedIrqCycle;        // The machine cycle on which a delayed INTRQ is asserted (or Long.MAX_VALUE if none)
+    private long delayedDrqCycle;        // The machine cycle on which a delayed DRQ is asserted (or Long.MAX_VALUE if none)
+    private Scheduler.Event delayEvent;  // Fires when the earliest of the above delays expires
     private int delayedIrqStatus;        // The new contents for r_status when delayedint expires (or -1 to leave it untouched)
     private int delayedDrqStatus;        // The new contents for r_status when delayeddrq expires (or -1 to leave it untouched)
     private int crc;                     // The calculated CRC value for the data.
@@ -304,59 +306,98 @@ public class Disk extends MemoryMappedChip {
       currentSectorId = 0;
       lastStepIn = false;
       currentOperation = COP_NUFFINK;
-      delayedIrqCounter = 0;
-      delayedDrqCounter = 0;
+      delayedIrqCycle = Long.MAX_VALUE;
+      delayedDrqCycle = Long.MAX_VALUE;
       delayedIrqStatus = -1;
       delayedDrqStatus = -1;
+      delayEvent = new Scheduler.Event() {
+        public void fire() {
+          emulateDelays();
+        }
+      };
     }
     
     /**
-     * Emulates a single cycle of WD1793 activity.
+     * Asserts INTRQ and/or DRQ if their delays have expired, then schedules the delay
+     * event for whichever is still pending.
      */
-    public void emulateCycle() {
-      // Is there a pending INTRQ?
-      if (delayedIrqCounter > 0) {
-        // Count down the INTRQ timer!
-        delayedIrqCounter--;
-
-        // Time to assert INTRQ?
-        if (delayedIrqCounter <= 0) {
-          // Yep! Stop timing.
-          delayedIrqCounter = 0;
-
-          // Need to update the status register?
-          if (delayedIrqStatus != -1) {
-            // Yep. Do so.
-            statusRegister = delayedIrqStatus;
-            delayedIrqStatus = -1;
-          }
+    private void emulateDelays() {
+      long cycles = scheduler.getCycles();
+      
+      // Time to assert INTRQ?
+      if (delayedIrqCycle <= cycles) {
+        // Yep! Stop timing.
+        delayedIrqCycle = Long.MAX_VALUE;
 
-          // Assert INTRQ
-          raisedIntrq();
+        // Need to update the status register?
+        if (delayedIrqStatus != -1) {
+          // Yep. Do so.
+          statusRegister = delayedIrqStatus;
+          delayedIrqStatus = -1;
         }
-      }
 
-      // Is there a pending DRQ?
-      if (delayedDrqCounter > 0) {
-        // Count down the DRQ timer!
-        delayedDrqCounter--;
-
-        // Time to assert DRQ?
-        if (delayedDrqCounter <= 0) {
-          // Yep! Stop timing.
-          delayedDrqCounter = 0;
+        // Assert INTRQ
+        raisedIntrq();
+      }
 
-          // Need to update the status register?
-          if (delayedDrqStatus != -1) {
-            // Yep. Do so.
-            statusRegister = delayedDrqStatus;
-            delayedDrqStatus = -1;
-          }
+      // Time to assert DRQ?
+      if (delayedDrqCycle <= cycles) {
+        // Yep! Stop timing.
+        delayedDrqCycle = Long.MAX_VALUE;
 
-          // Assert DRQ
-          statusRegister |= WSF_DRQ;
-          raisedDrq();
+        // Need to update the status register?
+        if (delayedDrqStatus != -1) {
+          // Yep. Do so.
+          statusRegister = delayedDrqStatus;
+          delayedDrqStatus = -1;
         }
+
+        // Assert DRQ
+        statusRegister |= WSF_DRQ;
+        raisedDrq();
+      }
+      
+      scheduleDelayEvent();
+    }
+    
+    /**
+     * Asserts INTRQ after the given number of cycles.
+     * 
+     * @param numOfCycles The number of cycles to wait before asserting INTRQ.
+     */
+    private void delayIrq(int numOfCycles) {
+      delayedIrqCycle = scheduler.getCycles() + numOfCycles;
+      scheduleDelayEvent();
+    }
+    
+    /**
+     * Asserts DRQ after the given number of cycles.
+     * 
+     * @param numOfCycles The number of cycles to wait before asserting DRQ.
+     */
+    private void delayDrq(int numOfCycles) {
+      delayedDrqCycle = scheduler.getCycles() + numOfCycles;
+      scheduleDelayEvent();
+    }
+    
+    /**
+     * Cancels any pending delayed INTRQ and DRQ.
+     */
+    private void cancelDelays() {
+      delayedIrqCycle = Long.MAX_VALUE;
+      delayedDrqCycle = Long.MAX_VALUE;
+      scheduler.cancel(delayEvent);
+    }
+    
+    /**
+     * Schedules the delay event for the earliest pending delayed INTRQ or DRQ.
+     */
+    private void scheduleDelayEvent() {
+      long dueCycle = Math.min(delayedIrqCycle, delayedDrqCycle);
+      if (dueCycle == Long.MAX_VALUE) {
+        scheduler.cancel(delayEvent);
+      } else {
+        scheduler.schedule(delayEvent, dueCycle);
       }
     }
     
@@ -438,7 +479,7 @@ public class Disk extends MemoryMappedChip {
     
                 // If we hit the end of the track, thats fine, it just means the operation is finished.
                 if (currentSector == null) {
-                  delayedIrqCounter = 20;            // Assert INTRQ in 20 cycles time
+                  delayIrq(20);                      // Assert INTRQ in 20 cycles time
                   delayedIrqStatus = sectorType;     // ...and when doing so, set the status to reflect the record type
                   currentOperation = COP_NUFFINK;    // No longer in the middle of an operation
                   statusRegister &= (~WSF_DRQ);      // Clear DRQ (no data to read)
@@ -449,18 +490,18 @@ public class Disk extends MemoryMappedChip {
                 // We've got the next sector lined up. Assert DRQ in 180 cycles time (simulate a bit of a delay
                 // between sectors. Note that most of these values have been pulled out of thin air and might need
                 // adjusting for some pickier loaders).
-                delayedDrqCounter = 180;
+                delayDrq(180);
                 break;
               }
     
               // Just reading one sector so..
-              delayedIrqCounter = 32;          // INTRQ in a little while because we're finished
+              delayIrq(32);                    // INTRQ in a little while because we're finished
               delayedIrqStatus = sectorType;   // Set the status accordingly
               currentOperation = COP_NUFFINK;  // Finished the op
               statusRegister &= (~WSF_DRQ);    // Clear DRQ (no more data)
               loweredDrq();
             } else {
-              delayedDrqCounter = 32;          // More data ready. DRQ to let them know!
+              delayDrq(32);                    // More data ready. DRQ to let them know!
             }
             break;
     
@@ -475,15 +516,15 @@ public class Disk extends MemoryMappedChip {
               // The Track Address of the ID field is written into the Sector Register.
               sectorRegister = currentSector.trackNum;
             }
-            dataRegister = diskImage.rawImage[++currentSectorOffset];  // TODO: Does this really read from raw image? Or should it be sector?
+            dataRegister = diskImage.getByteFromRawImage(++currentSectorOffset);  // TODO: Does this really read from raw image? Or should it be sector?
             statusRegister &= ~WSF_DRQ;
             loweredDrq();
             if (currentSectorOffset >= 6) {
-              delayedIrqCounter = 20;
+              delayIrq(20);
               delayedIrqStatus = 0;
               currentOperation = COP_NUFFINK;
             } else {
-              delayedDrqCounter = 32;
+              delayDrq(32);
             }
             break;
         }
@@ -575,7 +616,7 @@ public class Disk extends MemoryMappedChip {
     
             currentSectorLength = currentSector.sectorSize;
             statusRegister = WSF_BUSY | WSF_NOTREADY;
-            delayedDrqCounter = 60;
+            delayDrq(60);
             currentOperation = ((data & 0x10) != 0)? COP_READ_SECTORS : COP_READ_SECTOR;
             crc = 0xe295;
             break;
@@ -593,7 +634,7 @@ public class Disk extends MemoryMappedChip {
     
             currentSectorLength = currentSector.sectorSize;
             statusRegister = WSF_BUSY | WSF_NOTREADY;
-            delayedDrqCounter = 500;
+            delayDrq(500);
             currentOperation = ((data & 0x10) != 0)? COP_WRITE_SECTORS : COP_WRITE_SECTOR;
             crc = 0xe295;
             break;
@@ -625,8 +666,7 @@ public class Disk extends MemoryMappedChip {
               statusRegister = 0;
               loweredDrq();
               raisedIntrq();
-              delayedIrqCounter = 0;
-              delayedDrqCounter = 0;
+              cancelDelays();
               currentOperation = COP_NUFFINK;
               break;
             }
@@ -686,24 +726,24 @@ public class Disk extends MemoryMappedChip {
                   crc = 0xe295;
       
                   if (currentSector == null) {
-                    delayedIrqCounter = 20;
+                    delayIrq(20);
                     delayedIrqStatus = sectorType;
                     currentOperation = COP_NUFFINK;
                     statusRegister &= (~WSF_DRQ);
                     loweredDrq();
                     break;
                   }
-                  delayedDrqCounter = 180;
+                  delayDrq(180);
                   break;
                 }
       
-                delayedIrqCounter = 32;
+                delayIrq(32);
                 delayedIrqStatus = sectorType;
                 currentOperation = COP_NUFFINK;
                 statusRegister &= (~WSF_DRQ);
                 loweredDrq();
               } else {
-                delayedDrqCounter = 32;
+                delayDrq(32);
               }
               break;
           }
@@ -736,7 +776,7 @@ public class Disk extends MemoryMappedChip {
         // (note: 20 cycles is waaaaaay faster than any real drive could seek. The actual
         // delay would depend how far the head had to seek, and what stepping speed was
         // currently set).
-        delayedIrqCounter = 20;
+        delayIrq(20);
         if (currentTrack == 0) {
           delayedIrqStatus |= WSFI_TRK0;
         }
@@ -835,7 +875,8 @@ public class Disk extends MemoryMappedChip {
     private int numOfSides;            // Number of sides in the image
     private int geometry;              // Geometry type. See javadoc above.
     private int numOfSectors;          // Number of sectors cached (= number of valid sectors in the current track)
-    private int[] rawImage;            // The raw disk image file loaded into memory
+    private byte[] rawImage;           // The raw disk image file loaded into memory
+    private boolean rawImageCopied;    // Whether rawImage is our own copy, made on first write
     private String diskImageName;
     private boolean loadFailed;
     private Sector[][][] allTracks;
@@ -853,7 +894,7 @@ public class Disk extends MemoryMappedChip {
         rawImage = Gdx.files.internal("disks/" + diskImageName).readBytes();
       }
     
-      this.rawImage = convertByteArrayToIntArray(rawImage);
+      this.rawImage = rawImage;
       
       // Check for the signature. Is it an MFM format disk image? 
       String signature = new String(rawImage, 0, 8);
@@ -904,7 +945,7 @@ public class Disk extends MemoryMappedChip {
         startOfSector = offset;
         
         // Search for ID mark
-        while ((offset < trackEnd) && (((int)rawImage[offset] & 0xFF) != 0xFE)) offset++;
+        while ((offset < trackEnd) && (getByteFromRawImage(offset) != 0xFE)) offset++;
 
         // Don't exceed the bounds of this track.
         if (offset >= trackEnd) break;
@@ -919,10 +960,10 @@ public class Disk extends MemoryMappedChip {
         // Store ID pointer and details.
         Sector sector = new Sector();
         sector.idOffset = offset;
-        sector.trackNum = rawImage[offset + 1];
-        sector.side = rawImage[offset + 2];
-        sector.sectorNum = rawImage[offset + 3];
-        sector.sectorSize = (1 << (rawImage[offset + 4] + 7));
+        sector.trackNum = getByteFromRawImage(offset + 1);
+        sector.side = getByteFromRawImage(offset + 2);
+        sector.sectorNum = getByteFromRawImage(offset + 3);
+        sector.sectorSize = (1 << (getByteFromRawImage(offset + 4) + 7));
         sectors[sector.sectorNum] = sector; 
         
         // Skip ID field and CRC
@@ -939,7 +980,7 @@ public class Disk extends MemoryMappedChip {
         //    mark and indicate whether the sector was flagged as deleted via its status register.
         //  
         //    This is followed by the data gap, which is:  FF or 4E (*54)
-        while ((offset < trackEnd) && (((int)rawImage[offset] & 0xFF) != 0xFB) && (((int)rawImage[offset] & 0xFF) != 0xF8)) offset++;
+        while ((offset < trackEnd) && (getByteFromRawImage(offset) != 0xFB) && (getByteFromRawImage(offset) != 0xF8)) offset++;
 
         // Don't exceed the bounds of this track.
         if (offset >= trackEnd) break;
@@ -968,18 +1009,14 @@ public class Disk extends MemoryMappedChip {
     }
     
     /**
-     * Converts a byte array into an int array.
+     * Gets the unsigned byte value from the specified offset in the raw disk image.
      * 
-     * @param data The byte array to convert.
+     * @param offset The offset to read the byte value from.
      * 
-     * @return The int array.
+     * @return The byte value, in the range 0-255, at the given offset into the raw disk image.
      */
-    private int[] convertByteArrayToIntArray(byte[] data) {
-      int[] convertedData = new int[data.length];
-      for (int i=0; i<data.length; i++) {
-        convertedData[i] = ((int)data[i]) & 0xFF;
-      }
-      return convertedData;
+    private int getByteFromRawImage(int offset) {
+      return (rawImage[offset] & 0xFF);
     }
     
     /**
@@ -990,10 +1027,10 @@ public class Disk extends MemoryMappedChip {
      * @return The 32-bit integer value at the given offset into the raw disk image.
      */
     private int getIntFromRawImage(int offset) {
-      return (rawImage[offset + 3] << 24) | 
-             (rawImage[offset + 2] << 16) |
-             (rawImage[offset + 1] << 8)  | 
-             (rawImage[offset + 0] << 0);
+      return (getByteFromRawImage(offset + 3) << 24) | 
+             (getByteFromRawImage(offset + 2) << 16) |
+             (getByteFromRawImage(offset + 1) << 8)  | 
+             (getByteFromRawImage(offset + 0) << 0);
     }
 
     /**
@@ -1011,12 +1048,16 @@ public class Disk extends MemoryMappedChip {
       int dataOffset;
       
       public int read(int sectorPos) {
-        int value = rawImage[dataOffset + sectorPos];
-        return value;
+        return getByteFromRawImage(dataOffset + sectorPos);
       }
       
       public void write(int sectorPos, int data) {
         // TODO: This is just updating an array in memory. Need to add writing back to disk at some point.
+        if (!rawImageCopied) {
+          // The image data is shared with the Program until the first write.
+          rawImage = rawImage.clone();
+          rawImageCopied = true;
+        }
         rawImage[dataOffset + sectorPos] = (byte)data;
       }
     }
@@ -1,11 +1,11 @@
 package emu.joric.io;
 
 import java.io.ByteArrayInputStream;
-import java.util.concurrent.Callable;
 
 import com.badlogic.gdx.files.FileHandle;
 
 import emu.joric.cpu.Cpu6502;
+import emu.joric.cpu.TrapRoutine;
 import emu.joric.memory.Memory;
 import emu.joric.memory.Memory.RomType;
 
@@ -20,7 +20,9 @@ public class Tape {
   
   private RomType romType;
   
-  private int[] mem;
+  private Memory memory;
+  
+  private byte[] mem;
   
   private ByteArrayInputStream tapeIn;
 
@@ -34,6 +36,7 @@ public class Tape {
    */
   public Tape(Cpu6502 cpu, Memory memory) {
     this.cpu = cpu;
+    this.memory = memory;
     this.mem = memory.getMemoryArray();
     this.romType = memory.getRomType();
     if ((romType == RomType.ATMOS) || (romType == RomType.ORIC1)) {
@@ -46,8 +49,8 @@ public class Tape {
    */
   private void registerQuickLoadTraps() {
     // This trap will read a byte of data from the tape byte array if it is available.
-    cpu.registerTrapRoutine(romType.getAddressOfReadByteFromTape(), new Callable<Integer>() {
-      public Integer call() {
+    cpu.registerTrapRoutine(romType.getAddressOfReadByteFromTape(), new TrapRoutine() {
+      public int execute() {
         int accum = cpu.getAccumulator();
         if (tapeIn != null) {
           accum = tapeIn.read();
@@ -62,8 +65,8 @@ public class Tape {
       }
     });
     
-    cpu.registerTrapRoutine(romType.getAddressOfGetInSyncWithTapeData(), new Callable<Integer>() {
-      public Integer call() {
+    cpu.registerTrapRoutine(romType.getAddressOfGetInSyncWithTapeData(), new TrapRoutine() {
+      public int execute() {
         boolean foundSynchro = false;
         boolean alreadyOpenedOnce = false;
 
@@ -134,19 +137,26 @@ public class Tape {
       
       // This trap automatically enters CLOAD" on the input line and executes. This will
       // automatically trigger the tape loading process within the BASIC ROM.
-      cpu.registerTrapRoutine(romType.getAddressOfInputLineFromKeyboard(), new Callable<Integer>() {
-        public Integer call() {
+      cpu.registerTrapRoutine(romType.getAddressOfInputLineFromKeyboard(), new TrapRoutine() {
+        public int execute() {
           // This is a call once trap, so we deregister it immediately.
           cpu.deregisterTrapRoutine(romType.getAddressOfInputLineFromKeyboard());
           
-          // 0x35 is start of input buffer. 0xBC9A is the text screen memory.
-          mem[0x35] = mem[0xBC9A] = 67;    // 'C'
-          mem[0x36] = mem[0xBC9B] = 76;    // 'L'
-          mem[0x37] = mem[0xBC9C] = 79;    // 'O'
-          mem[0x38] = mem[0xBC9D] = 65;    // 'A'
-          mem[0x39] = mem[0xBC9E] = 68;    // 'D'
-          mem[0x3A] = mem[0xBC9F] = 34;    // '"'
-          mem[0x3B] = 0;                  // Marks end of entered input.
+          // 0x35 is start of input buffer. 0xBC9A is the text screen memory, which is
+          // written via the Memory so that the ULA sees the change.
+          memory.writeMemory(0x35, 67);    // 'C'
+          memory.writeMemory(0x36, 76);    // 'L'
+          memory.writeMemory(0x37, 79);    // 'O'
+          memory.writeMemory(0x38, 65);    // 'A'
+          memory.writeMemory(0x39, 68);    // 'D'
+          memory.writeMemory(0x3A, 34);    // '"'
+          memory.writeMemory(0x3B, 0);     // Marks end of entered input.
+          memory.writeMemory(0xBC9A, 67);  // 'C'
+          memory.writeMemory(0xBC9B, 76);  // 'L'
+          memory.writeMemory(0xBC9C, 79);  // 'O'
+          memory.writeMemory(0xBC9D, 65);  // 'A'
+          memory.writeMemory(0xBC9E, 68);  // 'D'
+          memory.writeMemory(0xBC9F, 34);  // '"'
 
           // Sets X and Y as if it were the real input line subroutine that ran.
           cpu.setIndexRegisterX(0x34);
@@ -1,8 +1,10 @@
 package emu.joric.io;
 
+import emu.joric.Scheduler;
 import emu.joric.cpu.Cpu6502;
 import emu.joric.memory.MemoryMappedChip;
 import emu.joric.snap.Snapshot;
+import emu.joric.sound.AYPSG;
 
 /**
  * This class emulates a 6522 VIA IO/timer chip.
@@ -162,20 +164,63 @@ public class Via extends MemoryMappedChip {
    */
   private Keyboard keyboard;
   
+  /**
+   * The AY-3-8912 PSG, whose bus control lines are connected to CA2 and CB2, and 
+   * data bus to port A. It is told when any of these change.
+   */
+  private AYPSG psg;
+  
+  /**
+   * The machine's Scheduler. The timers are not emulated every cycle. Instead they 
+   * are brought up to date when the VIA is accessed, and an event is scheduled for
+   * the next timer interrupt.
+   */
+  private Scheduler scheduler;
+  
+  /**
+   * The machine cycle that the timers have been emulated up to, i.e. the next cycle
+   * that is yet to be emulated.
+   */
+  private long cycle;
+  
+  /**
+   * The event that fires when the next enabled timer interrupt is due.
+   */
+  private Scheduler.Event timerEvent;
+  
   /**
    * Constructor for VIA6522.
    * 
    * @param cpu6502 The CPU that the Oric is using. This is where VIA IRQ signals will be sent.
    * @param keyboard The Keyboard from which we get the current keyboard state from.
+   * @param scheduler The machine's Scheduler, which provides the cycle clock and timer events.
    * @param snapshot Optional snapshot of the machine state to start with.
    */
-  public Via(Cpu6502 cpu6502, Keyboard keyboard, Snapshot snapshot) {
+  public Via(Cpu6502 cpu6502, Keyboard keyboard, Scheduler scheduler, Snapshot snapshot) {
     this.autoResetIrq = true;
     this.cpu6502 = cpu6502;
     this.keyboard = keyboard;
+    this.scheduler = scheduler;
+    this.cycle = scheduler.getCycles();
+    this.timerEvent = new Scheduler.Event() {
+      public void fire() {
+        emulateTimers();
+        scheduleTimerEvent();
+      }
+    };
     if (snapshot != null) {
       loadSnapshot(snapshot);
     }
+    scheduleTimerEvent();
+  }
+  
+  /**
+   * Sets the AY-3-8912 PSG that is connected to CA2, CB2 and port A.
+   * 
+   * @param psg The AY-3-8912 PSG.
+   */
+  public void setPsg(AYPSG psg) {
+    this.psg = psg;
   }
   
   /**
@@ -185,6 +230,8 @@ public class Via extends MemoryMappedChip {
    * @param value The byte to write into the address.
    */
   public void writeMemory(int address, int value) {
+    emulateTimers();
+    
     switch (address & 0x000F) {
       case VIA_REG_0: // ORB/IRB
         outputRegisterB = value;
@@ -198,6 +245,7 @@ public class Via extends MemoryMappedChip {
         updatePortAPins();
         interruptFlagRegister &= CA1_AND_2_RESET;
         updateIFRTopBit();
+        updatePsgBus();
         break;
 
       case VIA_REG_2: // DDRB
@@ -208,6 +256,7 @@ public class Via extends MemoryMappedChip {
       case VIA_REG_3: // DDRA
         dataDirectionRegisterA = value;
         updatePortAPins();
+        updatePsgBus();
         break;
         
       case VIA_REG_4: // Timer 1 low-order counter (WRITE sets low-order latch)
@@ -218,7 +267,7 @@ public class Via extends MemoryMappedChip {
       case VIA_REG_5: // Timer 1 high-order counter
         timer1Latch = (timer1Latch & 0xFF) | ((value << 8) & 0xFF00);
         timer1Counter = timer1Latch;
-        timer1Loaded= true;          // Informs emulateCycle that the timer was load this cycle.
+        timer1Loaded= true;          // Informs emulateTimers that the timer was load this cycle.
         interruptFlagRegister &= TIMER1_RESET;
         updateIFRTopBit();
         timer1HasShot = false;
@@ -240,7 +289,7 @@ public class Via extends MemoryMappedChip {
   
       case VIA_REG_9: // Timer 2 high-order counter
         timer2Counter = timer2Latch | ((value << 8) & 0xFF00);
-        timer2Loaded = true;  // Informs emulateCycle that the timer was load this cycle.
+        timer2Loaded = true;  // Informs emulateTimers that the timer was load this cycle.
         interruptFlagRegister &= TIMER2_RESET;
         updateIFRTopBit();
         timer2HasShot = false;
@@ -361,6 +410,7 @@ public class Via extends MemoryMappedChip {
         cb2ControlMode = ((value & 0xE0) >> 5);
         if (cb2ControlMode == OUTPUT_MODE_MANUAL_LOW) cb2 = 0;
         if (cb2ControlMode == OUTPUT_MODE_MANUAL_HIGH) cb2 = 1;
+        updatePsgBus();
         break;
   
       case VIA_REG_13: // Interrupt Flag Register
@@ -382,8 +432,21 @@ public class Via extends MemoryMappedChip {
       case VIA_REG_15: // ORA/IRA (no handshake)
         outputRegisterA = value;
         updatePortAPins();
+        updatePsgBus();
         break;
       }
+    
+    // Writes to the timers, ACR, IFR or IER can all change when the next timer interrupt is due.
+    scheduleTimerEvent();
+  }
+  
+  /**
+   * Tells the PSG that the state of its bus lines (CA2, CB2 and port A) may have changed.
+   */
+  private void updatePsgBus() {
+    if (psg != null) {
+      psg.updateBus(scheduler.getCycles());
+    }
   }
   
   // 
@@ -398,6 +461,8 @@ public class Via extends MemoryMappedChip {
   public int readMemory(int address) {
     int value = 0;
 
+    emulateTimers();
+    
     switch (address & 0x000F) {
       case VIA_REG_0: // ORB/IRB
         if ((auxiliaryControlRegister & PORTB_INPUT_LATCHING) == 0) {
@@ -585,89 +650,119 @@ public class Via extends MemoryMappedChip {
   }
 
   /**
-   * Emulates a single cycle of this VIA chip.
+   * Brings the timers up to date with the machine's cycle clock. Rather than stepping
+   * through each cycle, all of the cycles since the timers were last emulated are
+   * applied in one go.
+   */
+  private void emulateTimers() {
+    long now = scheduler.getCycles();
+    if (now > cycle) {
+      emulateTimers(now - cycle);
+      cycle = now;
+    }
+  }
+  
+  /**
+   * Emulates the given number of cycles of the two timers in one go. 
+   * 
+   * @param numOfCycles The number of cycles to emulate.
    */
-  public void emulateCycle() {
+  private void emulateTimers(long numOfCycles) {
     // IMPORTANT NOTE: If the timer 1 latch is set to 2 during cycle T0, then on T1 it
     // would have a value of 2, then T2 a value of 1, T3 a value of 0, T4 a value of 0xFFFF
     // and then T5 back to a value of 2 again. So it isn't just 2 cycles it counts but 
     // N + 2 (the interrupt happens at N + 1.5 cycles).
     
-    if (!timer1Loaded) {
-      // Check if counter was at 0xFFFF at the start of this cycle.
-      if (timer1Counter == 0xFFFF) {
-        if (timer1Mode == ONE_SHOT) {
-          // Timed interrupt each time T1 is loaded (one shot). 
-          // Set the interrupt flag only if the timer has been reloaded.
-          if (!timer1HasShot) {
-            interruptFlagRegister |= TIMER1_SET;
-            updateIFRTopBit();
-            timer1HasShot = true;
-          }
-          
-          // Counter continues to count down from 0xFFFF.
-          timer1Counter = 0xFFFE;
-          
-        } else {
-          // Continuous interrupts (free-running).
-          // Reload from latches and raise interrupt.
-          timer1Counter = timer1Latch;
+    long timer1Cycles = numOfCycles;
+    if (timer1Loaded) {
+      // The timer doesn't count on the cycle that it was loaded.
+      timer1Loaded = false;
+      timer1Cycles--;
+    }
+    if (timer1Cycles > 0) {
+      // The counter reaches 0xFFFF after counting down this many cycles. It is then
+      // on the cycle that starts with the counter at 0xFFFF that the interrupt occurs.
+      long cyclesToUnderflow = ((timer1Counter + 1) & 0xFFFF);
+      if (timer1Cycles <= cyclesToUnderflow) {
+        // Decrement, wrapping around to 0XFFFF after zero.
+        timer1Counter = (int)((timer1Counter - timer1Cycles) & 0xFFFF);
+        
+      } else if (timer1Mode == ONE_SHOT) {
+        // Timed interrupt each time T1 is loaded (one shot). 
+        // Set the interrupt flag only if the timer has been reloaded.
+        if (!timer1HasShot) {
           interruptFlagRegister |= TIMER1_SET;
           updateIFRTopBit();
           timer1HasShot = true;
         }
+        
+        // Counter continues to count down from 0xFFFF.
+        timer1Counter = (int)((timer1Counter - timer1Cycles) & 0xFFFF);
+        
+      } else {
+        // Continuous interrupts (free-running). On underflow, the counter is reloaded
+        // from the latches and the interrupt raised, so it repeats every latch + 2 cycles.
+        long period = ((timer1Latch + 1) & 0xFFFF) + 1;
+        long cyclesSinceReload = (timer1Cycles - cyclesToUnderflow - 1) % period;
+        timer1Counter = (int)((timer1Latch - cyclesSinceReload) & 0xFFFF);
+        interruptFlagRegister |= TIMER1_SET;
+        updateIFRTopBit();
+        timer1HasShot = true;
       }
-      else {
-        // Decrement by one, wrapping around to 0XFFFF after zero.
-        timer1Counter = (timer1Counter - 1) & 0xFFFF;
-      }
-    } else {
-      timer1Loaded = false;
     }
 
-    if (!timer2Loaded) {
+    long timer2Cycles = numOfCycles;
+    if (timer2Loaded) {
+      // The timer doesn't count on the cycle that it was loaded.
+      timer2Loaded = false;
+      timer2Cycles--;
+    }
+    if (timer2Cycles > 0) {
       if (timer2Mode == ONE_SHOT) {
         // Note: Timer 2 does not behaviour in the same way with regards to when the 
         // interrupt occurs. For Timer 1, it is when the value is 0xFFFF, but for 
         // timer 2, it is when the counter is 0x0000.
         
-        if (!timer2HasShot && (timer2Counter == 0)) {
+        if (!timer2HasShot && (timer2Cycles > timer2Counter)) {
           interruptFlagRegister |= TIMER2_SET;
           updateIFRTopBit();
           timer2HasShot = true;
         }
         
-        // Decrement by one, wrapping around to 0XFFFF after zero.
-        timer2Counter = (timer2Counter - 1) & 0xFFFF;
+        // Decrement, wrapping around to 0XFFFF after zero.
+        timer2Counter = (int)((timer2Counter - timer2Cycles) & 0xFFFF);
         
       } else {
         // TODO: PB6 pulse counting.
       }
-    } else {
-      timer2Loaded = false;
     }
 
-    // Shift the shift register.
-    if (shiftRegisterMode != 0) {
-      // TODO: Implement shift register.
-      switch (shiftRegisterMode) {
-      case 0x00:
-        break;
-      case 0x01:
-        break;
-      case 0x02:
-        break;
-      case 0x03:
-        break;
-      case 0x04:
-        break;
-      case 0x05:
-        break;
-      case 0x06:
-        break;
-      case 0x07:
-        break;
-      }
+    // TODO: Implement shift register.
+  }
+  
+  /**
+   * Schedules the timer event for the cycle on which the next timer interrupt is due. 
+   * Interrupts that are disabled in the IER, or will not happen because a one shot
+   * timer has already fired, do not need an event, since there is nothing for the CPU
+   * to see until it next accesses the VIA.
+   */
+  private void scheduleTimerEvent() {
+    long dueCycle = Long.MAX_VALUE;
+    
+    if (((interruptEnableRegister & TIMER1_SET) != 0) && 
+        ((timer1Mode != ONE_SHOT) || !timer1HasShot)) {
+      dueCycle = cycle + (timer1Loaded? 1 : 0) + ((timer1Counter + 1) & 0xFFFF) + 1;
+    }
+    
+    if (((interruptEnableRegister & TIMER2_SET) != 0) && 
+        (timer2Mode == ONE_SHOT) && !timer2HasShot) {
+      dueCycle = Math.min(dueCycle, cycle + (timer2Loaded? 1 : 0) + timer2Counter + 1);
+    }
+    
+    if (dueCycle == Long.MAX_VALUE) {
+      scheduler.cancel(timerEvent);
+    } else {
+      scheduler.schedule(timerEvent, dueCycle);
     }
   }
   
@@ -753,29 +848,29 @@ public class Via extends MemoryMappedChip {
     // Load Port B state.
     outputRegisterB = snapshot.getVia1OutputRegisterB();
     inputRegisterB = snapshot.getVia1InputRegisterB();
-    dataDirectionRegisterB = snapshot.getMemoryArray()[0x0302];
+    dataDirectionRegisterB = snapshot.getMemory(0x0302);
     updatePortBPins();
     
     // Load Port A state.
     outputRegisterA = snapshot.getVia1OutputRegisterA();
     inputRegisterA = snapshot.getVia1InputRegisterA();;
-    dataDirectionRegisterA = snapshot.getMemoryArray()[0x0303];
+    dataDirectionRegisterA = snapshot.getMemory(0x0303);
     updatePortAPins();
     
     // Timer 1
-    timer1Counter = (snapshot.getMemoryArray()[0x0305] << 8) | (snapshot.getMemoryArray()[0x0304]);
-    timer1Latch = (snapshot.getMemoryArray()[0x0307] << 8) | (snapshot.getMemoryArray()[0x0306]);
+    timer1Counter = (snapshot.getMemory(0x0305) << 8) | (snapshot.getMemory(0x0304));
+    timer1Latch = (snapshot.getMemory(0x0307) << 8) | (snapshot.getMemory(0x0306));
     
     // Timer 2
     // TODO: Timer 2 latch.
     //timer2Latch = snapshot.getVia1Timer2LatchLow();
-    timer2Counter = (snapshot.getMemoryArray()[0x0309] << 8) | (snapshot.getVia1Timer2CounterLow());
+    timer2Counter = (snapshot.getMemory(0x0309) << 8) | (snapshot.getVia1Timer2CounterLow());
     
     // Shift Register
-    shiftRegister = snapshot.getMemoryArray()[0x911A];
+    shiftRegister = snapshot.getMemory(0x911A);
     
     // Load the Auxilliary Control Register state.
-    auxiliaryControlRegister = snapshot.getMemoryArray()[0x030B];
+    auxiliaryControlRegister = snapshot.getMemory(0x030B);
     timer1PB7Mode = (auxiliaryControlRegister & 0x80) >> 7;
     timer1Mode = (auxiliaryControlRegister & 0x40) >> 6;
     timer2Mode = (auxiliaryControlRegister & 0x20) >> 5;
@@ -783,7 +878,7 @@ public class Via extends MemoryMappedChip {
     portALatchMode = (auxiliaryControlRegister & 0x01);
     portBLatchMode = (auxiliaryControlRegister & 0x02) >> 1;
     
-    peripheralControlRegister = snapshot.getMemoryArray()[0x030C];
+    peripheralControlRegister = snapshot.getMemory(0x030C);
     
     interruptFlagRegister = snapshot.getVia1InterruptFlagRegister();
     interruptEnableRegister = snapshot.getVia1InterruptEnableRegister();
@@ -14,16 +14,60 @@ import emu.joric.video.Ula;
 public class Memory {
 
     /**
-     * Holds the machines memory.
+     * Holds the machines memory, one byte per address. Values are masked to unsigned 
+     * as they are read.
      */
-    private int mem[];
+    private byte mem[];
 
     /**
-     * Holds an array of references to instances of MemoryMappedChip where each
-     * instance determines the behaviour of reading or writing to the given memory
-     * address.
+     * The page number of the 0x03xx I/O page. This is the only page that is dispatched
+     * to a MemoryMappedChip. All other pages are read and written directly.
      */
-    private MemoryMappedChip memoryMap[];
+    private static final int IO_PAGE = 0x03;
+
+    /**
+     * The first page of the video RAM area that the ULA displays from, i.e. the HIRES
+     * character sets. The area runs up to the end of RAM at 0xBFFF.
+     */
+    private static final int FIRST_VIDEO_PAGE = 0x98;
+
+    /**
+     * For each of the 256 pages, the array that reads from that page come from, or null
+     * for the I/O page.
+     */
+    private byte[][] readPages;
+
+    /**
+     * For each of the 256 pages, the value to add to the address to get the index 
+     * into the array in readPages.
+     */
+    private int[] readOffsets;
+
+    /**
+     * For each of the 256 pages, the array that writes to that page go to, or null for
+     * ROM pages and the I/O page. Writable pages are always RAM, so the address is 
+     * used directly as the index.
+     */
+    private byte[][] writePages;
+
+    /**
+     * Holds references to the MemoryMappedChip instances that handle each of the 256
+     * addresses in the I/O page.
+     */
+    private MemoryMappedChip ioMap[];
+
+    /**
+     * The ULA chip, which is told about writes to the video RAM area, so that it can
+     * render a line that has changed part way through being displayed.
+     */
+    private Ula ula;
+
+    /**
+     * The page after the last page of a custom ROM loaded over the BASIC ROM, or 0 if
+     * a custom ROM has not been loaded. These pages stay mapped to the custom ROM
+     * regardless of the BASIC and Microdisc ROM settings.
+     */
+    private int customRomEndPage;
 
     /**
      * The type of BASIC ROM being used.
@@ -43,12 +87,12 @@ public class Memory {
     /**
      * The 16 KB content of the loaded BASIC ROM.
      */
-    private int[] basicRom;
+    private byte[] basicRom;
 
     /**
      * The 8 KB content of the loaded Microdisk ROM.
      */
-    private int[] microdiscRom;
+    private byte[] microdiscRom;
 
     /**
      * Constructor for Memory.
@@ -66,9 +110,13 @@ public class Memory {
         if (snapshot != null) {
             this.mem = snapshot.getMemoryArray();
         } else {
-            this.mem = new int[65536];
+            this.mem = new byte[65536];
         }
-        this.memoryMap = new MemoryMappedChip[65536];
+        this.readPages = new byte[256][];
+        this.readOffsets = new int[256];
+        this.writePages = new byte[256][];
+        this.ioMap = new MemoryMappedChip[256];
+        this.ula = ula;
         cpu.setMemory(this);
         ula.setMemory(this);
         initOricMemory(basicRomBytes, microdiscRomBytes, ula, via, microdisc);
@@ -80,7 +128,10 @@ public class Memory {
      * @param basicRomDisabled Whether the BASIC ROM is disabled or not.
      */
     public void setBasicRomDisable(boolean basicRomDisabled) {
-        this.basicRomDisabled = basicRomDisabled;
+        if (this.basicRomDisabled != basicRomDisabled) {
+            this.basicRomDisabled = basicRomDisabled;
+            mapRomPages();
+        }
     }
 
     /**
@@ -89,7 +140,10 @@ public class Memory {
      * @param diskRomEnabled Whether the Microdisk ROM is enabled or not.
      */
     public void setDiskRomEnabled(boolean diskRomEnabled) {
-        this.diskRomEnabled = diskRomEnabled;
+        if (this.diskRomEnabled != diskRomEnabled) {
+            this.diskRomEnabled = diskRomEnabled;
+            mapRomPages();
+        }
     }
 
     /**
@@ -110,13 +164,13 @@ public class Memory {
         // all to work. It does a checksum across the overlay RAM and isn't expecting
         // it all to be 0.
         for (int i = 0; i <= 0xFFFF; ++i) {
-            this.mem[i] = ((i & 128) != 0 ? 0xFF : 0);
+            this.mem[i] = (byte)((i & 128) != 0 ? 0xFF : 0);
         }
 
         // 0000-00FF Page Zero
         // 0100-01FF Stack
         // 0200-02FF Page 2
-        mapChipToMemory(new RamChip(), 0x0000, 0x02FF);
+        mapRamPages(0x00, 0x02);
 
         // 0300-03FF I/O Area
         // 0300-030F Internal VIA 6522
@@ -135,13 +189,13 @@ public class Memory {
         // 03E0-03E1 Oric Lightpen
         // 03E2-03F3 Spare Memory
         // 03F4-03FF Jasmin FDC WD1773
-        mapChipToMemory(via, 0x0300, 0x030F);
+        mapChipToIoPage(via, 0x00, 0x0F);
         // For these 12 addresses, the microdisc controller disables VIA (using
         // IO_Control pin) and maps itself.
-        mapChipToMemory(microdisc, 0x0310, 0x031B);
+        mapChipToIoPage(microdisc, 0x10, 0x1B);
         // All other addresses in the $0x3XX range without current device emulation will
         // hit the VIA.
-        mapChipToMemory(via, 0x031C, 0x03FF);
+        mapChipToIoPage(via, 0x1C, 0xFF);
         // 0400-04FF Sedoric Code
         // 0500-B3FF BASIC Program RAM
         // A000-BFDF HIRES Screen
@@ -153,52 +207,16 @@ public class Memory {
         // BF40-BF67 Spare Memory
         // BF68-BFDF TEXT Bottom Screen
         // BFE0-BFFF Spare Memory
-        mapChipToMemory(new RamChip(), 0x0400, 0xBFFF);
-
-        this.basicRom = convertByteArrayToIntArray(basicRomBytes);
-
-        mapChipToMemory(new MemoryMappedChip() {
-            public int readMemory(int address) {
-                if (basicRomDisabled) {
-                    return mem[address];
-                } else {
-                    return basicRom[address - 0xC000];
-                }
-            }
-
-            public void writeMemory(int address, int value) {
-                if (basicRomDisabled) {
-                    mem[address] = value;
-                } else {
-                    // Ignore. It's ROM, so can't write.
-                }
-            }
-        }, 0xC000, 0xDFFF);
-
-        this.microdiscRom = convertByteArrayToIntArray(microdiscRomBytes);
-
-        mapChipToMemory(new MemoryMappedChip() {
-            public int readMemory(int address) {
-                if (basicRomDisabled) {
-                    if (diskRomEnabled) {
-                        return microdiscRom[address - 0xE000];
-                    } else {
-                        return mem[address];
-                    }
-                } else {
-                    return basicRom[address - 0xC000];
-                }
-            }
+        mapRamPages(0x04, 0xBF);
 
-            public void writeMemory(int address, int value) {
-                if (basicRomDisabled && !diskRomEnabled) {
-                    mem[address] = value;
-                }
-            }
-        }, 0xE000, 0xFFFF);
+        // C000-FFFF is either the BASIC ROM, the Microdisc ROM (E000-FFFF only) or the
+        // overlay RAM, depending on the settings that the Microdisc controller makes.
+        this.basicRom = copyByteArray(basicRomBytes);
+        this.microdiscRom = copyByteArray(microdiscRomBytes);
+        mapRomPages();
 
         // Determine ROM version by looking at RESET vector.
-        int resetVector = (basicRom[0x3FFC] | ((basicRom[0x3FFD] << 8) & 0xFF00));
+        int resetVector = ((basicRom[0x3FFC] & 0xFF) | ((basicRom[0x3FFD] << 8) & 0xFF00));
         switch (resetVector) {
         case 0xF88F:
             romType = RomType.ATMOS;
@@ -213,57 +231,75 @@ public class Memory {
     }
 
     /**
-     * Converts a byte array into an int array.
+     * Copies a byte array, so that forced writes into a ROM do not modify the
+     * caller's ROM data.
      * 
-     * @param data The byte array to convert.
+     * @param data The byte array to copy.
      * 
-     * @return The int array.
+     * @return The copy of the byte array.
      */
-    private int[] convertByteArrayToIntArray(byte[] data) {
-        int[] convertedData = new int[data.length];
-        for (int i = 0; i < data.length; i++) {
-            convertedData[i] = ((int) data[i]) & 0xFF;
-        }
-        return convertedData;
+    private byte[] copyByteArray(byte[] data) {
+        byte[] copiedData = new byte[data.length];
+        System.arraycopy(data, 0, copiedData, 0, data.length);
+        return copiedData;
     }
 
     /**
-     * Maps the given chip instance at the given address range.
+     * Maps the given range of pages to RAM, for both reading and writing.
      * 
-     * @param chip         The chip to map at the given address range.
-     * @param startAddress The start of the address range.
-     * @param endAddress   The end of the address range.
+     * @param startPage The first page to map.
+     * @param endPage   The last page to map.
      */
-    private void mapChipToMemory(MemoryMappedChip chip, int startAddress, int endAddress) {
-        mapChipToMemory(chip, startAddress, endAddress, null);
+    private void mapRamPages(int startPage, int endPage) {
+        for (int page = startPage; page <= endPage; page++) {
+            mapPage(page, mem, 0, mem);
+        }
     }
 
     /**
-     * Maps the given chip instance at the given address range, optionally loading
-     * the given initial state data into that address range. This state data is
-     * intended to be used for things such as ROM images (e.g. char, kernel, basic).
-     * 
-     * @param chip         The chip to map at the given address range.
-     * @param startAddress The start of the address range.
-     * @param endAddress   The end of the address range.
-     * @param state        byte array containing initial state (can be null).
+     * Maps the C000-FFFF pages as per the current BASIC ROM and Microdisc ROM settings.
+     * This is invoked whenever one of those settings changes, so that reads and writes
+     * do not need to check the settings themselves.
      */
-    private void mapChipToMemory(MemoryMappedChip chip, int startAddress, int endAddress, byte[] state) {
-        int statePos = 0;
-
-        // Load the initial state into memory if provided.
-        if (state != null) {
-            for (int i = startAddress; i <= endAddress; i++) {
-                mem[i] = (state[statePos++] & 0xFF);
+    private void mapRomPages() {
+        for (int page = 0xC0; page <= 0xFF; page++) {
+            if (page < customRomEndPage) {
+                mapPage(page, mem, 0, null);
+            } else if (!basicRomDisabled) {
+                mapPage(page, basicRom, -0xC000, null);
+            } else if ((page >= 0xE0) && diskRomEnabled) {
+                mapPage(page, microdiscRom, -0xE000, null);
+            } else {
+                mapPage(page, mem, 0, mem);
             }
         }
+    }
 
-        // Configure the chip into the memory map between the given start and end
-        // addresses.
-        for (int i = startAddress; i <= endAddress; i++) {
-            memoryMap[i] = chip;
-        }
+    /**
+     * Maps a single page to the given arrays for reading and writing.
+     * 
+     * @param page        The page to map.
+     * @param readData    The array that reads come from.
+     * @param readOffset  The value to add to the address to index into readData.
+     * @param writeData   The array that writes go to, or null if writes are ignored.
+     */
+    private void mapPage(int page, byte[] readData, int readOffset, byte[] writeData) {
+        readPages[page] = readData;
+        readOffsets[page] = readOffset;
+        writePages[page] = writeData;
+    }
 
+    /**
+     * Maps the given chip instance at the given range of offsets within the I/O page.
+     * 
+     * @param chip        The chip to map at the given offset range.
+     * @param startOffset The start of the offset range.
+     * @param endOffset   The end of the offset range.
+     */
+    private void mapChipToIoPage(MemoryMappedChip chip, int startOffset, int endOffset) {
+        for (int i = startOffset; i <= endOffset; i++) {
+            ioMap[i] = chip;
+        }
         chip.setMemory(this);
     }
 
@@ -378,30 +414,24 @@ public class Memory {
      * @param romData The byte array containing the ROM program data to load.
      */
     public void loadCustomRom(byte[] romData) {
-        mapChipToMemory(new RomChip(), 0xC000, 0xC000 + (romData.length - 1), romData);
+        System.arraycopy(romData, 0, mem, 0xC000, romData.length);
+        customRomEndPage = 0xC0 + ((romData.length + 0xFF) >> 8);
+        mapRomPages();
     }
 
     /**
-     * Gets the int array that represents the Oric's memory.
+     * Gets the byte array that represents the Oric's memory. Values read directly 
+     * from this array must be masked with 0xFF.
      * 
-     * @return an int array represents the Oric memory.
+     * @return a byte array represents the Oric memory.
      */
-    public int[] getMemoryArray() {
+    public byte[] getMemoryArray() {
         return mem;
     }
 
     /**
-     * Gets the array of memory mapped devices.
-     * 
-     * @return The array of memory mapped devices.
-     */
-    public MemoryMappedChip[] getMemoryMap() {
-        return memoryMap;
-    }
-
-    /**
-     * Forces a write to a memory address, even if it is ROM. This is used mainly
-     * for setting emulation traps.
+     * Forces a write to a memory address, even if it is ROM, e.g. for patching
+     * the ROM.
      * 
      * @param address The address to write the value to.
      * @param value   The value to write to the given address.
@@ -410,15 +440,8 @@ public class Memory {
         if (address < 0xC000) {
             writeMemory(address, value);
         } else {
-            if (basicRomDisabled) {
-                if (diskRomEnabled) {
-                    microdiscRom[address - 0xE000] = value;
-                } else {
-                    mem[address] = value;
-                }
-            } else {
-                basicRom[address - 0xC000] = value;
-            }
+            int page = address >> 8;
+            readPages[page][address + readOffsets[page]] = (byte)value;
         }
     }
 
@@ -430,7 +453,13 @@ public class Memory {
      * @return The contents of the memory address.
      */
     public int readMemory(int address) {
-        return (memoryMap[address].readMemory(address));
+        int page = address >> 8;
+        byte[] data = readPages[page];
+        if (data != null) {
+            return (data[address + readOffsets[page]] & 0xFF);
+        } else {
+            return ioMap[address & 0xFF].readMemory(address);
+        }
     }
 
     /**
@@ -440,6 +469,15 @@ public class Memory {
      * @param value   The value to write to the given address.
      */
     public void writeMemory(int address, int value) {
-        memoryMap[address].writeMemory(address, value);
+        int page = address >> 8;
+        byte[] data = writePages[page];
+        if (data != null) {
+            if ((page >= FIRST_VIDEO_PAGE) && (page < 0xC0)) {
+                ula.beforeMemoryWrite(address);
+            }
+            data[address] = (byte)value;
+        } else if (page == IO_PAGE) {
+            ioMap[address & 0xFF].writeMemory(address, value);
+        }
     }
 }
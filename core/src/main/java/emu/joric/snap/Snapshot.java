@@ -11,7 +11,7 @@ public abstract class Snapshot {
   /**
    * Holds the machine's memory.
    */
-  protected int mem[] = new int[65536];
+  protected byte mem[] = new byte[65536];
   
   
   // 6502 state.
@@ -315,11 +315,22 @@ public abstract class Snapshot {
     this.ramExpansion = ramExpansion;
   }
 
-  public int[] getMemoryArray() {
+  public byte[] getMemoryArray() {
     return mem;
   }
 
-  public void setMemoryArray(int[] mem) {
+  public void setMemoryArray(byte[] mem) {
     this.mem = mem;
   }
+
+  /**
+   * Gets the unsigned value of the given memory address from the snapshot.
+   * 
+   * @param address The address to get the value of.
+   * 
+   * @return The value at the given address, in the range 0-255.
+   */
+  public int getMemory(int address) {
+    return (mem[address] & 0xFF);
+  }
 }
@@ -0,0 +1,364 @@
+package emu.joric.sound;
+
+import emu.joric.io.Keyboard;
+import emu.joric.io.Via;
+import emu.joric.snap.Snapshot;
+
+/**
+ * This class emulates the AY-3-8912 PSG chip, as connected to the 6522 VIA chip in the
+ * Oric. The sound synthesis is done by the AY38912Synthesiser, which is the same on
+ * all platforms. Register writes from the VIA are recorded in a log, stamped with the
+ * machine cycle that they happened on, and the samples are then synthesised a block
+ * at a time from that log. The blocks are written to the platform specific AudioSink.
+ *
+ * @author Lance Ewing
+ */
+public class AY38912PSG implements AYPSG {
+
+  private static final int CYCLES_PER_SECOND = 1000000;
+
+  // The maximum number of register writes that are held in the log. If it fills up
+  // before the next block is due, the samples up to the current cycle are synthesised
+  // early to empty it.
+  private static final int WRITE_LOG_SIZE = 1024;
+
+  private int busControl1 = 0;
+  private int busDirection = 0;
+  private int addressLatch = 0;
+
+  // The last seen value of port A, so that only actual changes to the bus are acted on.
+  private int portA = 0;
+
+  // The register write log. Each entry is the cycle, register and value of one write.
+  private long[] writeLogCycles;
+  private int[] writeLogRegisters;
+  private int[] writeLogValues;
+  private int writeLogSize;
+
+  private AY38912Synthesiser synthesiser;
+
+  private AudioSink audioSink;
+
+  // The block of samples that is written to the AudioSink when it is full.
+  private float[] sampleBlock;
+  private int sampleBlockOffset;
+
+  private double cyclesPerSample;
+
+  // The adjustment to the sample rate that is applied when the audio is being
+  // resampled, e.g. 1.001 generates 0.1% more samples per emulated second than normal.
+  private double rateAdjustment = 1.0;
+
+  // The machine cycle on which the next sample is due, and the fraction of a cycle
+  // that is carried over since the number of cycles per sample isn't a whole number.
+  private long nextSampleCycle;
+  private double sampleCycleFraction;
+
+  // Set when the sample timing needs to restart from the current cycle, i.e. at
+  // start up and after the sound has been paused.
+  private boolean resyncSampleCycle;
+
+  // While the sound is paused, register writes are applied immediately.
+  private boolean paused;
+
+  /**
+   * The AY-3-8912 in the Oric gets its data from the 6522 VIA chip.
+   */
+  private Via via;
+
+  /**
+   * Constructor for AY38912PSG.
+   *
+   * @param audioSink The platform specific AudioSink to write the samples to.
+   */
+  public AY38912PSG(AudioSink audioSink) {
+    this.audioSink = audioSink;
+    this.synthesiser = new AY38912Synthesiser();
+    this.writeLogCycles = new long[WRITE_LOG_SIZE];
+    this.writeLogRegisters = new int[WRITE_LOG_SIZE];
+    this.writeLogValues = new int[WRITE_LOG_SIZE];
+  }
+
+  /**
+   * Initialise the AY38912 PSG.
+   *
+   * @param via The 6522 VIA chip that the register data comes from.
+   * @param keyboard The Keyboard that the AY-3-8912 Port A is connected to.
+   * @param snapshot
+   */
+  public void init(Via via, Keyboard keyboard, Snapshot snapshot) {
+    // Via and Keyboard are used with PORT A for scanning keyboard.
+    this.via = via;
+    keyboard.setPsg(this);
+
+    busControl1 = 0;
+    busDirection = 0;
+    addressLatch = 0;
+    writeLogSize = 0;
+
+    // Not a valid port value, so that the first bus update is always acted on.
+    portA = -1;
+
+    audioSink.open();
+    synthesiser.reset(audioSink.getSampleRate());
+    cyclesPerSample = CYCLES_PER_SECOND / (synthesiser.getSampleRate() * rateAdjustment);
+    sampleCycleFraction = 0;
+    resyncSampleCycle = true;
+    paused = false;
+
+    int blockSize = audioSink.getBlockSize();
+    if ((sampleBlock == null) || (sampleBlock.length != blockSize)) {
+      sampleBlock = new float[blockSize];
+    }
+    sampleBlockOffset = 0;
+  }
+
+  /**
+   * Responds to a change in the CA2 and CB2 lines or port A of the 6522 VIA chip.
+   * The VIA invokes this whenever one of these is written to. A register write is
+   * only recorded in the log if one of the bus lines has actually changed.
+   *
+   * @param cycle The machine cycle on which the bus lines were written to.
+   */
+  public void updateBus(long cycle) {
+    // Bus Control 1 is connected to the VIA CA2 line in the Oric.
+    int newBusControl1 = via.getCa2();
+
+    // Bus Direction is connected to the VIA CB2 line in the Oric.
+    int newBusDirection = via.getCb2();
+
+    int newPortA = via.getPortAPins();
+
+    if ((newBusControl1 == busControl1) && (newBusDirection == busDirection) && (newPortA == portA)) {
+      return;
+    }
+    busControl1 = newBusControl1;
+    busDirection = newBusDirection;
+    portA = newPortA;
+
+    if (busDirection == 1) {
+      if (busControl1 == 1) {
+        // Address latch write is occurring.
+        addressLatch = (portA & 0x0f);
+
+      } else {
+        writeRegister(cycle, addressLatch, portA);
+      }
+    } else {
+      if (busControl1 == 1) {
+        // Read occurred. Not sure how often this happens in the Oric. Log for now so we'll find out.
+        System.out.println("AY-3-8912: Read from " + portA);
+      }
+    }
+  }
+
+  /**
+   * Records a write to the given register in the log, so that it is applied to the 
+   * synthesiser when the samples up to the given cycle are synthesised.
+   *
+   * @param cycle The machine cycle on which the write happened.
+   * @param address The register that was written to.
+   * @param value The value that was written.
+   */
+  private void writeRegister(long cycle, int address, int value) {
+    if (paused || (address >= 14)) {
+      // The I/O port doesn't affect the sound, and the Keyboard needs to see it
+      // straight away, so there is no point logging it. The same goes for any
+      // write while the sound is paused, since no samples are being synthesised.
+      synthesiser.writeRegister(address, value);
+    } else {
+      if (writeLogSize == WRITE_LOG_SIZE) {
+        emulateSamples(cycle);
+        if (writeLogSize == WRITE_LOG_SIZE) {
+          // The whole log is due after the next sample, i.e. within the same sample
+          // period, so applying it now makes no audible difference.
+          applyWriteLog(writeLogSize);
+        }
+      }
+      writeLogCycles[writeLogSize] = cycle;
+      writeLogRegisters[writeLogSize] = address;
+      writeLogValues[writeLogSize] = value;
+      writeLogSize++;
+    }
+  }
+
+  /**
+   * Applies the given number of entries from the start of the register write log to 
+   * the synthesiser, and then removes them from the log.
+   *
+   * @param count The number of log entries to apply.
+   */
+  private void applyWriteLog(int count) {
+    for (int i = 0; i < count; i++) {
+      synthesiser.writeRegister(writeLogRegisters[i], writeLogValues[i]);
+    }
+    removeWriteLogEntries(count);
+  }
+
+  /**
+   * Removes the given number of entries from the start of the register write log.
+   *
+   * @param count The number of log entries to remove.
+   */
+  private void removeWriteLogEntries(int count) {
+    writeLogSize -= count;
+    if ((count > 0) && (writeLogSize > 0)) {
+      System.arraycopy(writeLogCycles, count, writeLogCycles, 0, writeLogSize);
+      System.arraycopy(writeLogRegisters, count, writeLogRegisters, 0, writeLogSize);
+      System.arraycopy(writeLogValues, count, writeLogValues, 0, writeLogSize);
+    }
+  }
+
+  /**
+   * Synthesises all of the samples that are due on or before the given cycle, applying
+   * the logged register writes in between them at the points where they happened. Each
+   * run of samples between two writes is synthesised in one go. Whenever the block of 
+   * samples becomes full, it is written to the AudioSink.
+   *
+   * @param cycle The machine cycle to synthesise the samples up to.
+   *
+   * @return The number of cycles until the current block of samples will be full.
+   */
+  public int emulateSamples(long cycle) {
+    if (resyncSampleCycle) {
+      nextSampleCycle = cycle;
+      sampleCycleFraction = 0;
+      resyncSampleCycle = false;
+    }
+
+    int logIndex = 0;
+    while (nextSampleCycle <= cycle) {
+      // Apply the writes that happened on or before the next sample's cycle.
+      while ((logIndex < writeLogSize) && (writeLogCycles[logIndex] <= nextSampleCycle)) {
+        synthesiser.writeRegister(writeLogRegisters[logIndex], writeLogValues[logIndex]);
+        logIndex++;
+      }
+
+      // The run of samples ends at the next write, the end of the block, or the given cycle.
+      long runEndCycle = cycle;
+      if ((logIndex < writeLogSize) && (writeLogCycles[logIndex] <= cycle)) {
+        runEndCycle = writeLogCycles[logIndex] - 1;
+      }
+      int runLength = 0;
+      int maxRunLength = sampleBlock.length - sampleBlockOffset;
+      do {
+        runLength++;
+        sampleCycleFraction += cyclesPerSample;
+        int wholeCycles = (int)sampleCycleFraction;
+        sampleCycleFraction -= wholeCycles;
+        nextSampleCycle += wholeCycles;
+      } while ((nextSampleCycle <= runEndCycle) && (runLength < maxRunLength));
+
+      synthesiser.synthesise(sampleBlock, sampleBlockOffset, runLength);
+      sampleBlockOffset += runLength;
+      if (sampleBlockOffset == sampleBlock.length) {
+        audioSink.writeSamples(sampleBlock, sampleBlockOffset);
+        sampleBlockOffset = 0;
+      }
+    }
+
+    // Writes after the last sample stay in the log for the next call.
+    removeWriteLogEntries(logIndex);
+
+    int samplesToFullBlock = sampleBlock.length - sampleBlockOffset;
+    return (int)(nextSampleCycle - cycle) + (int)Math.ceil((samplesToFullBlock - 1) * cyclesPerSample);
+  }
+
+  /**
+   * Pauses the sound output. Invoked when the Machine is paused.
+   */
+  public void pauseSound() {
+    // No more samples are synthesised until the sound is resumed, so the logged
+    // writes are applied now, and any further writes are applied as they happen.
+    applyWriteLog(writeLogSize);
+    paused = true;
+    audioSink.pause();
+  }
+
+  /**
+   * Resumes the sound output. Invoked when the Machine is unpaused.
+   */
+  public void resumeSound() {
+    paused = false;
+    resyncSampleCycle = true;
+    audioSink.resume();
+  }
+
+  @Override
+  public boolean isSoundOn() {
+    return audioSink.isPlaying();
+  }
+
+  /**
+   * Closes the AudioSink.
+   */
+  public void dispose() {
+    audioSink.dispose();
+  }
+
+  /**
+   * Gets the current value stored in PORT A. The Keyboard instance will call this
+   * method to get the selected columns when testing if key(s) are pressed.
+   *
+   * @return The current value stored in PORT A (the AY-3-8912 only has one port).
+   */
+  public int getIOPortA() {
+    return synthesiser.readRegister(14);
+  }
+
+  /**
+   * Gets the sample rate that the samples are synthesised at.
+   *
+   * @return The sample rate, in samples per second.
+   */
+  public int getSampleRate() {
+    return synthesiser.getSampleRate();
+  }
+
+  /**
+   * Gets the number of samples that have been synthesised but not yet played, 
+   * including those in the block that hasn't been written to the AudioSink yet.
+   *
+   * @return The number of queued samples, or -1 if this isn't known, or the sound is paused.
+   */
+  public int getQueuedSampleCount() {
+    int queued = audioSink.getQueuedSampleCount();
+    if (paused || (queued < 0)) {
+      return -1;
+    }
+    return queued + sampleBlockOffset;
+  }
+
+  /**
+   * Resamples the audio by the given ratio, by adjusting the number of samples that
+   * are generated per emulated second. This is used when the emulation is paced by
+   * the display rather than by the audio output, and so runs slightly faster or 
+   * slower than a real Oric, to keep the audio output fed at its own rate.
+   *
+   * @param rateAdjustment The sample rate multiplier, e.g. 1.002 for 0.2% more samples.
+   */
+  public void setRateAdjustment(double rateAdjustment) {
+    this.rateAdjustment = rateAdjustment;
+    if (synthesiser.getSampleRate() > 0) {
+      cyclesPerSample = CYCLES_PER_SECOND / (synthesiser.getSampleRate() * rateAdjustment);
+    }
+  }
+
+  /**
+   * Gets the number of cycles it takes to generate a single sample.
+   *
+   * @return The number of cycles it takes to generate a single sample.
+   */
+  public double getCyclesPerSample() {
+    return cyclesPerSample;
+  }
+
+  /**
+   * Gets the AudioSink that the samples are written to.
+   *
+   * @return The AudioSink that the samples are written to.
+   */
+  protected AudioSink getAudioSink() {
+    return audioSink;
+  }
+}
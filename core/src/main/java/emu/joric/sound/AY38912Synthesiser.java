@@ -0,0 +1,506 @@
+package emu.joric.sound;
+
+/**
+ * The sound synthesis of the AY-3-8912 PSG chip, shared by all platforms. It is based
+ * heavily on code from Richard Wilson's excellent JEMU emulator and I thank Richard
+ * for the kind offer on his website allowing his code to be used in other projects.
+ *
+ * This class holds only the state of the chip's registers, tone, noise and envelope
+ * generators, and synthesises samples from them into a caller supplied block. It
+ * doesn't allocate anything while synthesising, and knows nothing about how the
+ * samples are played, which is up to the platform's AudioSink.
+ *
+ * @author Lance Ewing
+ */
+public class AY38912Synthesiser {
+
+  // The Oric runs at 1 MHz.
+  private static final int CLOCK_1MHZ = 1000000;
+
+  // The cap exists because the chip emulation's fixed point maths overflows a 32-bit
+  // int above 48 kHz (the envelope period reaches (0xFFFF * updateStep) << 1, which is
+  // ~77% of Integer.MAX_VALUE at 48 kHz), and rates above 48 kHz would provide no
+  // real audible benefit anyway.
+  public static final int MAX_SAMPLE_RATE = 48000;
+
+  // The three channels' output stages are connected in parallel on the Oric,
+  // into a load of R4 (1K) in parallel with the R2 + R3 branch (4K7 + 470),
+  // so the channels interact: a loud channel pulls the shared output node
+  // harder and suppresses the contribution of the others. This is modelled
+  // as a resistor network. Each volume level presents a different effective
+  // pull-up resistance at the channel output; the values below are from
+  // bench measurements of a real AY chip (as fitted in MAME's ay8910.cpp,
+  // BSD-3-Clause, derived from Matthew Westcott's December 2001 public
+  // domain voltage measurements).
+  private static final double[] CHANNEL_RES = {
+    15950, 15350, 15090, 14760, 14275, 13620, 12890, 11370,
+    10600,  8590,  7190,  5985,  4820,  3945,  3017,  2345
+  };
+  private static final double RES_R_UP = 800000;
+  private static final double RES_R_DOWN = 8000000;
+  private static final double ORIC_LOAD_R = 838;
+
+  // Calibration of the channels' drive strength against real Oric-1
+  // hardware (June 2026): with one and then two channels output disabled
+  // with their volume parked at 15, the playing channel's measured
+  // acoustic level dropped by around 6.2 dB and 10.7 dB respectively.
+  // Applying a conductance scale factor of 2.32 to the resistor network
+  // channel conductances reproduces both measurements (and, as independent
+  // corroboration, brings the model's solo channel volume curve to within
+  // 0.3 dB of Westcott's bench-measured DAC levels across the audible range).
+  private static final double CONDUCTANCE_SCALE = 2.32;
+
+  // The mixed output level for every combination of the three channels'
+  // volume levels, in sample units, baseline subtracted. Normalised so that
+  // a single channel at volume 15 (with the others silent) produces a sample
+  // value of 10920; the network model then makes a full three channel chord
+  // come out around 5 dB quieter than the simple mathematical sum of the
+  // three would.
+  private static final float[] MIX_TABLE = buildMixTable();
+
+  private static double mixNode(int a, int b, int c) {
+    int n = (a != 0 ? 1 : 0) + (b != 0 ? 1 : 0) + (c != 0 ? 1 : 0);
+    double gw = n / RES_R_UP;
+    double gt = n / RES_R_UP + 3.0 / RES_R_DOWN + 1.0 / ORIC_LOAD_R;
+    double g;
+    g = CONDUCTANCE_SCALE / CHANNEL_RES[a]; gw += g; gt += g;
+    g = CONDUCTANCE_SCALE / CHANNEL_RES[b]; gw += g; gt += g;
+    g = CONDUCTANCE_SCALE / CHANNEL_RES[c]; gw += g; gt += g;
+    return gw / gt;
+  }
+
+  private static float[] buildMixTable() {
+    float[] table = new float[16 * 16 * 16];
+    double base = mixNode(0, 0, 0);
+    double scale = 10920.0 / (mixNode(15, 0, 0) - base);
+    for (int a = 0; a < 16; a++) {
+      for (int b = 0; b < 16; b++) {
+        for (int c = 0; c < 16; c++) {
+          table[(a << 8) | (b << 4) | c] = (float) ((mixNode(a, b, c) - base) * scale);
+        }
+      }
+    }
+    return table;
+  }
+
+  private static float lerp(float from, float to, float weight) {
+    return from + (to - from) * weight;
+  }
+
+  // One-pole DC-blocker corner frequency used to model the AC coupling capacitor
+  // on Oric audio output to remove the DC offset that the audio chip's emulated
+  // unipolar signal would otherwise carry into the audio output. The filter
+  // coefficient R is derived from the sample rate to keep the -3 dB corner at
+  // ~17.5 Hz regardless of rate, which should be below any expected normally
+  // audible Oric content. (17.5 Hz is equivalent to R = 0.995 at 22050 Hz.)
+  private static final float DC_BLOCKER_CORNER_HZ = 17.5f;
+
+  // Constants for index values into output, count, and period arrays.
+  private static final int A = 0;
+  private static final int B = 1;
+  private static final int C = 2;
+  private static final int NOISE = 3;
+  private static final int ENVELOPE = 4;
+
+  private int[] output;   // A, B, C and Noise
+  private int[] count;    // A, B, C, Noise and Envelope counters
+  private int[] period;   // A, B, C, Noise and Envelope periods
+
+  // The time within the current sample that each channel's output was high. Reused
+  // for every sample, so that synthesis doesn't allocate.
+  private int[] cnt;
+
+  // Channel volumes. Envelope volume takes effect depending on volume mode bit.
+  private int volumeA;
+  private int volumeB;
+  private int volumeC;
+  private int volumeEnvelope;
+
+  // Current mixer disable/enable settings.
+  private int enable;
+  private boolean disableToneA;
+  private boolean disableToneB;
+  private boolean disableToneC;
+  private boolean disableAllNoise;
+
+  private int outNoise;
+  private int random = 1;
+
+  private int countEnv;
+  private int hold;
+  private int alternate;
+  private int attack;
+  private int holding;
+
+  private int updateStep;
+  private final int step = 0x8000;
+
+  private int[] registers;
+
+  private int sampleRate;
+
+  private float dcBlockerR;
+  private float dcBlockerX1;
+  private float dcBlockerY1;
+
+  /**
+   * Constructor for AY38912Synthesiser.
+   */
+  public AY38912Synthesiser() {
+    output = new int[4];
+    count = new int[5];
+    period = new int[5];
+    cnt = new int[3];
+    registers = new int[16];
+  }
+
+  /**
+   * Resets the chip to its power on state, ready to synthesise samples at the given
+   * sample rate.
+   *
+   * @param sampleRate The sample rate to synthesise samples at. Capped at MAX_SAMPLE_RATE.
+   */
+  public void reset(int sampleRate) {
+    this.sampleRate = Math.min(sampleRate, MAX_SAMPLE_RATE);
+    this.dcBlockerR = 1.0f - (float)((2 * Math.PI * DC_BLOCKER_CORNER_HZ) / this.sampleRate);
+
+    updateStep = (int) (((long)step * 8L * (long)this.sampleRate) / (long)CLOCK_1MHZ);
+    output[A] = output[B] = output[C] = 0;
+    output[NOISE] = 0xFF;
+    count[A] = count[B] = count[C] = count[ENVELOPE] = updateStep;
+    count[NOISE] = 0x7fff;
+    // Every period must be non-zero: the counter catch-up loops in synthesiseSample
+    // never terminate on a zero period.
+    period[A] = period[B] = period[C] = period[NOISE] = period[ENVELOPE] = updateStep;
+    for (int i = 0; i < registers.length; i++) {
+      registers[i] = 0;
+    }
+
+    volumeA = volumeB = volumeC = volumeEnvelope = 0;
+    disableToneA = disableToneB = disableToneC = disableAllNoise = false;
+    countEnv = hold = alternate = attack = 0;
+    // The envelope starts out holding, as if the reset-default shape 0 (decay then
+    // hold) had already completed its decay to 0. It starts moving when a program
+    // first writes the envelope shape register.
+    holding = 1;
+    enable = 0;
+    outNoise = 0;
+    random = 1;
+
+    dcBlockerX1 = 0f;
+    dcBlockerY1 = 0f;
+  }
+
+  /**
+   * Gets the sample rate that samples are synthesised at.
+   *
+   * @return The sample rate, in samples per second.
+   */
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  /**
+   * Reads the value stored in an AY-3-8912 register.
+   *
+   * @param address The address of the register to read from.
+   *
+   * @return The value stored in the register.
+   */
+  public int readRegister(int address) {
+    return registers[address];
+  }
+
+  /**
+   * Writes a value to an AY-3-8912 register.
+   *
+   * @param address The address of the register to write to.
+   * @param value The value to write to the register.
+   */
+  public void writeRegister(int address, int value) {
+    registers[address] = value;
+
+    switch (address) {
+
+      case 0x00:    // Fine tune A
+      case 0x01:    // Coarse tune A
+      case 0x02:    // Fine tune B
+      case 0x03:    // Coarse tune B
+      case 0x04:    // Fine tune C
+      case 0x05: {  // Coarse tune C
+        address >>= 1;
+        int val = (((registers[(address << 1) + 1] & 0x0f) << 8) | registers[address << 1]) * updateStep;
+        int last = period[address];
+        period[address] = val = ((val < 0x8000)? 0x8000 : val);
+        // Adjust the time remaining to the next flip-flop toggle so that the
+        // time already elapsed since the last toggle is preserved, i.e. the
+        // period write moves only the target, as on the real chip. If the
+        // elapsed time already exceeds the new period, the clamp below makes
+        // the overdue toggle happen straight away.
+        int newCount = count[address] + (val - last);
+        count[address] = newCount < 1 ? 1 : newCount;
+        break;
+      }
+
+      // Noise period.
+      case 0x06: {
+        int val = (value & 0x1f) * updateStep;
+        // A noise period of 0 behaves the same as a noise period of 1: the
+        // data sheet notes that the lowest period value is 1 for both tone
+        // and noise, and this behaviour has been verified using original
+        // Oric-1 hardware.
+        val = (val == 0 ? updateStep : val);
+        val *= 2;
+        int last = period[NOISE];
+        period[NOISE] = val;
+        int newCount = count[NOISE] + (val - last);
+        count[NOISE] = newCount < 1 ? 1 : newCount;
+        break;
+      }
+
+      // Voice enable (i.e Mixer)
+      case 0x07:
+        enable = value;
+        disableToneA = (enable & 0x01) != 0;
+        disableToneB = (enable & 0x02) != 0;
+        disableToneC = (enable & 0x04) != 0;
+        disableAllNoise = (enable & 0x38) == 0x38;
+        break;
+
+      // Channel A volume
+      case 0x08:
+        volumeA = (((value & 0x10) == 0)? value & 0x0f : volumeEnvelope);
+        break;
+
+      // Channel B volume
+      case 0x09:
+        volumeB = (((value & 0x10) == 0)? value & 0x0f : volumeEnvelope);
+        break;
+
+      // Channel C volume
+      case 0x0A:
+        volumeC = (((value & 0x10) == 0)? value & 0x0f : volumeEnvelope);
+        break;
+
+      // Envelope Fine & Coarse tune
+      case 0x0B:
+      case 0x0C: {
+        int val = (((registers[0x0C] << 8) | registers[0x0B]) * updateStep) << 1;
+        // On the real chip an envelope period register value of 0 runs at
+        // twice the speed of period 1, i.e. a full 16-step envelope cycle
+        // in 128us at 1 MHz. (This is unlike the tone and noise periods,
+        // where 0 behaves the same as 1.) Period 1 is (updateStep << 1)
+        // here, so period 0 maps to half of that, which is updateStep.
+        val = (val == 0 ? updateStep : val);
+        int last = period[ENVELOPE];
+        period[ENVELOPE] = val;
+        int newCount = count[ENVELOPE] + (val - last);
+        count[ENVELOPE] = newCount < 1 ? 1 : newCount;
+        break;
+      }
+
+      // Envelope shape
+      case 0x0D: {
+        attack = (value & 0x04) == 0 ? 0 : 0x0f;
+        if ((value & 0x08) == 0) {
+          hold = 1;
+          alternate = attack;
+        } else {
+          hold = value & 0x01;
+          alternate = value & 0x02;
+        }
+        count[ENVELOPE] = period[ENVELOPE];
+        countEnv = 0x0f;
+        holding = 0;
+        int vol = volumeEnvelope = attack ^ 0x0f;
+        if ((registers[0x08] & 0x10) != 0) {
+          volumeA = vol;
+        }
+        if ((registers[0x09] & 0x10) != 0) {
+          volumeB = vol;
+        }
+        if ((registers[0x0A] & 0x10) != 0) {
+          volumeC = vol;
+        }
+        break;
+      }
+
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Synthesises the given number of samples into the given block, starting at the
+   * given offset, based on the current state of the AY-3-8912. The samples are mono,
+   * and in the range -1.0 to 1.0.
+   *
+   * @param samples The block to write the samples to.
+   * @param offset The offset within the block to write the first sample to.
+   * @param length The number of samples to synthesise.
+   */
+  public void synthesise(float[] samples, int offset, int length) {
+    for (int i = offset, end = offset + length; i < end; i++) {
+      samples[i] = synthesiseSample();
+    }
+  }
+
+  /**
+   * Synthesises the next sample, based on the current state of the AY-3-8912.
+   *
+   * @return The sample, in the range -1.0 to 1.0.
+   */
+  private float synthesiseSample() {
+    if (disableToneA) {
+      if (count[A] <= step) {
+        count[A] += step;
+      }
+      output[A] = 1;
+    }
+    if (disableToneB) {
+      if (count[B] <= step) {
+        count[B] += step;
+      }
+      output[B] = 1;
+    }
+    if (disableToneC) {
+      if (count[C] <= step) {
+        count[C] += step;
+      }
+      output[C] = 1;
+    }
+    outNoise = output[NOISE] | enable;
+    if (disableAllNoise) {
+      if (count[NOISE] <= step) {
+        count[NOISE] += step;
+      }
+    }
+
+    cnt[A] = cnt[B] = cnt[C] = 0;
+    int left = step;
+    do {
+      int add = count[NOISE] < left ? count[NOISE] : left;
+      for (int channel = A; channel <= C; channel++) {
+        int channelCount = count[channel];
+        if ((outNoise & (0x08 << channel)) != 0) {
+          int val = output[channel] == 0 ? cnt[channel] : cnt[channel] + channelCount;
+          if ((channelCount -= add) <= 0) {
+            int channelPeriod = period[channel];
+            while (true) {
+              if ((channelCount += channelPeriod) > 0) {
+                if ((output[channel] ^= 0x01) != 0) {
+                  val += channelPeriod - channelCount;
+                }
+                break;
+              }
+              val += channelPeriod;
+              if ((channelCount += channelPeriod) > 0) {
+                if (output[channel] == 0) {
+                  val -= channelCount;
+                }
+                break;
+              }
+            }
+          } else if (output[channel] != 0) {
+            val -= channelCount;
+          }
+          cnt[channel] = val;
+        } else {
+          if ((channelCount -= add) <= 0) {
+            int channelPeriod = period[channel];
+            while (true) {
+              if ((channelCount += channelPeriod) > 0) {
+                output[channel] ^= 0x01;
+                break;
+              }
+              if ((channelCount += channelPeriod) > 0) {
+                break;
+              }
+            }
+          }
+        }
+        count[channel] = channelCount;
+      }
+
+      if ((count[NOISE] -= add) <= 0) {
+        int val = random + 1;
+        if ((val & 0x02) != 0) {
+          outNoise = (output[NOISE] ^= 0xff) | enable;
+        }
+        random = (random & 0x01) == 0 ? random >> 1 : (random ^ 0x28000) >> 1;
+        count[NOISE] += period[NOISE];
+      }
+
+      left -= add;
+    } while (left > 0);
+
+    if (holding == 0) {
+      if ((count[ENVELOPE] -= step) <= 0) {
+        int ce = countEnv;
+        int envelopePeriod = period[ENVELOPE];
+        do {
+          ce--;
+        } while ((count[ENVELOPE] += envelopePeriod) <= 0);
+
+        if (ce < 0) {
+          if (hold != 0) {
+            if (alternate != 0) {
+              attack ^= 0x0f;
+            }
+            holding = 1;
+            ce = 0;
+          } else {
+            if (alternate != 0 && (ce & 0x10) != 0) {
+              attack ^= 0x0f;
+            }
+            ce &= 0x0f;
+          }
+        }
+        countEnv = ce;
+        int vol = volumeEnvelope = ce ^ attack;
+        if ((registers[0x08] & 0x10) != 0) {
+          volumeA = vol;
+        }
+        if ((registers[0x09] & 0x10) != 0) {
+          volumeB = vol;
+        }
+        if ((registers[0x0A] & 0x10) != 0) {
+          volumeC = vol;
+        }
+      }
+    }
+
+    // Each channel spent some fraction of this sample with its output gate
+    // high (cnt / step). The output is the time weighted average of the
+    // mix table's value over the eight on/off combinations of the three
+    // channels, i.e. a trilinear blend between the table entries for each
+    // channel being silent (index 0) or at its volume level. Averaging
+    // the (non-linear) network output over the states is slightly more
+    // faithful than evaluating it once at the averages.
+    float wA = cnt[A] * (1.0f / 32768.0f);
+    float wB = cnt[B] * (1.0f / 32768.0f);
+    float wC = cnt[C] * (1.0f / 32768.0f);
+    int ia = volumeA << 8;
+    int ib = volumeB << 4;
+    int ic = volumeC;
+    float aLow = lerp(lerp(MIX_TABLE[0], MIX_TABLE[ic], wC),
+                      lerp(MIX_TABLE[ib], MIX_TABLE[ib | ic], wC), wB);
+    float aHigh = lerp(lerp(MIX_TABLE[ia], MIX_TABLE[ia | ic], wC),
+                       lerp(MIX_TABLE[ia | ib], MIX_TABLE[ia | ib | ic], wC), wB);
+    int sample = (int) lerp(aLow, aHigh, wA);
+
+    // Use a simple DC blocker to convert to -1.0 to 1.0. The output clamp is folded
+    // into the same expression as the filter, so on the rare transient that hits the
+    // rail (e.g. a register write flipping the chip from full silence to full output
+    // in one sample), the clamped value is what gets fed back into the filter state.
+    // (Clamping the filter state is arguably less mathematically accurate, because
+    // the clamping behaviour is non-linear. But this approach brings us out of the
+    // clipping state and into more normal behaviour faster, and is likely a closer
+    // approximation of the original hardware circuit behaviour.)
+    float x = sample / 16384.0f;
+    float y = Math.max(-1f, Math.min(1f, x - dcBlockerX1 + dcBlockerR * dcBlockerY1));
+    dcBlockerX1 = x;
+    dcBlockerY1 = y;
+    return y;
+  }
+}
@@ -17,13 +17,21 @@ public interface AYPSG {
   
   public int getIOPortA();
 
-  public void emulateCycle();
+  public void updateBus(long cycle);
+  
+  public int emulateSamples(long cycle);
   
   public void pauseSound();
   
   public void resumeSound();
   
   public boolean isSoundOn();
+  
+  public int getSampleRate();
+  
+  public int getQueuedSampleCount();
+  
+  public void setRateAdjustment(double rateAdjustment);
 
   public void dispose();
   
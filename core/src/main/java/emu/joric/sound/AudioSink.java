@@ -0,0 +1,71 @@
+package emu.joric.sound;
+
+/**
+ * Interface for the platform specific audio output that the AY38912PSG writes its
+ * samples to. The synthesis of the samples is the same on every platform, so each
+ * platform only needs to provide an AudioSink that plays the blocks of samples.
+ *
+ * @author Lance Ewing
+ */
+public interface AudioSink {
+
+  /**
+   * Opens the audio output. Invoked whenever the AY38912PSG is initialised.
+   */
+  public void open();
+
+  /**
+   * Gets the sample rate that the audio output plays the samples at.
+   *
+   * @return The sample rate, in samples per second.
+   */
+  public int getSampleRate();
+
+  /**
+   * Gets the number of samples in each block that is passed to writeSamples.
+   *
+   * @return The number of samples in each block.
+   */
+  public int getBlockSize();
+
+  /**
+   * Writes a block of mono samples to the audio output. The samples are in the
+   * range -1.0 to 1.0. The array is reused for the next block once this returns.
+   *
+   * @param samples The samples to write.
+   * @param count The number of samples to write.
+   */
+  public void writeSamples(float[] samples, int count);
+
+  /**
+   * Gets the number of samples that have been written but not yet played, i.e. how
+   * far ahead of the audio output the sample generation is. The desktop and Android
+   * runners use this to pace the emulation from the audio clock.
+   *
+   * @return The number of queued samples, or -1 if this isn't known.
+   */
+  public int getQueuedSampleCount();
+
+  /**
+   * Pauses the audio output.
+   */
+  public void pause();
+
+  /**
+   * Resumes the audio output.
+   */
+  public void resume();
+
+  /**
+   * Returns whether the audio output is currently playing.
+   *
+   * @return true if the audio output is playing, otherwise false.
+   */
+  public boolean isPlaying();
+
+  /**
+   * Closes the audio output.
+   */
+  public void dispose();
+
+}
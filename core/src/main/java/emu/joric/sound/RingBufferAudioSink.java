@@ -0,0 +1,238 @@
+package emu.joric.sound;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import emu.joric.util.ThreadUtils;
+
+/**
+ * An AudioSink that hands the samples over to a dedicated audio thread, which owns
+ * the platform specific AudioSink that actually plays them. The emulation thread only
+ * ever copies the samples into a single-producer/single-consumer ring buffer, so a
+ * blocking write to the audio device, or the drift management that the device's
+ * AudioSink might do, can no longer stall the emulation.
+ *
+ * The ring buffer is lock free. Each side owns one of the two positions, and only
+ * publishes it after the samples it covers have been written or read.
+ *
+ * @author Lance Ewing
+ */
+public class RingBufferAudioSink implements AudioSink, Runnable {
+
+  // The ring buffer holds at least this many milliseconds of samples.
+  private static final int RING_BUFFER_MS = 200;
+
+  // How long dispose waits for a write to the device to complete before assuming
+  // that the device was paused in the middle of it.
+  private static final int STOP_TIMEOUT_MS = 100;
+
+  private AudioSink audioSink;
+
+  // The ring buffer. The size is a power of 2, so that the positions can be masked.
+  private float[] ring;
+  private int ringMask;
+
+  // The total number of samples that have been written to and read from the ring
+  // buffer. The emulation thread owns the write position, and the audio thread
+  // owns the read position.
+  private AtomicLong writePosition;
+  private AtomicLong readPosition;
+
+  // The block of samples that the audio thread writes to the device. Owned by the
+  // audio thread.
+  private float[] deviceBlock;
+
+  // The number of times that the audio thread has run out of samples, and that the
+  // emulation thread has had to drop samples because the ring buffer was full.
+  private volatile long underrunCount;
+  private volatile long overrunCount;
+
+  private volatile boolean paused;
+  private volatile boolean running;
+
+  private Thread thread;
+
+  /**
+   * Constructor for RingBufferAudioSink.
+   *
+   * @param audioSink The platform specific AudioSink that the audio thread writes to.
+   */
+  public RingBufferAudioSink(AudioSink audioSink) {
+    this.audioSink = audioSink;
+    this.writePosition = new AtomicLong();
+    this.readPosition = new AtomicLong();
+  }
+
+  @Override
+  public void open() {
+    audioSink.open();
+
+    if (ring == null) {
+      int minSize = (audioSink.getSampleRate() * RING_BUFFER_MS) / 1000;
+      int size = Integer.highestOneBit(Math.max(minSize, audioSink.getBlockSize()) - 1) << 1;
+      ring = new float[size];
+      ringMask = size - 1;
+      deviceBlock = new float[audioSink.getBlockSize()];
+    }
+
+    if (thread == null) {
+      writePosition.set(0);
+      readPosition.set(0);
+      paused = false;
+      running = true;
+      thread = new Thread(this, "AudioOutput");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MAX_PRIORITY);
+      thread.start();
+    }
+  }
+
+  @Override
+  public int getSampleRate() {
+    return audioSink.getSampleRate();
+  }
+
+  @Override
+  public int getBlockSize() {
+    return audioSink.getBlockSize();
+  }
+
+  /**
+   * Copies the samples into the ring buffer, and wakes the audio thread. Invoked by
+   * the emulation thread. If there isn't room for all of the samples, then they are
+   * dropped and an overrun is counted.
+   */
+  @Override
+  public void writeSamples(float[] samples, int count) {
+    if (thread == null) {
+      return;
+    }
+
+    long write = writePosition.get();
+    if (count > (ring.length - (int)(write - readPosition.get()))) {
+      overrunCount++;
+      return;
+    }
+
+    int offset = (int)(write & ringMask);
+    int firstPart = Math.min(count, ring.length - offset);
+    System.arraycopy(samples, 0, ring, offset, firstPart);
+    System.arraycopy(samples, firstPart, ring, 0, count - firstPart);
+    writePosition.lazySet(write + count);
+
+    LockSupport.unpark(thread);
+  }
+
+  /**
+   * Takes blocks of samples from the ring buffer and writes them to the device. When
+   * there isn't a full block, the thread waits for up to a block's worth of time for
+   * the emulation thread to write more. If it waits longer than that, the device has
+   * played a whole block without being given another, which is counted as an underrun.
+   */
+  @Override
+  public void run() {
+    int blockSize = deviceBlock.length;
+    long blockNanos = (blockSize * 1000000000L) / audioSink.getSampleRate();
+    long waitStartTime = 0;
+    boolean underrun = false;
+
+    while (running) {
+      long read = readPosition.get();
+      if (paused || ((writePosition.get() - read) < blockSize)) {
+        if (paused) {
+          waitStartTime = 0;
+        } else if (waitStartTime == 0) {
+          waitStartTime = System.nanoTime();
+        } else if (!underrun && ((System.nanoTime() - waitStartTime) > blockNanos)) {
+          underrunCount++;
+          underrun = true;
+        }
+        LockSupport.parkNanos(this, blockNanos);
+        continue;
+      }
+
+      int offset = (int)(read & ringMask);
+      int firstPart = Math.min(blockSize, ring.length - offset);
+      System.arraycopy(ring, offset, deviceBlock, 0, firstPart);
+      System.arraycopy(ring, 0, deviceBlock, firstPart, blockSize - firstPart);
+      readPosition.lazySet(read + blockSize);
+
+      audioSink.writeSamples(deviceBlock, blockSize);
+      waitStartTime = 0;
+      underrun = false;
+    }
+  }
+
+  /**
+   * Gets the number of samples that are queued, both in the ring buffer and in the
+   * device's own buffer.
+   */
+  @Override
+  public int getQueuedSampleCount() {
+    int deviceQueued = audioSink.getQueuedSampleCount();
+    if ((thread == null) || (deviceQueued < 0)) {
+      return -1;
+    }
+    return (int)(writePosition.get() - readPosition.get()) + deviceQueued;
+  }
+
+  @Override
+  public void pause() {
+    paused = true;
+    audioSink.pause();
+  }
+
+  @Override
+  public void resume() {
+    paused = false;
+    audioSink.resume();
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  @Override
+  public boolean isPlaying() {
+    return audioSink.isPlaying();
+  }
+
+  /**
+   * Stops the audio thread, and then disposes of the device's AudioSink.
+   */
+  @Override
+  public void dispose() {
+    if (thread != null) {
+      running = false;
+      LockSupport.unpark(thread);
+      ThreadUtils.joinUninterruptibly(thread, STOP_TIMEOUT_MS, () -> {
+        if (paused) {
+          // The device was paused in the middle of a write, so the write can only
+          // complete if the device is resumed.
+          audioSink.resume();
+        }
+      });
+      thread = null;
+    }
+    audioSink.dispose();
+  }
+
+  /**
+   * Gets the number of times that the audio thread has run out of samples to give to
+   * the device.
+   *
+   * @return The number of underruns.
+   */
+  public long getUnderrunCount() {
+    return underrunCount;
+  }
+
+  /**
+   * Gets the number of times that samples have been dropped because the ring buffer
+   * was full.
+   *
+   * @return The number of overruns.
+   */
+  public long getOverrunCount() {
+    return overrunCount;
+  }
+}
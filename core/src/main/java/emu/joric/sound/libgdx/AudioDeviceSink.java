@@ -0,0 +1,80 @@
+package emu.joric.sound.libgdx;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.audio.AudioDevice;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import emu.joric.sound.AudioSink;
+
+/**
+ * AudioSink that plays the samples via a libGDX AudioDevice. This is the AudioSink
+ * that the Machine uses if the platform doesn't provide its own AY-3-8912.
+ *
+ * @author Lance Ewing
+ */
+public class AudioDeviceSink implements AudioSink {
+
+  private static final int SAMPLE_RATE = 22050;
+
+  // The samples are written in blocks of 10ms.
+  private static final int BLOCK_SIZE = (SAMPLE_RATE / 100);
+
+  private AudioDevice audioDevice;
+
+  @Override
+  public void open() {
+    if (audioDevice == null) {
+      try {
+        audioDevice = Gdx.audio.newAudioDevice(SAMPLE_RATE, true);
+      } catch (GdxRuntimeException e) {
+        audioDevice = null;
+      }
+    }
+  }
+
+  @Override
+  public int getSampleRate() {
+    return SAMPLE_RATE;
+  }
+
+  @Override
+  public int getBlockSize() {
+    return BLOCK_SIZE;
+  }
+
+  @Override
+  public void writeSamples(float[] samples, int count) {
+    if (audioDevice != null) {
+      audioDevice.writeSamples(samples, 0, count);
+    }
+  }
+
+  @Override
+  public int getQueuedSampleCount() {
+    // The AudioDevice doesn't say how much of what was written is still to be played.
+    return -1;
+  }
+
+  @Override
+  public void pause() {
+    // For libgdx, there is no pause sound.
+  }
+
+  @Override
+  public void resume() {
+    // For libgdx, there is no resume sound.
+  }
+
+  @Override
+  public boolean isPlaying() {
+    return true;
+  }
+
+  @Override
+  public void dispose() {
+    if (audioDevice != null) {
+      audioDevice.dispose();
+      audioDevice = null;
+    }
+  }
+}
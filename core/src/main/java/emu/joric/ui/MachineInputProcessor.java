@@ -139,6 +139,15 @@ public class MachineInputProcessor extends InputAdapter {
             machineScreen.getJoricRunner().sendNmi();
             return true;
         }
+        else if (keycode == Keys.F7) {
+            // Cycles through the output scales, i.e. off, Scale2x, and Scale3x.
+            machineScreen.changeOutputScale((machineScreen.getOutputScale() % 3) + 1);
+            return true;
+        }
+        else if (keycode == Keys.F8) {
+            machineScreen.changeVsyncPacing(!machineScreen.getJoricRunner().isVsyncPacing());
+            return true;
+        }
         else if (keycode == Keys.F11) {
             if (!Gdx.app.getType().equals(ApplicationType.WebGL)) {
                 Boolean fullScreen = Gdx.graphics.isFullscreen();
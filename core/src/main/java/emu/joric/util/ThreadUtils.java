@@ -0,0 +1,47 @@
+package emu.joric.util;
+
+/**
+ * Helpers for the classes that run work on threads of their own.
+ *
+ * @author Lance Ewing
+ */
+public class ThreadUtils {
+
+    /**
+     * Waits for the given thread to die. If the calling thread is interrupted while
+     * waiting, e.g. the emulation thread when JOric is stopping, then it carries on
+     * waiting, and the interrupt is restored once the thread has died.
+     *
+     * @param thread The thread to wait for.
+     */
+    public static void joinUninterruptibly(Thread thread) {
+        joinUninterruptibly(thread, 0, null);
+    }
+
+    /**
+     * Waits for the given thread to die, invoking the given Runnable each time that
+     * it is still alive after the given interval, e.g. to unblock it. If the calling
+     * thread is interrupted while waiting, then it carries on waiting, and the
+     * interrupt is restored once the thread has died.
+     *
+     * @param thread The thread to wait for.
+     * @param intervalMillis How long to wait before each call to stillAlive, or 0 to just wait.
+     * @param stillAlive Invoked whenever the thread is still alive after the interval, or null.
+     */
+    public static void joinUninterruptibly(Thread thread, long intervalMillis, Runnable stillAlive) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join(intervalMillis);
+                if ((stillAlive != null) && thread.isAlive()) {
+                    stillAlive.run();
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
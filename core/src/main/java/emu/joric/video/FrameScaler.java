@@ -0,0 +1,33 @@
+package emu.joric.video;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for an output stage that takes the completed frames of colour indexes
+ * from the PixelData and scales them up with a Scale2x/Scale3x (EPX) filter, so that
+ * MachineScreen can upload the scaled frames instead. When a FrameScaler is in use,
+ * it is the only thing that takes frames from the PixelData.
+ *
+ * @author Lance Ewing
+ */
+public interface FrameScaler {
+
+    /**
+     * Gets the factor that the frames are scaled by, i.e. 2 or 3.
+     *
+     * @return The scale factor.
+     */
+    public int getScale();
+
+    /**
+     * Takes the latest scaled frame of colour indexes, one byte per pixel.
+     *
+     * @return A direct ByteBuffer holding the new scaled frame, or null if there isn't a new one.
+     */
+    public ByteBuffer takeScaledBuffer();
+
+    /**
+     * Stops the FrameScaler, after which frames can be taken from the PixelData again.
+     */
+    public void dispose();
+}
@@ -0,0 +1,139 @@
+package emu.joric.video;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.badlogic.gdx.utils.BufferUtils;
+
+/**
+ * Hands completed frames from a producer thread to a consumer thread through a swap
+ * chain of three buffers, without either side ever having to wait for the other.
+ *
+ * The producer always writes into its own back buffer. When a frame is complete, it
+ * swaps that buffer with the "latest" buffer. The consumer swaps its own front buffer
+ * with the latest buffer only when a new frame has been published, which it knows
+ * from the frame sequence number held alongside the latest buffer's index. Neither
+ * side ever sees a buffer that the other side is using, so there is no tearing.
+ *
+ * The buffers are direct little endian ByteBuffers, so that they can be uploaded
+ * straight to the GPU, and so that the producer can write several pixels at once.
+ *
+ * @author Lance Ewing
+ */
+public class FrameSwapChain {
+
+    // Mask for the buffer index within the latest frame value. The rest of the value
+    // is the frame sequence number.
+    private static final int BUFFER_INDEX_MASK = 0x03;
+    private static final int FRAME_SEQUENCE_SHIFT = 2;
+
+    // The swap chain of buffers.
+    private ByteBuffer[] buffers;
+
+    // The buffer that the producer is currently writing to. Owned by the producer.
+    private int backBufferIndex;
+
+    // The buffer that was last taken by the consumer. Owned by the consumer.
+    private int frontBufferIndex;
+
+    // The index of the latest completed buffer, and the frame sequence number of the
+    // frame that it holds.
+    private AtomicLong latestFrame;
+
+    // The sequence number of the last frame that the producer published. This is
+    // volatile since the frames may be published by a different thread from the one
+    // that checks getPendingFrameCount, e.g. a separate rasteriser thread.
+    private volatile long frameSequence;
+
+    // The sequence number of the last frame that the consumer took.
+    private volatile long takenFrameSequence;
+
+    /**
+     * Constructor for FrameSwapChain.
+     *
+     * @param bufferSize The size of each of the buffers, in bytes.
+     */
+    public FrameSwapChain(int bufferSize) {
+        buffers = new ByteBuffer[3];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = BufferUtils.newByteBuffer(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        backBufferIndex = 0;
+        latestFrame = new AtomicLong(1);
+        frontBufferIndex = 2;
+    }
+
+    /**
+     * Gets the buffer that the producer should write the next frame into.
+     *
+     * @return The back buffer.
+     */
+    public ByteBuffer getBackBuffer() {
+        return buffers[backBufferIndex];
+    }
+
+    /**
+     * Gets the index, from 0 to 2, of the buffer that the producer is writing into.
+     * This allows the producer to keep other data alongside each buffer.
+     *
+     * @return The index of the back buffer.
+     */
+    public int getBackBufferIndex() {
+        return backBufferIndex;
+    }
+
+    /**
+     * Gets the index, from 0 to 2, of the buffer that the consumer last took.
+     *
+     * @return The index of the front buffer.
+     */
+    public int getFrontBufferIndex() {
+        return frontBufferIndex;
+    }
+
+    /**
+     * Publishes the frame in the back buffer as the latest frame. Invoked by the
+     * producer.
+     *
+     * @return The new back buffer, for the producer to write the next frame into.
+     */
+    public ByteBuffer publish() {
+        long newFrame = ((++frameSequence) << FRAME_SEQUENCE_SHIFT) | backBufferIndex;
+        backBufferIndex = (int)(latestFrame.getAndSet(newFrame) & BUFFER_INDEX_MASK);
+        return buffers[backBufferIndex];
+    }
+
+    /**
+     * Swaps the consumer's front buffer with the latest published buffer, if a new
+     * frame has been published since the last swap. Invoked by the consumer. The
+     * returned buffer belongs to the consumer until the next call.
+     *
+     * @return The front buffer holding the new frame, or null if there isn't a new frame.
+     */
+    public ByteBuffer take() {
+        long latest = latestFrame.get();
+        while ((latest >>> FRAME_SEQUENCE_SHIFT) != takenFrameSequence) {
+            // Leave the same sequence number, so that the frame isn't seen as new again.
+            long swapped = (latest & ~BUFFER_INDEX_MASK) | frontBufferIndex;
+            if (latestFrame.compareAndSet(latest, swapped)) {
+                frontBufferIndex = (int)(latest & BUFFER_INDEX_MASK);
+                takenFrameSequence = (latest >>> FRAME_SEQUENCE_SHIFT);
+                return buffers[frontBufferIndex];
+            }
+            // The producer published another frame in the meantime.
+            latest = latestFrame.get();
+        }
+        return null;
+    }
+
+    /**
+     * Gets the number of frames that have been published since the consumer last
+     * took a frame.
+     *
+     * @return The number of published frames that the consumer hasn't seen.
+     */
+    public long getPendingFrameCount() {
+        return (frameSequence - takenFrameSequence);
+    }
+}
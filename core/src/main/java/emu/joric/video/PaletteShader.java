@@ -0,0 +1,155 @@
+package emu.joric.video;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+
+import emu.joric.PixelData;
+
+/**
+ * A SpriteBatch shader that draws a texture of ULA colour indexes, as written to
+ * PixelData, by looking each index up in an 8 entry palette uniform. The indexes are
+ * uploaded as a single channel Alpha texture, which is a quarter of the size of the
+ * equivalent RGBA8888 texture. The inverse video bit of the index is applied by
+ * inverting the RGB components of the palette colour.
+ *
+ * Since interpolating between colour indexes makes no sense, the index texture is
+ * always sampled with the Nearest filter. When blur is on, the shader does its own
+ * bilinear filtering of the four nearest colours instead.
+ *
+ * @author Lance Ewing
+ */
+public class PaletteShader {
+
+    private static final String VERTEX_SHADER =
+            "attribute vec4 " + ShaderProgram.POSITION_ATTRIBUTE + ";\n" +
+            "attribute vec4 " + ShaderProgram.COLOR_ATTRIBUTE + ";\n" +
+            "attribute vec2 " + ShaderProgram.TEXCOORD_ATTRIBUTE + "0;\n" +
+            "uniform mat4 u_projTrans;\n" +
+            "varying vec4 v_color;\n" +
+            "varying vec2 v_texCoords;\n" +
+            "\n" +
+            "void main() {\n" +
+            "    v_color = " + ShaderProgram.COLOR_ATTRIBUTE + ";\n" +
+            "    v_color.a = v_color.a * (255.0/254.0);\n" +
+            "    v_texCoords = " + ShaderProgram.TEXCOORD_ATTRIBUTE + "0;\n" +
+            "    gl_Position = u_projTrans * " + ShaderProgram.POSITION_ATTRIBUTE + ";\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "#ifdef GL_ES\n" +
+            "precision mediump float;\n" +
+            "#endif\n" +
+            "varying vec4 v_color;\n" +
+            "varying vec2 v_texCoords;\n" +
+            "uniform sampler2D u_texture;\n" +
+            "uniform vec4 u_palette[8];\n" +
+            "uniform vec2 u_textureSize;\n" +
+            "uniform float u_blur;\n" +
+            "\n" +
+            "vec4 lookup(vec2 texCoords) {\n" +
+            "    float index = floor(texture2D(u_texture, texCoords).a * 255.0 + 0.5);\n" +
+            "    float inverse = step(8.0, index);\n" +
+            "    index = index - (inverse * 8.0);\n" +
+            "    vec4 colour = u_palette[0];\n" +
+            "    for (int i = 1; i < 8; i++) {\n" +
+            "        if (float(i) == index) {\n" +
+            "            colour = u_palette[i];\n" +
+            "        }\n" +
+            "    }\n" +
+            "    colour.rgb = mix(colour.rgb, vec3(1.0) - colour.rgb, inverse);\n" +
+            "    return colour;\n" +
+            "}\n" +
+            "\n" +
+            "void main() {\n" +
+            "    vec4 colour;\n" +
+            "    if (u_blur > 0.5) {\n" +
+            "        vec2 texel = vec2(1.0) / u_textureSize;\n" +
+            "        vec2 pos = (v_texCoords * u_textureSize) - 0.5;\n" +
+            "        vec2 f = fract(pos);\n" +
+            "        vec2 base = (floor(pos) + 0.5) * texel;\n" +
+            "        vec4 top = mix(lookup(base), lookup(base + vec2(texel.x, 0.0)), f.x);\n" +
+            "        vec4 bottom = mix(lookup(base + vec2(0.0, texel.y)), lookup(base + texel), f.x);\n" +
+            "        colour = mix(top, bottom, f.y);\n" +
+            "    } else {\n" +
+            "        colour = lookup(v_texCoords);\n" +
+            "    }\n" +
+            "    gl_FragColor = v_color * colour;\n" +
+            "}\n";
+
+    /**
+     * The compiled shader program.
+     */
+    private ShaderProgram shaderProgram;
+
+    /**
+     * The palette uniform values, i.e. RGBA components as floats for each of the 8
+     * Oric colours.
+     */
+    private float[] palette;
+
+    /**
+     * Whether the shader does its own bilinear filtering of the colours.
+     */
+    private boolean blur;
+
+    /**
+     * Constructor for PaletteShader.
+     */
+    public PaletteShader() {
+        shaderProgram = new ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+        if (!shaderProgram.isCompiled()) {
+            Gdx.app.error("PaletteShader", "Failed to compile shader: " + shaderProgram.getLog());
+        }
+        palette = new float[8 * 4];
+        for (int i = 0; i < 8; i++) {
+            int rgba8888Colour = PixelData.PALETTE[i];
+            palette[(i << 2) + 0] = ((rgba8888Colour >>> 24) & 0xFF) / 255f;
+            palette[(i << 2) + 1] = ((rgba8888Colour >>> 16) & 0xFF) / 255f;
+            palette[(i << 2) + 2] = ((rgba8888Colour >>> 8) & 0xFF) / 255f;
+            palette[(i << 2) + 3] = (rgba8888Colour & 0xFF) / 255f;
+        }
+    }
+
+    /**
+     * @return true if the shader compiled successfully, and so can be used.
+     */
+    public boolean isCompiled() {
+        return shaderProgram.isCompiled();
+    }
+
+    /**
+     * @return The ShaderProgram to set on the SpriteBatch.
+     */
+    public ShaderProgram getShaderProgram() {
+        return shaderProgram;
+    }
+
+    /**
+     * Sets whether the shader does its own bilinear filtering of the colours.
+     *
+     * @param blur true to turn blur on.
+     */
+    public void setBlur(boolean blur) {
+        this.blur = blur;
+    }
+
+    /**
+     * Sets the shader's uniforms for drawing the given index texture. This must be
+     * called after SpriteBatch.begin, since that is when the shader is bound.
+     *
+     * @param indexTexture The index texture that is about to be drawn.
+     */
+    public void setUniforms(Texture indexTexture) {
+        shaderProgram.setUniform4fv("u_palette", palette, 0, palette.length);
+        shaderProgram.setUniformf("u_textureSize", indexTexture.getWidth(), indexTexture.getHeight());
+        shaderProgram.setUniformf("u_blur", blur? 1f : 0f);
+    }
+
+    /**
+     * Disposes of the ShaderProgram.
+     */
+    public void dispose() {
+        shaderProgram.dispose();
+    }
+}
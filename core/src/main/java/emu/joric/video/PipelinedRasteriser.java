@@ -0,0 +1,112 @@
+package emu.joric.video;
+
+import java.util.concurrent.locks.LockSupport;
+
+import emu.joric.PixelData;
+import emu.joric.util.ThreadUtils;
+
+/**
+ * A Rasteriser that rasterises the captured frames on its own thread, so that on
+ * devices with more than one core, the emulation thread only has to fetch the video
+ * data. The captured frames are passed between the two threads through a ring of
+ * VideoCaptures. The emulation thread never waits for the rasteriser thread. If all
+ * of the VideoCaptures are waiting to be rasterised, then the frame is skipped.
+ *
+ * The rasteriser thread is the only thread that writes to the PixelData while it is
+ * running, so it must be stopped before anything else writes to the PixelData again.
+ *
+ * @author Lance Ewing
+ */
+public class PipelinedRasteriser implements Rasteriser, Runnable {
+
+    private static final int NUM_OF_CAPTURES = 3;
+
+    private PixelData pixelData;
+
+    private VideoCapture[] captures;
+
+    /**
+     * The number of captures that the emulation thread has submitted.
+     */
+    private volatile long submittedCount;
+
+    /**
+     * The number of captures that the rasteriser thread has rasterised.
+     */
+    private volatile long rasterisedCount;
+
+    private volatile boolean running;
+
+    private Thread thread;
+
+    /**
+     * Constructor for PipelinedRasteriser.
+     *
+     * @param pixelData The PixelData to rasterise the frames into.
+     */
+    public PipelinedRasteriser(PixelData pixelData) {
+        this.pixelData = pixelData;
+        this.captures = new VideoCapture[NUM_OF_CAPTURES];
+        for (int i = 0; i < NUM_OF_CAPTURES; i++) {
+            captures[i] = new VideoCapture();
+        }
+    }
+
+    /**
+     * Returns whether it is worth rasterising on a separate thread, i.e. whether there
+     * is a spare core for it, in addition to the emulation and UI threads.
+     *
+     * @return true if there are enough cores for the rasteriser thread.
+     */
+    public static boolean isWorthwhile() {
+        return (Runtime.getRuntime().availableProcessors() > 2);
+    }
+
+    /**
+     * Starts the rasteriser thread.
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this, "Rasteriser");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the rasteriser thread, and waits for it to finish rasterising whichever
+     * frame it is currently rasterising.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        ThreadUtils.joinUninterruptibly(thread);
+    }
+
+    @Override
+    public VideoCapture acquireCapture() {
+        long submitted = submittedCount;
+        if ((submitted - rasterisedCount) >= NUM_OF_CAPTURES) {
+            return null;
+        }
+        return captures[(int)(submitted % NUM_OF_CAPTURES)];
+    }
+
+    @Override
+    public void submitCapture(VideoCapture capture) {
+        submittedCount++;
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            long rasterised = rasterisedCount;
+            if (rasterised == submittedCount) {
+                LockSupport.park(this);
+                continue;
+            }
+            captures[(int)(rasterised % NUM_OF_CAPTURES)].rasterise(pixelData);
+            rasterisedCount = rasterised + 1;
+        }
+    }
+}
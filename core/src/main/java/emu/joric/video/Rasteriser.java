@@ -0,0 +1,26 @@
+package emu.joric.video;
+
+/**
+ * Interface for something that rasterises the frames that the ULA captures, rather
+ * than the ULA rasterising each cell itself as it is fetched. This allows the pixels
+ * to be produced on a different thread to the emulation.
+ *
+ * @author Lance Ewing
+ */
+public interface Rasteriser {
+
+    /**
+     * Gets a free VideoCapture for the ULA to capture the next frame into.
+     *
+     * @return A free VideoCapture, or null if there isn't one, in which case the frame is skipped.
+     */
+    public VideoCapture acquireCapture();
+
+    /**
+     * Submits a VideoCapture that the ULA has finished capturing a frame into, so that
+     * the frame is rasterised.
+     *
+     * @param capture The VideoCapture holding the captured frame.
+     */
+    public void submitCapture(VideoCapture capture);
+}
@@ -0,0 +1,75 @@
+package emu.joric.video;
+
+import java.nio.ByteBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
+
+/**
+ * Uploads lines of pixels to a screen Texture. An upload starts with a call to begin,
+ * followed by a call to drawLines for each run of lines that has changed, and then
+ * a call to end.
+ *
+ * This default implementation uploads each run of lines directly from the pixels
+ * with glTexSubImage2D, which means that the driver has to finish with the pixels
+ * before the call returns. Platforms that support pixel buffer objects can override
+ * this to stream the lines to the GPU asynchronously.
+ *
+ * @author Lance Ewing
+ */
+public class TextureStreamer {
+
+    protected Texture texture;
+    protected ByteBuffer pixels;
+    protected int bytesPerLine;
+    protected int glFormat;
+    protected int glType;
+
+    /**
+     * Begins an upload of lines to the given Texture.
+     *
+     * @param texture The Texture to update.
+     * @param pixels The pixels of the latest frame.
+     * @param bytesPerPixel The number of bytes per pixel.
+     * @param glFormat The GL format of the pixels.
+     * @param glType The GL type of the pixels.
+     */
+    public void begin(Texture texture, ByteBuffer pixels, int bytesPerPixel, int glFormat, int glType) {
+        this.texture = texture;
+        this.pixels = pixels;
+        this.bytesPerLine = texture.getWidth() * bytesPerPixel;
+        this.glFormat = glFormat;
+        this.glType = glType;
+
+        texture.bind();
+        Gdx.gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 1);
+    }
+
+    /**
+     * Uploads the given run of lines to the Texture.
+     *
+     * @param startLine The first line to upload.
+     * @param numOfLines The number of lines to upload.
+     */
+    public void drawLines(int startLine, int numOfLines) {
+        pixels.position(startLine * bytesPerLine);
+        Gdx.gl.glTexSubImage2D(GL20.GL_TEXTURE_2D, 0, 0, startLine, texture.getWidth(), numOfLines,
+                glFormat, glType, pixels);
+    }
+
+    /**
+     * Ends the upload that was started by begin.
+     */
+    public void end() {
+        pixels.position(0);
+        texture = null;
+        pixels = null;
+    }
+
+    /**
+     * Disposes of any GL resources held by the TextureStreamer.
+     */
+    public void dispose() {
+    }
+}
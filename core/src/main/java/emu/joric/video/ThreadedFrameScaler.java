@@ -0,0 +1,218 @@
+package emu.joric.video;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+import emu.joric.PixelData;
+import emu.joric.util.ThreadUtils;
+
+/**
+ * A FrameScaler that scales the frames on its own thread, so that the filter costs
+ * nothing on the emulation and UI threads. The thread sleeps until the PixelData
+ * tells it that a frame has been completed, then takes the frame, scales it, and
+ * publishes it to the UI thread through a FrameSwapChain, in the same way that the
+ * SwapChainPixelData does.
+ *
+ * The filters work directly on the colour indexes, since Scale2x and Scale3x only
+ * ever compare pixels for equality, and never blend them.
+ *
+ * @author Lance Ewing
+ */
+public class ThreadedFrameScaler implements FrameScaler, Runnable {
+
+    private PixelData pixelData;
+    private int width;
+    private int height;
+    private int scale;
+
+    // The unscaled frame, and the scaled frame, as worked on by the scaler thread.
+    private byte[] source;
+    private byte[] scaled;
+
+    // Hands the scaled frames over to the UI thread.
+    private FrameSwapChain swapChain;
+
+    private volatile boolean running;
+
+    private Thread thread;
+
+    /**
+     * Constructor for ThreadedFrameScaler. Starts the scaler thread.
+     *
+     * @param pixelData The PixelData to take the completed frames from.
+     * @param width The width of the unscaled frames.
+     * @param height The height of the unscaled frames.
+     * @param scale The factor to scale the frames by, i.e. 2 or 3.
+     */
+    public ThreadedFrameScaler(PixelData pixelData, int width, int height, int scale) {
+        this.pixelData = pixelData;
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        this.source = new byte[width * height];
+        this.scaled = new byte[width * height * scale * scale];
+        this.swapChain = new FrameSwapChain(scaled.length);
+
+        running = true;
+        thread = new Thread(this, "FrameScaler");
+        thread.setDaemon(true);
+        pixelData.setFrameCompleteListener(() -> LockSupport.unpark(thread));
+        thread.start();
+    }
+
+    @Override
+    public int getScale() {
+        return scale;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            ByteBuffer frame = pixelData.takeIndexBuffer();
+            if (frame == null) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            frame.position(0);
+            frame.get(source);
+            frame.position(0);
+
+            if (scale == 3) {
+                scale3x(source, width, height, scaled);
+            } else {
+                scale2x(source, width, height, scaled);
+            }
+
+            ByteBuffer backBuffer = swapChain.getBackBuffer();
+            backBuffer.position(0);
+            backBuffer.put(scaled);
+            backBuffer.position(0);
+            swapChain.publish();
+        }
+    }
+
+    @Override
+    public ByteBuffer takeScaledBuffer() {
+        return swapChain.take();
+    }
+
+    @Override
+    public void dispose() {
+        pixelData.setFrameCompleteListener(null);
+        running = false;
+        LockSupport.unpark(thread);
+        ThreadUtils.joinUninterruptibly(thread);
+    }
+
+    /**
+     * Scales the source pixels up by 2 using the Scale2x (EPX) filter. Each pixel E
+     * becomes 4 pixels, each of which takes the colour of two matching neighbours
+     * on that side, if they don't also match the neighbours on the opposite sides.
+     *
+     * <pre>
+     *   A         E0 E1
+     * C E B  =>   E2 E3
+     *   D
+     * </pre>
+     *
+     * @param source The pixels to scale.
+     * @param width The width of the source pixels.
+     * @param height The height of the source pixels.
+     * @param scaled The array to write the scaled pixels to.
+     */
+    private static void scale2x(byte[] source, int width, int height, byte[] scaled) {
+        int scaledWidth = width * 2;
+        for (int y = 0; y < height; y++) {
+            int line = y * width;
+            int aboveLine = (y > 0 ? line - width : line);
+            int belowLine = (y < height - 1 ? line + width : line);
+            int out = y * 2 * scaledWidth;
+
+            for (int x = 0; x < width; x++, out += 2) {
+                byte e = source[line + x];
+                byte a = source[aboveLine + x];
+                byte d = source[belowLine + x];
+                byte c = source[line + (x > 0 ? x - 1 : x)];
+                byte b = source[line + (x < width - 1 ? x + 1 : x)];
+
+                if ((a != d) && (c != b)) {
+                    scaled[out]                   = (c == a ? a : e);
+                    scaled[out + 1]               = (a == b ? b : e);
+                    scaled[out + scaledWidth]     = (c == d ? c : e);
+                    scaled[out + scaledWidth + 1] = (d == b ? d : e);
+                } else {
+                    scaled[out]                   = e;
+                    scaled[out + 1]               = e;
+                    scaled[out + scaledWidth]     = e;
+                    scaled[out + scaledWidth + 1] = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Scales the source pixels up by 3 using the Scale3x filter, which applies the
+     * same idea as Scale2x to each of the 9 pixels that pixel E becomes.
+     *
+     * <pre>
+     * A B C       E0 E1 E2
+     * D E F  =>   E3 E4 E5
+     * G H I       E6 E7 E8
+     * </pre>
+     *
+     * @param source The pixels to scale.
+     * @param width The width of the source pixels.
+     * @param height The height of the source pixels.
+     * @param scaled The array to write the scaled pixels to.
+     */
+    private static void scale3x(byte[] source, int width, int height, byte[] scaled) {
+        int scaledWidth = width * 3;
+        for (int y = 0; y < height; y++) {
+            int line = y * width;
+            int aboveLine = (y > 0 ? line - width : line);
+            int belowLine = (y < height - 1 ? line + width : line);
+            int out = y * 3 * scaledWidth;
+
+            for (int x = 0; x < width; x++, out += 3) {
+                int left = (x > 0 ? x - 1 : x);
+                int right = (x < width - 1 ? x + 1 : x);
+                byte a = source[aboveLine + left];
+                byte b = source[aboveLine + x];
+                byte c = source[aboveLine + right];
+                byte d = source[line + left];
+                byte e = source[line + x];
+                byte f = source[line + right];
+                byte g = source[belowLine + left];
+                byte h = source[belowLine + x];
+                byte i = source[belowLine + right];
+
+                int row1 = out;
+                int row2 = out + scaledWidth;
+                int row3 = out + scaledWidth * 2;
+
+                if ((b != h) && (d != f)) {
+                    scaled[row1]     = (d == b ? d : e);
+                    scaled[row1 + 1] = (((d == b) && (e != c)) || ((b == f) && (e != a)) ? b : e);
+                    scaled[row1 + 2] = (b == f ? f : e);
+                    scaled[row2]     = (((d == b) && (e != g)) || ((d == h) && (e != a)) ? d : e);
+                    scaled[row2 + 1] = e;
+                    scaled[row2 + 2] = (((b == f) && (e != i)) || ((h == f) && (e != c)) ? f : e);
+                    scaled[row3]     = (d == h ? d : e);
+                    scaled[row3 + 1] = (((d == h) && (e != i)) || ((h == f) && (e != g)) ? h : e);
+                    scaled[row3 + 2] = (h == f ? f : e);
+                } else {
+                    scaled[row1]     = e;
+                    scaled[row1 + 1] = e;
+                    scaled[row1 + 2] = e;
+                    scaled[row2]     = e;
+                    scaled[row2 + 1] = e;
+                    scaled[row2 + 2] = e;
+                    scaled[row3]     = e;
+                    scaled[row3 + 1] = e;
+                    scaled[row3 + 2] = e;
+                }
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package emu.joric.video;
 
+import java.util.Arrays;
+
 import emu.joric.BaseChip;
 import emu.joric.MachineType;
 import emu.joric.PixelData;
@@ -18,16 +20,18 @@ public class Ula extends BaseChip {
     private static final int WINDOW_LINES             = 224;
     private static final int HIRES_LINES              = 200;
     
-    private static final int palette[] = { // RGBA8888
-        0x000000FF,         // BLACK
-        0xFF0000FF,         // RED
-        0x00FF00FF,         // GREEN
-        0xFFFF00FF,         // YELLOW
-        0x0000FFFF,         // BLUE
-        0xFF00FFFF,         // PURPLE
-        0x00FFFFFF,         // CYAN
-        0xFFFFFFFF          // WHITE
-    };
+    private static final int BLACK                    = 0;
+    private static final int WHITE                    = 7;
+    
+    /**
+     * Frame skip value that skips rendering a frame whenever the UI thread has fallen
+     * more than a frame behind, i.e. when it wouldn't be displayed anyway.
+     */
+    public static final int AUTO_FRAME_SKIP           = -1;
+    
+    // The glyph cache covers all addresses that the text character sets can be at.
+    private static final int GLYPH_CACHE_START        = 0x9800;
+    private static final int GLYPH_CACHE_END          = 0xBC00;
 
     /**
      * Interface to the platform specific mechanism for writing pixels.
@@ -66,6 +70,64 @@ public class Ula extends BaseChip {
     private int lineAddr;
     private int frameCount;
 
+    /**
+     * Whether the current line is within the 224 line area.
+     */
+    private boolean lineInWindow;
+
+    /**
+     * The number of cells of the current line that have been rendered so far.
+     */
+    private int renderedCells;
+
+    /**
+     * Whether the rest of the current line is being rendered a cell per cycle, due to
+     * the CPU having written to memory that this line displays from.
+     */
+    private boolean cellPerCycle;
+
+    /**
+     * The number of frames to skip between each rendered frame, or AUTO_FRAME_SKIP.
+     */
+    private int frameSkip;
+
+    /**
+     * The number of frames that have been skipped since the last rendered frame.
+     */
+    private int skippedFrames;
+
+    /**
+     * Whether pixel output is skipped for the current frame. The timing, memory 
+     * fetches and attribute decoding are the same as for a rendered frame, so that
+     * the mode attributes still take effect, but no pixels are written.
+     */
+    private boolean skipFrame;
+
+    /**
+     * The decoded glyph cache. For each character set address, holds the 6 colour 
+     * indexes that the glyph row at that address was last decoded to, packed into a 
+     * long with the leftmost pixel in the low byte.
+     */
+    private long[] glyphCachePixels;
+
+    /**
+     * The ink and paper colour indexes that each glyph cache entry was decoded with,
+     * i.e. (ink << 4) | paper, or -1 if the entry is not valid.
+     */
+    private int[] glyphCacheColours;
+
+    /**
+     * If set, then rather than rendering the pixels, the ULA captures the video data
+     * that it fetches, and this Rasteriser turns the captured frames into pixels.
+     */
+    private Rasteriser rasteriser;
+
+    /**
+     * The VideoCapture that the current frame is being captured into, if there is a
+     * Rasteriser.
+     */
+    private VideoCapture capture;
+
     /**
      * Constructor for Ula.
      * 
@@ -78,6 +140,10 @@ public class Ula extends BaseChip {
 
         hiresMode = false;
         palFreq = true;
+        frameSkip = AUTO_FRAME_SKIP;
+        glyphCachePixels = new long[GLYPH_CACHE_END - GLYPH_CACHE_START];
+        glyphCacheColours = new int[GLYPH_CACHE_END - GLYPH_CACHE_START];
+        Arrays.fill(glyphCacheColours, -1);
 
         newFrame();
     }
@@ -98,87 +164,30 @@ public class Ula extends BaseChip {
         // * Visual picture begins at cycle 12 and will last 52 cycles (although only 40 columns of pixels)
         // * Vertical Blanking starts on line 0 and will last 9 lines
         // * Vertical Sync starts on line 3 and will last 3 lines 
+        //
+        // Rather than rendering a cell on each cycle, the whole 40 cell line is rendered
+        // in one go on the cycle of the last cell. If the CPU writes to the
+        // memory that the current line is displaying from while that line is being 
+        // displayed, then the rest of that line falls back to being rendered a cell per
+        // cycle, so that the output is the same as if every cell was rendered on time.
 
-        if (verticalCounter >= VERTICAL_BLANK_LINES) {
-            if (verticalCounter < (VERTICAL_BLANK_LINES + WINDOW_LINES)) {
-                if (horizontalCounter >= HORIZONTAL_BLANK_CYCLES) {
-                    if (horizontalCounter < (HORIZONTAL_BLANK_CYCLES + WINDOW_CYCLES)) {
-
-                        int screenCode;
-                        int cellData = screenCode = mem[lineAddr + (horizontalCounter - HORIZONTAL_BLANK_CYCLES)];
-                        if (textMode) {
-                            cellData = mem[charsetAddr + ((screenCode & 0x7F) << 3) + charline];
-                        }
-
-                        if ((screenCode & 0x60) == 0) {
-                            cellData = 0;
-
-                            switch (screenCode & 0x18) {
-                            case 0x00: {
-                                ink = palette[screenCode & 7];
-                                break;
-                            }
-                            case 0x08: {
-                                charset = (screenCode & 1);
-                                charsetAddr = charsetBase + (charset << 10);
-                                doubleHeight = ((screenCode & 2) != 0);
-                                charline = (doubleHeight ? ((windowLine & 15) >> 1) : (windowLine & 7));
-                                blink = ((screenCode & 4) != 0);
-                                blinkMask = blink && (frameCount & 16) != 0 ? 0 : 63;
-                                break;
-                            }
-                            case 0x10: {
-                                paper = palette[screenCode & 7];
-                                break;
-                            }
-                            case 0x18: {
-                                palFreq = (screenCode & 2) != 0;
-                                totalLines = palFreq ? 312 : 264;
-                                hiresMode = (screenCode & 4) != 0;
-                                charsetBase = hiresMode ? 0x9800 : 0xB400;
-                                charsetAddr = charsetBase + (charset << 10);
-                                textMode = (!hiresMode || (windowLine >= 200));
-                                if (textMode) {
-                                    lineAddr = 0xBB80 + (windowLine >> 3) * 40;
-                                } else {
-                                    lineAddr = 0xA000 + windowLine * 40;
-                                }
-                                break;
-                            }
-                            }
-
-                        } else {
-                            cellData &= blinkMask;
-                        }
-
-                        int dotInk;
-                        int dotPaper;
-                        if ((screenCode & 0x80) != 0) {
-                            dotInk = (ink ^ 0xFFFFFF00);
-                            dotPaper = (paper ^ 0xFFFFFF00);
-                        } else {
-                            dotInk = ink;
-                            dotPaper = paper;
-                        }
-
-                        pixelData.putPixel(pixelCounter++, ((cellData & 0x20) != 0 ? dotInk : dotPaper));
-                        pixelData.putPixel(pixelCounter++, ((cellData & 0x10) != 0 ? dotInk : dotPaper));
-                        pixelData.putPixel(pixelCounter++, ((cellData & 0x08) != 0 ? dotInk : dotPaper));
-                        pixelData.putPixel(pixelCounter++, ((cellData & 0x04) != 0 ? dotInk : dotPaper));
-                        pixelData.putPixel(pixelCounter++, ((cellData & 0x02) != 0 ? dotInk : dotPaper));
-                        pixelData.putPixel(pixelCounter++, ((cellData & 0x01) != 0 ? dotInk : dotPaper));
-                        
-                    } else {
-                        // Outside 40 column area, so no pixels output.
+        if (lineInWindow) {
+            if (horizontalCounter >= HORIZONTAL_BLANK_CYCLES) {
+                if (horizontalCounter < (HORIZONTAL_BLANK_CYCLES + WINDOW_CYCLES - 1)) {
+                    if (cellPerCycle) {
+                        renderCells(renderedCells + 1);
                     }
+                } else if (horizontalCounter == (HORIZONTAL_BLANK_CYCLES + WINDOW_CYCLES - 1)) {
+                    // Last cell of the 40 column area, so render whatever is left of the line.
+                    renderCells(WINDOW_CYCLES);
                 } else {
-                    // Horizontal blanking is in progress. No pixels are output during this time.
+                    // Outside 40 column area, so no pixels output.
                 }
             } else {
-                // Outside 224 line area, so no pixels output.
+                // Horizontal blanking is in progress. No pixels are output during this time.
             }
         } else {
-            // Vertical blanking is in progress. No pixels are output during this time.
+            // Vertical blanking is in progress, or outside 224 line area, so no pixels output.
         }
 
         // Increment horizontal counter for this machine cycle.
@@ -189,11 +198,14 @@ public class Ula extends BaseChip {
             horizontalCounter = 0;
 
             windowLine = ++verticalCounter - VERTICAL_BLANK_LINES;
+            lineInWindow = ((windowLine >= 0) && (windowLine < WINDOW_LINES));
+            renderedCells = 0;
+            cellPerCycle = false;
 
             if (windowLine < 224) {
                 charline = (windowLine & 7);
-                ink = palette[7];
-                paper = palette[0];
+                ink = WHITE;
+                paper = BLACK;
                 blink = false;
                 blinkMask = 63;
                 doubleHeight = false;
@@ -205,6 +217,13 @@ public class Ula extends BaseChip {
                 lineAddr = (textMode ? (0xBB80 + (windowLine >> 3) * 40) : (0xA000 + windowLine * 40));
 
             } else if (verticalCounter == totalLines) {
+                if (capture != null) {
+                    capture.setFrameCount(frameCount);
+                    rasteriser.submitCapture(capture);
+                    capture = null;
+                } else if (!skipFrame) {
+                    pixelData.frameComplete();
+                }
                 newFrame();
 
                 frameRenderComplete = true;
@@ -214,14 +233,277 @@ public class Ula extends BaseChip {
         return frameRenderComplete;
     }
 
+    /**
+     * Invoked by Memory just before the CPU writes to the video RAM area. If the 
+     * current line is part way through being displayed, and the address is one that 
+     * this line displays from, then the cells displayed so far are rendered with the 
+     * memory as it is before the write, and the rest of the line is then rendered a
+     * cell per cycle. A write to a character set also invalidates the glyph cache 
+     * entry for that address.
+     * 
+     * @param address The address that is about to be written to.
+     */
+    public void beforeMemoryWrite(int address) {
+        if (lineInWindow && !cellPerCycle &&
+                (horizontalCounter > HORIZONTAL_BLANK_CYCLES) &&
+                (horizontalCounter < (HORIZONTAL_BLANK_CYCLES + WINDOW_CYCLES)) &&
+                isLineMemory(address)) {
+            renderCells(horizontalCounter - HORIZONTAL_BLANK_CYCLES);
+            cellPerCycle = true;
+        }
+        
+        // Must be after the catch up above, which might decode the glyph row as it 
+        // is before the write.
+        if ((address >= GLYPH_CACHE_START) && (address < GLYPH_CACHE_END)) {
+            glyphCacheColours[address - GLYPH_CACHE_START] = -1;
+        }
+    }
+
+    /**
+     * Checks whether the given address is one that the current line might display 
+     * from, i.e. either the text or hires screen memory for this line, or one of the
+     * character sets. Since attributes can switch between text and hires mode part way
+     * through a line, all of these are checked regardless of the current mode.
+     * 
+     * @param address The address to check.
+     * 
+     * @return true if the current line might display from the given address.
+     */
+    private boolean isLineMemory(int address) {
+        int textLineAddr = 0xBB80 + (windowLine >> 3) * 40;
+        int hiresLineAddr = 0xA000 + windowLine * 40;
+        return (((address >= textLineAddr) && (address < textLineAddr + 40)) ||
+                ((address >= hiresLineAddr) && (address < hiresLineAddr + 40)) ||
+                ((address >= 0x9800) && (address < 0xA000)) ||
+                ((address >= 0xB400) && (address < 0xBC00)));
+    }
+
+    /**
+     * Renders the cells of the current line, from the next cell that hasn't been
+     * rendered yet, up to but not including the given cell.
+     * 
+     * @param endCell The cell to render up to.
+     */
+    private void renderCells(int endCell) {
+        if (skipFrame) {
+            while (renderedCells < endCell) {
+                skipCell();
+            }
+        } else if (capture != null) {
+            while (renderedCells < endCell) {
+                captureCell();
+            }
+        } else {
+            while (renderedCells < endCell) {
+                renderCell();
+            }
+        }
+    }
+
+    /**
+     * Renders a text mode cell that holds a character, rather than an attribute, using
+     * the glyph cache. The glyph row is only decoded if it isn't already cached with 
+     * the same ink and paper colours, which for most text is nearly always the case.
+     * 
+     * @param screenCode The screen code of the character.
+     */
+    private void renderGlyphCell(int screenCode) {
+        int dotInk = ink;
+        int dotPaper = paper;
+        if ((screenCode & 0x80) != 0) {
+            dotInk |= PixelData.INVERSE;
+            dotPaper |= PixelData.INVERSE;
+        }
+        int colours = ((dotInk << 4) | dotPaper);
+        int glyphAddr = charsetAddr + ((screenCode & 0x7F) << 3) + charline;
+        int cacheIndex = glyphAddr - GLYPH_CACHE_START;
+        
+        if (glyphCacheColours[cacheIndex] != colours) {
+            glyphCachePixels[cacheIndex] = PixelData.decodeCell(mem[glyphAddr], dotInk, dotPaper);
+            glyphCacheColours[cacheIndex] = colours;
+        }
+        
+        pixelData.putCellPixels(pixelCounter, glyphCachePixels[cacheIndex]);
+        pixelCounter += 6;
+    }
+    
+    /**
+     * Fetches the next cell of the current line into the VideoCapture, for the 
+     * Rasteriser to render later. The character set and mode attributes are applied, 
+     * since they determine which addresses the following cells are fetched from.
+     */
+    private void captureCell() {
+        int screenCode = (mem[lineAddr + renderedCells] & 0xFF);
+        int cellData = screenCode;
+        if (textMode) {
+            cellData = (mem[charsetAddr + ((screenCode & 0x7F) << 3) + charline] & 0xFF);
+        }
+        capture.putCell(windowLine, renderedCells, screenCode, cellData);
+        renderedCells++;
+
+        if ((screenCode & 0x78) == 0x08) {
+            applyCharsetAttribute(screenCode);
+        } else if ((screenCode & 0x78) == 0x18) {
+            applyModeAttribute(screenCode);
+        }
+    }
+
+    /**
+     * Fetches the next cell of the current line without rendering it. Only the mode
+     * attribute is applied, since it is the only one whose effect outlasts the line,
+     * i.e. it changes the frame timing, and the display mode of the following lines 
+     * and frames.
+     */
+    private void skipCell() {
+        int screenCode = (mem[lineAddr + renderedCells] & 0xFF);
+        renderedCells++;
+
+        if ((screenCode & 0x78) == 0x18) {
+            applyModeAttribute(screenCode);
+        }
+    }
+
+    /**
+     * Renders the next cell of the current line, applying the attribute if the cell
+     * holds a serial attribute rather than pixel data.
+     */
+    private void renderCell() {
+        int screenCode = (mem[lineAddr + renderedCells] & 0xFF);
+        renderedCells++;
+        
+        if (textMode && ((screenCode & 0x60) != 0) && (blinkMask != 0)) {
+            renderGlyphCell(screenCode);
+            return;
+        }
+        
+        int cellData = screenCode;
+        if (textMode) {
+            cellData = (mem[charsetAddr + ((screenCode & 0x7F) << 3) + charline] & 0xFF);
+        }
+
+        if ((screenCode & 0x60) == 0) {
+            cellData = 0;
+
+            switch (screenCode & 0x18) {
+            case 0x00: {
+                ink = (screenCode & 7);
+                break;
+            }
+            case 0x08: {
+                applyCharsetAttribute(screenCode);
+                break;
+            }
+            case 0x10: {
+                paper = (screenCode & 7);
+                break;
+            }
+            case 0x18: {
+                applyModeAttribute(screenCode);
+                break;
+            }
+            }
+
+        } else {
+            cellData &= blinkMask;
+        }
+
+        int dotInk;
+        int dotPaper;
+        if ((screenCode & 0x80) != 0) {
+            dotInk = (ink | PixelData.INVERSE);
+            dotPaper = (paper | PixelData.INVERSE);
+        } else {
+            dotInk = ink;
+            dotPaper = paper;
+        }
+
+        pixelData.putCell(pixelCounter, cellData, dotInk, dotPaper);
+        pixelCounter += 6;
+    }
+
+    /**
+     * Applies a character set attribute, i.e. the character set, double height and 
+     * blink settings.
+     * 
+     * @param screenCode The screen code of the character set attribute.
+     */
+    private void applyCharsetAttribute(int screenCode) {
+        charset = (screenCode & 1);
+        charsetAddr = charsetBase + (charset << 10);
+        doubleHeight = ((screenCode & 2) != 0);
+        charline = (doubleHeight ? ((windowLine & 15) >> 1) : (windowLine & 7));
+        blink = ((screenCode & 4) != 0);
+        blinkMask = blink && (frameCount & 16) != 0 ? 0 : 63;
+    }
+
+    /**
+     * Applies a mode attribute, i.e. the 50/60 Hz and text/hires mode settings.
+     * 
+     * @param screenCode The screen code of the mode attribute.
+     */
+    private void applyModeAttribute(int screenCode) {
+        palFreq = (screenCode & 2) != 0;
+        totalLines = palFreq ? 312 : 264;
+        hiresMode = (screenCode & 4) != 0;
+        charsetBase = hiresMode ? 0x9800 : 0xB400;
+        charsetAddr = charsetBase + (charset << 10);
+        textMode = (!hiresMode || (windowLine >= 200));
+        if (textMode) {
+            lineAddr = 0xBB80 + (windowLine >> 3) * 40;
+        } else {
+            lineAddr = 0xA000 + windowLine * 40;
+        }
+    }
+
+    /**
+     * Sets the number of frames to skip between each rendered frame. Skipped frames
+     * are emulated with exactly the same timing, but no pixels are output, which 
+     * saves a lot of time when running at warp speed.
+     * 
+     * @param frameSkip The number of frames to skip, 0 to render every frame, or AUTO_FRAME_SKIP.
+     */
+    public void setFrameSkip(int frameSkip) {
+        this.frameSkip = frameSkip;
+    }
+
+    /**
+     * Sets the Rasteriser that renders the frames that the ULA captures. If null, 
+     * then the ULA renders the pixels itself. This takes effect from the next frame.
+     * 
+     * @param rasteriser The Rasteriser to use, or null.
+     */
+    public void setRasteriser(Rasteriser rasteriser) {
+        this.rasteriser = rasteriser;
+    }
+
+    /**
+     * Decides whether pixel output should be skipped for the frame that is starting.
+     * 
+     * @return true if the frame should be skipped.
+     */
+    private boolean isFrameSkipped() {
+        if (frameSkip == AUTO_FRAME_SKIP) {
+            return !pixelData.isFrameNeeded();
+        } else if (skippedFrames < frameSkip) {
+            skippedFrames++;
+            return true;
+        } else {
+            skippedFrames = 0;
+            return false;
+        }
+    }
+
     private void newFrame() {
         horizontalCounter = 0;
         verticalCounter = 0;
         pixelCounter = 0;
         windowLine = verticalCounter - VERTICAL_BLANK_LINES;
+        lineInWindow = false;
+        renderedCells = 0;
+        cellPerCycle = false;
         charline = 0;
-        ink = palette[7];
-        paper = palette[0];
+        ink = WHITE;
+        paper = BLACK;
         totalLines = (palFreq ? 312 : 264);
         blink = false;
         doubleHeight = false;
@@ -232,5 +514,11 @@ public class Ula extends BaseChip {
         textMode = !hiresMode;
         lineAddr = (textMode ? 0xBB80 : 0xA000);
         frameCount++;
+        skipFrame = isFrameSkipped();
+        if ((rasteriser != null) && !skipFrame) {
+            // If the Rasteriser has fallen behind, then this frame is skipped.
+            capture = rasteriser.acquireCapture();
+            skipFrame = (capture == null);
+        }
     }
 }
@@ -0,0 +1,117 @@
+package emu.joric.video;
+
+import emu.joric.PixelData;
+
+/**
+ * Holds the video data that the ULA fetched for each cell of a frame, so that the
+ * frame can be rasterised later, and on a different thread. For each cell, the screen
+ * code and the cell data are captured. The cell data is the character set byte that
+ * was fetched in text mode, or the same as the screen code in hires mode. The ULA
+ * itself applies the character set and mode attributes while fetching, since they
+ * change which addresses are fetched from. The colour and blink attributes are only
+ * applied when the frame is rasterised.
+ *
+ * @author Lance Ewing
+ */
+public class VideoCapture {
+
+    private static final int WINDOW_CELLS = 40;
+    private static final int WINDOW_LINES = 224;
+
+    private static final int BLACK = 0;
+    private static final int WHITE = 7;
+
+    /**
+     * The screen code and cell data for each cell of the frame.
+     */
+    private byte[] cells;
+
+    /**
+     * The ULA frame count of the captured frame, which determines the blink phase.
+     */
+    private int frameCount;
+
+    /**
+     * Constructor for VideoCapture.
+     */
+    public VideoCapture() {
+        cells = new byte[WINDOW_LINES * WINDOW_CELLS * 2];
+    }
+
+    /**
+     * Captures the screen code and cell data that was fetched for the given cell.
+     *
+     * @param windowLine The line within the 224 line window.
+     * @param cell The cell within the line.
+     * @param screenCode The screen code that was fetched.
+     * @param cellData The cell data that was fetched.
+     */
+    public void putCell(int windowLine, int cell, int screenCode, int cellData) {
+        int offset = ((windowLine * WINDOW_CELLS) + cell) << 1;
+        cells[offset] = (byte)screenCode;
+        cells[offset + 1] = (byte)cellData;
+    }
+
+    /**
+     * Sets the ULA frame count of the captured frame.
+     *
+     * @param frameCount The ULA frame count.
+     */
+    public void setFrameCount(int frameCount) {
+        this.frameCount = frameCount;
+    }
+
+    /**
+     * Rasterises the captured frame into the given PixelData, and then tells the
+     * PixelData that the frame is complete.
+     *
+     * @param pixelData The PixelData to write the pixels to.
+     */
+    public void rasterise(PixelData pixelData) {
+        int blinkOffMask = ((frameCount & 16) != 0 ? 0 : 63);
+        int pixelCounter = 0;
+        int offset = 0;
+
+        for (int line = 0; line < WINDOW_LINES; line++) {
+            int ink = WHITE;
+            int paper = BLACK;
+            int blinkMask = 63;
+
+            for (int cell = 0; cell < WINDOW_CELLS; cell++) {
+                int screenCode = (cells[offset++] & 0xFF);
+                int cellData = (cells[offset++] & 0xFF);
+
+                if ((screenCode & 0x60) == 0) {
+                    cellData = 0;
+
+                    switch (screenCode & 0x18) {
+                    case 0x00: {
+                        ink = (screenCode & 7);
+                        break;
+                    }
+                    case 0x08: {
+                        blinkMask = ((screenCode & 4) != 0 ? blinkOffMask : 63);
+                        break;
+                    }
+                    case 0x10: {
+                        paper = (screenCode & 7);
+                        break;
+                    }
+                    }
+
+                } else {
+                    cellData &= blinkMask;
+                }
+
+                if ((screenCode & 0x80) != 0) {
+                    pixelData.putCell(pixelCounter, cellData, ink | PixelData.INVERSE, paper | PixelData.INVERSE);
+                } else {
+                    pixelData.putCell(pixelCounter, cellData, ink, paper);
+                }
+                pixelCounter += 6;
+            }
+        }
+
+        pixelData.frameComplete();
+    }
+}
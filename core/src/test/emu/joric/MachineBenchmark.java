@@ -0,0 +1,126 @@
+package emu.joric;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import com.badlogic.gdx.graphics.Pixmap;
+
+import emu.joric.memory.RamType;
+import emu.joric.sound.AY38912PSG;
+import emu.joric.sound.AudioSink;
+
+/**
+ * Compares the speed of the web worker's old loop, which called Machine.emulateCycle
+ * once per cycle, with the batch Machine.runCycles method, on both CPU cores. The
+ * Machine boots the Oric BASIC 1.1 ROM and is then left running BASIC's idle loop.
+ * This isn't run by the build, since timings are only meaningful on an otherwise idle
+ * machine. Run it with the machineBenchmark Gradle task, which runs it from the
+ * assets folder so that the ROM can be found.
+ *
+ * @author Lance Ewing
+ */
+public class MachineBenchmark {
+
+    // Enough cycles for BASIC to have booted and be sitting at the Ready prompt.
+    private static final long BOOT_CYCLES = 3000000;
+
+    // Each timed run is 20 seconds of Oric time, and the best of several is reported.
+    private static final long TIMED_CYCLES = 20000000;
+    private static final int ROUNDS = 5;
+
+    // The same number of cycles as the web worker runs per animation frame.
+    private static final long CYCLES_PER_CALL = 16667;
+
+    public static void main(String[] args) throws IOException {
+        byte[] basicRom = Files.readAllBytes(Paths.get("roms/basic11b.rom"));
+        byte[] microdiscRom = Files.readAllBytes(Paths.get("roms/microdis.rom"));
+
+        Machine cycleMachine = createMachine(basicRom, microdiscRom, false);
+        Machine instructionMachine = createMachine(basicRom, microdiscRom, true);
+
+        long perCycleTime = Long.MAX_VALUE;
+        long runCyclesTime = Long.MAX_VALUE;
+        long instructionTime = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            perCycleTime = Math.min(perCycleTime, timePerCycle(cycleMachine));
+            runCyclesTime = Math.min(runCyclesTime, timeRunCycles(cycleMachine));
+            instructionTime = Math.min(instructionTime, timeRunCycles(instructionMachine));
+        }
+
+        report("emulateCycle loop", perCycleTime, perCycleTime);
+        report("runCycles", runCyclesTime, perCycleTime);
+        report("runCycles, instruction-stepped", instructionTime, perCycleTime);
+    }
+
+    private static Machine createMachine(byte[] basicRom, byte[] microdiscRom, boolean instructionStepped) {
+        Machine machine = new Machine(new AY38912PSG(new NullAudioSink()), new NullKeyboardMatrix(), new NullPixelData());
+        machine.init(basicRom, microdiscRom, null, MachineType.PAL, RamType.RAM_48K);
+        machine.setInstructionStepped(instructionStepped);
+        machine.setWarpSpeed(false);
+        machine.runCycles(BOOT_CYCLES);
+        return machine;
+    }
+
+    /**
+     * Times the loop that the web worker used to run, i.e. one call per cycle.
+     */
+    private static long timePerCycle(Machine machine) {
+        long startTime = System.nanoTime();
+        for (long call = 0; call < (TIMED_CYCLES / CYCLES_PER_CALL); call++) {
+            long cycleCount = 0;
+            do {
+                machine.emulateCycle();
+                cycleCount++;
+            } while (cycleCount < CYCLES_PER_CALL);
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    private static long timeRunCycles(Machine machine) {
+        long startTime = System.nanoTime();
+        for (long call = 0; call < (TIMED_CYCLES / CYCLES_PER_CALL); call++) {
+            machine.runCycles(CYCLES_PER_CALL);
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    private static void report(String name, long time, long perCycleTime) {
+        System.out.println(String.format("%-32s %.1f ns per cycle, %.2fx", name + ":",
+                ((double)time) / TIMED_CYCLES, ((double)perCycleTime / time)));
+    }
+
+    /**
+     * An AudioSink that discards the samples, so that the AY-3-8912 still does all of
+     * its work without the benchmark being paced by an audio device.
+     */
+    private static class NullAudioSink implements AudioSink {
+        public void open() {}
+        public int getSampleRate() { return 44100; }
+        public int getBlockSize() { return 882; }
+        public void writeSamples(float[] samples, int count) {}
+        public int getQueuedSampleCount() { return -1; }
+        public void pause() {}
+        public void resume() {}
+        public boolean isPlaying() { return true; }
+        public void dispose() {}
+    }
+
+    /**
+     * A KeyboardMatrix with no keys pressed.
+     */
+    private static class NullKeyboardMatrix extends KeyboardMatrix {
+        public int getKeyMatrixRow(int row) { return 0; }
+        public void setKeyMatrixRow(int row, int value) {}
+    }
+
+    /**
+     * A PixelData that discards the pixels, so that only the emulation is timed.
+     */
+    private static class NullPixelData extends PixelData {
+        public void init(int width, int height) {}
+        public void putPixel(int index, int colourIndex) {}
+        public void clearPixels() {}
+        public boolean updatePixmap(Pixmap pixmap) { return false; }
+    }
+}
@@ -0,0 +1,83 @@
+package emu.joric;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the cells that are written in one go by the SwapChainPixelData end up
+ * with the same colour indexes as writing each of the 6 pixels separately.
+ *
+ * @author Lance Ewing
+ */
+public class SwapChainPixelDataTest {
+
+  private static final int WIDTH = 240;
+  private static final int HEIGHT = 2;
+
+  private SwapChainPixelData pixelData;
+
+  @Before
+  public void setup() {
+    pixelData = new SwapChainPixelData();
+    pixelData.init(WIDTH, HEIGHT);
+  }
+
+  private static int expectedPixel(int cellData, int ink, int paper, int pixel) {
+    return ((cellData & (0x20 >> pixel)) != 0 ? ink : paper);
+  }
+
+  private ByteBuffer takeFrame() {
+    pixelData.frameComplete();
+    return pixelData.takeIndexBuffer();
+  }
+
+  @Test
+  public void testPutCell() {
+    // Every cell data value, with every ink and paper combination, and the higher bits
+    // of the cell data set, which have to be ignored.
+    for (int ink = 0; ink < 16; ink++) {
+      for (int paper = 0; paper < 16; paper++) {
+        for (int cellData = 0; cellData < 64; cellData++) {
+          int index = ((cellData % 40) * 6) + ((cellData / 40) * WIDTH);
+          pixelData.putCell(index, cellData | 0xC0, ink, paper);
+        }
+        ByteBuffer frame = takeFrame();
+        for (int cellData = 0; cellData < 64; cellData++) {
+          int index = ((cellData % 40) * 6) + ((cellData / 40) * WIDTH);
+          for (int pixel = 0; pixel < 6; pixel++) {
+            assertEquals(String.format("Cell %02X, ink %d, paper %d, pixel %d", cellData, ink, paper, pixel),
+                expectedPixel(cellData, ink, paper, pixel), frame.get(index + pixel));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPutCellLeavesNeighboursAlone() {
+    pixelData.putCell(6, 0x2A, 7, 0);
+    pixelData.putCell(12, 0x15, 9, 8);
+    ByteBuffer frame = takeFrame();
+    int[] expected = { 0, 0, 0, 0, 0, 0, 7, 0, 7, 0, 7, 0, 8, 9, 8, 9, 8, 9, 0, 0 };
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals("Pixel " + i, expected[i], frame.get(i));
+    }
+  }
+
+  @Test
+  public void testDecodeCellMatchesPutCellPixels() {
+    for (int cellData = 0; cellData < 64; cellData++) {
+      pixelData.putCellPixels(cellData * 6, PixelData.decodeCell(cellData, 3, 12));
+    }
+    ByteBuffer frame = takeFrame();
+    for (int cellData = 0; cellData < 64; cellData++) {
+      for (int pixel = 0; pixel < 6; pixel++) {
+        assertEquals(expectedPixel(cellData, 3, 12, pixel), frame.get((cellData * 6) + pixel));
+      }
+    }
+  }
+}
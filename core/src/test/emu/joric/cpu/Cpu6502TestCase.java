@@ -0,0 +1,109 @@
+package emu.joric.cpu;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+
+import com.badlogic.gdx.graphics.Pixmap;
+
+import emu.joric.MachineType;
+import emu.joric.PixelData;
+import emu.joric.Scheduler;
+import emu.joric.io.Disk;
+import emu.joric.io.Via;
+import emu.joric.memory.Memory;
+import emu.joric.video.Ula;
+
+/**
+ * Base class for Cpu6502 unit tests that need the real Memory, with its page tables,
+ * rather than the Symon test adapter. The ROM is filled with NOPs, so the programs
+ * under test are put in RAM from 0x0400.
+ * 
+ * @author Lance Ewing
+ */
+public abstract class Cpu6502TestCase {
+
+  /**
+   * The address that test programs are loaded at.
+   */
+  protected static final int PROGRAM_ADDRESS = 0x0400;
+
+  protected Cpu6502 cpu6502;
+
+  protected Memory memory;
+
+  @Before
+  public void setup() {
+    cpu6502 = new Cpu6502(null);
+    memory = createMemory(cpu6502);
+    cpu6502.reset();
+  }
+
+  /**
+   * Creates the Memory, and the chips that it maps, for the given Cpu6502.
+   * 
+   * @param cpu The Cpu6502 to create the Memory for.
+   * 
+   * @return The Memory.
+   */
+  protected static Memory createMemory(Cpu6502 cpu) {
+    return createMemory(cpu, PROGRAM_ADDRESS);
+  }
+
+  /**
+   * Creates the Memory, and the chips that it maps, for the given Cpu6502, with a
+   * ROM whose reset vector points at the given address.
+   * 
+   * @param cpu The Cpu6502 to create the Memory for.
+   * @param resetAddress The address that the CPU starts at when it is reset.
+   * 
+   * @return The Memory.
+   */
+  protected static Memory createMemory(Cpu6502 cpu, int resetAddress) {
+    Scheduler scheduler = new Scheduler();
+    Ula ula = new Ula(new NullPixelData(), MachineType.PAL, null);
+    Via via = new Via(cpu, null, scheduler, null);
+    Disk disk = new Disk(cpu, scheduler);
+
+    byte[] basicRom = new byte[0x4000];
+    Arrays.fill(basicRom, (byte)0xEA);
+    basicRom[0x3FFC] = (byte)(resetAddress & 0xFF);
+    basicRom[0x3FFD] = (byte)(resetAddress >> 8);
+    byte[] microdiscRom = new byte[0x2000];
+
+    return new Memory(cpu, ula, via, disk, basicRom, microdiscRom, null);
+  }
+
+  /**
+   * Writes the given bytes into memory, starting at the given address.
+   * 
+   * @param address The address to write the first byte to.
+   * @param bytes The bytes to write.
+   */
+  protected void load(int address, int... bytes) {
+    load(memory, address, bytes);
+  }
+
+  /**
+   * Writes the given bytes into the given Memory, starting at the given address.
+   * 
+   * @param memory The Memory to write to.
+   * @param address The address to write the first byte to.
+   * @param bytes The bytes to write.
+   */
+  protected static void load(Memory memory, int address, int... bytes) {
+    for (int i = 0; i < bytes.length; i++) {
+      memory.writeMemory(address + i, bytes[i]);
+    }
+  }
+
+  /**
+   * A PixelData that discards everything, since the tests don't look at the screen.
+   */
+  private static class NullPixelData extends PixelData {
+    public void init(int width, int height) {}
+    public void putPixel(int index, int colourIndex) {}
+    public void clearPixels() {}
+    public boolean updatePixmap(Pixmap pixmap) { return false; }
+  }
+}
@@ -32,14 +32,18 @@ public abstract class CpuBaseTestCase {
     bus = new Bus();
     cpu = new Cpu();
     cpu6502 = new Cpu6502(null);
-    memory = new Memory(cpu6502, null, true);
-
     // RESET vector will be at 0x0200
-    memory.writeMemory(0xFFFC, Bus.DEFAULT_LOAD_ADDRESS & 0xFF);
-    memory.writeMemory(0xFFFD, (Bus.DEFAULT_LOAD_ADDRESS >> 8) & 0xFF);
+    memory = Cpu6502TestCase.createMemory(cpu6502, Bus.DEFAULT_LOAD_ADDRESS);
+
+    // The Symon tests expect the RAM to start off cleared, rather than with the Oric's
+    // power on pattern.
+    for (int address = 0; address < 0xC000; address++) {
+      if ((address & 0xFF00) != 0x0300) {
+        memory.writeMemory(address, 0);
+      }
+    }
 
     cpu6502.reset();
-    cpu6502.setDebug(true);
     
     // Assert initial state
     assertEquals(0, cpu.getAccumulator());
@@ -287,7 +291,8 @@ public abstract class CpuBaseTestCase {
     }
 
     public void write(int address, int value) {
-      memory.writeMemory(address, value);
+      // The Symon tests expect all 64K to be RAM, e.g. for the interrupt vectors.
+      memory.forceWrite(address, value);
     }
 
     public void assertIrq() {
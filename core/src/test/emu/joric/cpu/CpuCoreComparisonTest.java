@@ -0,0 +1,209 @@
+package emu.joric.cpu;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import emu.joric.memory.Memory;
+
+/**
+ * Runs the same code through the cycle-stepped core, i.e. emulateCycle, and the
+ * instruction-stepped core, i.e. emulateInstruction, and checks that they end up
+ * with the same registers, flags and memory, having taken the same number of cycles.
+ *
+ * The cycle-stepped core fetches the next op code in the last cycle of most
+ * instructions, so after each of its instructions the PC is one further on than
+ * the instruction-stepped core's PC.
+ *
+ * @author Lance Ewing
+ */
+public class CpuCoreComparisonTest {
+
+  // Far enough from the I/O page that a branch can't reach it.
+  private static final int PROGRAM_ADDRESS = 0x1000;
+
+  // The number of different starting states that each op code is tested with.
+  private static final int TRIALS_PER_OPCODE = 50;
+
+  private Cpu6502 cycleCpu;
+  private Memory cycleMemory;
+
+  private Cpu6502 instructionCpu;
+  private Memory instructionMemory;
+
+  private void createCpus() {
+    cycleCpu = new Cpu6502(null);
+    cycleMemory = Cpu6502TestCase.createMemory(cycleCpu);
+    cycleCpu.reset();
+    instructionCpu = new Cpu6502(null);
+    instructionMemory = Cpu6502TestCase.createMemory(instructionCpu);
+    instructionCpu.reset();
+  }
+
+  /**
+   * Fills the RAM of both CPUs with the same random bytes, avoiding 0x02 and 0x03 so
+   * that no address that is read from the RAM can reach the I/O page.
+   *
+   * @param random The Random to use.
+   */
+  private void fillMemory(Random random) {
+    for (int address = 0; address < 0xC000; address++) {
+      if ((address & 0xFF00) == 0x0300) {
+        continue;
+      }
+      int value = random.nextInt(256);
+      if ((value == 0x02) || (value == 0x03)) {
+        value = 0x04;
+      }
+      cycleMemory.writeMemory(address, value);
+      instructionMemory.writeMemory(address, value);
+    }
+  }
+
+  private void load(int address, int... bytes) {
+    Cpu6502TestCase.load(cycleMemory, address, bytes);
+    Cpu6502TestCase.load(instructionMemory, address, bytes);
+  }
+
+  private void setRegisters(int a, int x, int y, int sp, int p) {
+    for (Cpu6502 cpu : new Cpu6502[] { cycleCpu, instructionCpu }) {
+      cpu.setAccumulator(a);
+      cpu.setIndexRegisterX(x);
+      cpu.setIndexRegisterY(y);
+      cpu.setStackPointer(sp);
+      cpu.setProcessorStatus(p);
+      cpu.setProgramCounter(PROGRAM_ADDRESS);
+    }
+  }
+
+  /**
+   * Starts the cycle-stepped core, by fetching the first op code.
+   */
+  private void startCycleCpu() {
+    cycleCpu.step();
+  }
+
+  /**
+   * Runs one instruction on each of the cores, and checks that the results match.
+   *
+   * @param message The message to report if they don't match.
+   */
+  private void compareInstruction(String message) {
+    long cycleStart = cycleCpu.getTotalCycles();
+    cycleCpu.step();
+    int cycles = (int)(cycleCpu.getTotalCycles() - cycleStart);
+
+    assertEquals(message + " cycles", cycles, instructionCpu.emulateInstruction());
+    assertEquals(message + " PC", (cycleCpu.getProgramCounter() - 1) & 0xFFFF, instructionCpu.getProgramCounter());
+    assertEquals(message + " A", cycleCpu.getAccumulator(), instructionCpu.getAccumulator());
+    assertEquals(message + " X", cycleCpu.getIndexRegisterX(), instructionCpu.getIndexRegisterX());
+    assertEquals(message + " Y", cycleCpu.getIndexRegisterY(), instructionCpu.getIndexRegisterY());
+    assertEquals(message + " SP", cycleCpu.getStackPointer(), instructionCpu.getStackPointer());
+    assertEquals(message + " P", cycleCpu.getProcessorStatus(), instructionCpu.getProcessorStatus());
+  }
+
+  private void compareMemory(String message) {
+    assertArrayEquals(message + " memory", cycleMemory.getMemoryArray(), instructionMemory.getMemoryArray());
+  }
+
+  @Test
+  public void testEveryOpcode() {
+    Random random = new Random(6502);
+    for (int opcode = 0; opcode < 256; opcode++) {
+      for (int trial = 0; trial < TRIALS_PER_OPCODE; trial++) {
+        String message = String.format("Op code %02X, trial %d", opcode, trial);
+        createCpus();
+        fillMemory(random);
+        load(PROGRAM_ADDRESS, opcode);
+        setRegisters(random.nextInt(256), random.nextInt(256), random.nextInt(256),
+            random.nextInt(256), random.nextInt(256));
+        startCycleCpu();
+        compareInstruction(message);
+        compareMemory(message);
+      }
+    }
+  }
+
+  @Test
+  public void testProgram() {
+    createCpus();
+    load(PROGRAM_ADDRESS,
+        0xA2, 0x00,             //       LDX #$00
+        0xA0, 0x10,             //       LDY #$10
+        0xF8,                   //       SED
+        0x18,                   // LOOP: CLC
+        0xBD, 0xF0, 0x10,       //       LDA $10F0,X    (crosses a page when X >= $10)
+        0x69, 0x19,             //       ADC #$19       (decimal)
+        0x9D, 0x00, 0x06,       //       STA $0600,X
+        0x20, 0x40, 0x10,       //       JSR SUB
+        0xE8,                   //       INX
+        0x88,                   //       DEY
+        0xD0, 0xF0,             //       BNE LOOP
+        0xD8,                   //       CLD
+        0x6C, 0xFF, 0x06,       //       JMP ($06FF)    (the high byte is read from $0600)
+        0xEA);                  //       NOP
+    load(0x1040,
+        0x1E, 0x00, 0x06,       // SUB:  ASL $0600,X
+        0x36, 0x80,             //       ROL $80,X
+        0x48,                   //       PHA
+        0x08,                   //       PHP
+        0x28,                   //       PLP
+        0x68,                   //       PLA
+        0x51, 0x90,             //       EOR ($90),Y
+        0x91, 0x90,             //       STA ($90),Y
+        0x60);                  //       RTS
+    load(0x0090, 0xF8, 0x06);
+    load(0x06FF, 0x00);
+    setRegisters(0, 0, 0, 0xFF, 0x20);
+    startCycleCpu();
+
+    // Enough for the loop, the JMP, and the BRK that the JMP ends up at.
+    for (int i = 0; i < 400; i++) {
+      compareInstruction("Instruction " + i);
+    }
+    compareMemory("Program");
+  }
+
+  @Test
+  public void testSwitchingPartWayThroughAnInstruction() {
+    Random random = new Random(1);
+    createCpus();
+    fillMemory(random);
+    load(PROGRAM_ADDRESS,
+        0xFE, 0x00, 0x05,       // INC $0500,X
+        0xB1, 0x80,             // LDA ($80),Y
+        0x6D, 0x00, 0x05,       // ADC $0500
+        0x4C, 0x00, 0x10);      // JMP $1000
+    setRegisters(0, 0x10, 0x20, 0xFF, 0x20);
+    startCycleCpu();
+    instructionCpu.step();
+
+    // The second CPU runs the first few cycles of each instruction on the cycle-stepped
+    // core, and then lets the instruction-stepped core finish it off.
+    long instructionCycles = instructionCpu.getTotalCycles();
+    for (int i = 0; i < 100; i++) {
+      cycleCpu.step();
+      for (int j = 0; j < (i % 3); j++) {
+        instructionCpu.emulateCycle();
+      }
+      instructionCycles += instructionCpu.emulateInstruction() + (i % 3);
+
+      String message = "Instruction " + i;
+      assertEquals(message + " A", cycleCpu.getAccumulator(), instructionCpu.getAccumulator());
+      assertEquals(message + " P", cycleCpu.getProcessorStatus(), instructionCpu.getProcessorStatus());
+    }
+
+    // The instruction-stepped core leaves the next op code to be fetched when it runs a
+    // whole instruction itself, whereas the cycle-stepped core has always fetched it.
+    if (instructionCpu.getProgramCounter() != cycleCpu.getProgramCounter()) {
+      instructionCpu.emulateCycle();
+      instructionCycles++;
+    }
+    assertEquals("Switching PC", cycleCpu.getProgramCounter(), instructionCpu.getProgramCounter());
+    assertEquals("Switching cycles", cycleCpu.getTotalCycles(), instructionCycles);
+    assertEquals("Switching cycles", cycleCpu.getTotalCycles(), instructionCpu.getTotalCycles());
+    compareMemory("Switching");
+  }
+}
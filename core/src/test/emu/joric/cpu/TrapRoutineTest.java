@@ -0,0 +1,95 @@
+package emu.joric.cpu;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests that TrapRoutines registered with the Cpu6502 are run by both the cycle-stepped
+ * and the instruction-stepped cores, and that the memory at the trap address is left
+ * untouched.
+ * 
+ * @author Lance Ewing
+ */
+public class TrapRoutineTest extends Cpu6502TestCase {
+
+  private int trapCount;
+
+  private TrapRoutine countingTrap(final int newPC) {
+    return new TrapRoutine() {
+      public int execute() {
+        trapCount++;
+        return newPC;
+      }
+    };
+  }
+
+  @Test
+  public void testTrapRunsInCycleSteppedCore() {
+    load(PROGRAM_ADDRESS, 0xA9, 0x12);           // LDA #$12
+    cpu6502.registerTrapRoutine(PROGRAM_ADDRESS, countingTrap(0x0500));
+    load(0x0500, 0xA2, 0x34);                    // LDX #$34
+
+    cpu6502.step(3);
+
+    assertEquals(1, trapCount);
+    assertEquals(0x00, cpu6502.getAccumulator());
+    assertEquals(0x34, cpu6502.getIndexRegisterX());
+    assertEquals(0xA9, memory.readMemory(PROGRAM_ADDRESS));
+  }
+
+  @Test
+  public void testTrapRunsInInstructionSteppedCore() {
+    load(PROGRAM_ADDRESS, 0xA9, 0x12);           // LDA #$12
+    cpu6502.registerTrapRoutine(PROGRAM_ADDRESS, countingTrap(0x0500));
+    load(0x0500, 0xA2, 0x34);                    // LDX #$34
+
+    cpu6502.emulateInstruction();
+    assertEquals(1, trapCount);
+    assertEquals(0x0500, cpu6502.getProgramCounter());
+
+    cpu6502.emulateInstruction();
+    assertEquals(0x00, cpu6502.getAccumulator());
+    assertEquals(0x34, cpu6502.getIndexRegisterX());
+    assertEquals(0xA9, memory.readMemory(PROGRAM_ADDRESS));
+  }
+
+  @Test
+  public void testTrapWithNoPCChange() {
+    load(PROGRAM_ADDRESS, 0xEA, 0xA9, 0x12);     // NOP, LDA #$12
+    cpu6502.registerTrapRoutine(PROGRAM_ADDRESS, countingTrap(TrapRoutine.NO_PC_CHANGE));
+
+    cpu6502.emulateInstruction();
+    cpu6502.emulateInstruction();
+
+    assertEquals(1, trapCount);
+    assertEquals(0x12, cpu6502.getAccumulator());
+  }
+
+  @Test
+  public void testTrapInRom() {
+    // The same as the tape traps, which are in the BASIC ROM.
+    cpu6502.registerTrapRoutine(0xE000, countingTrap(0x0500));
+    load(PROGRAM_ADDRESS, 0x4C, 0x00, 0xE0);     // JMP $E000
+
+    cpu6502.emulateInstruction();
+    cpu6502.emulateInstruction();
+
+    assertEquals(1, trapCount);
+    assertEquals(0x0500, cpu6502.getProgramCounter());
+    assertEquals(0xEA, memory.readMemory(0xE000));
+  }
+
+  @Test
+  public void testDeregisteredTrapDoesNotRun() {
+    load(PROGRAM_ADDRESS, 0xA9, 0x12);           // LDA #$12
+    cpu6502.registerTrapRoutine(PROGRAM_ADDRESS, countingTrap(0x0500));
+    cpu6502.deregisterTrapRoutine(PROGRAM_ADDRESS);
+
+    cpu6502.emulateInstruction();
+
+    assertEquals(0, trapCount);
+    assertEquals(0x12, cpu6502.getAccumulator());
+    assertEquals(PROGRAM_ADDRESS + 2, cpu6502.getProgramCounter());
+  }
+}
@@ -0,0 +1,87 @@
+package emu.joric.video;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import emu.joric.MachineType;
+import emu.joric.Scheduler;
+import emu.joric.SwapChainPixelData;
+import emu.joric.cpu.Cpu6502;
+import emu.joric.io.Disk;
+import emu.joric.io.Via;
+import emu.joric.memory.Memory;
+
+/**
+ * Tests the ULA's AUTO_FRAME_SKIP setting with the SwapChainPixelData, i.e. that a
+ * frame is only skipped when the UI thread has fallen behind.
+ * 
+ * @author Lance Ewing
+ */
+public class UlaFrameSkipTest {
+
+  private static final int FRAMES = 50;
+
+  private SwapChainPixelData pixelData;
+
+  private Ula ula;
+
+  private int renderedFrames;
+
+  @Before
+  public void setup() {
+    MachineType machineType = MachineType.PAL;
+    pixelData = new SwapChainPixelData();
+    pixelData.init(machineType.getTotalScreenWidth(), machineType.getTotalScreenHeight());
+    pixelData.setFrameCompleteListener(() -> renderedFrames++);
+
+    Scheduler scheduler = new Scheduler();
+    Cpu6502 cpu = new Cpu6502(null);
+    ula = new Ula(pixelData, machineType, null);
+    new Memory(cpu, ula, new Via(cpu, null, scheduler, null), new Disk(cpu, scheduler),
+        new byte[0x4000], new byte[0x2000], null);
+  }
+
+  /**
+   * Emulates the ULA until it has completed a frame.
+   */
+  private void emulateFrame() {
+    while (!ula.emulateCycle());
+  }
+
+  @Test
+  public void testEveryFrameRenderedWhenUIKeepsUp() {
+    for (int i = 0; i < FRAMES; i++) {
+      emulateFrame();
+      // The UI thread takes each frame, as it does when running at normal speed.
+      assertNotNull(pixelData.takeIndexBuffer());
+    }
+    assertEquals(FRAMES, renderedFrames);
+  }
+
+  @Test
+  public void testFramesSkippedWhenUIFallsBehind() {
+    for (int i = 0; i < FRAMES; i++) {
+      emulateFrame();
+      // The UI thread takes a frame every 5 frames, as it might at warp speed.
+      if ((i % 5) == 4) {
+        assertNotNull(pixelData.takeIndexBuffer());
+      }
+    }
+    // At most two frames are rendered for each one that the UI thread takes.
+    assertTrue(renderedFrames < FRAMES);
+    assertTrue(renderedFrames <= ((FRAMES / 5) * 2) + 1);
+    assertTrue(renderedFrames >= FRAMES / 5);
+  }
+
+  @Test
+  public void testNoFramesSkippedWhenFrameSkipIsZero() {
+    ula.setFrameSkip(0);
+    emulateFrame();
+    for (int i = 0; i < FRAMES; i++) {
+      emulateFrame();
+    }
+    assertEquals(FRAMES + 1, renderedFrames);
+  }
+}
@@ -0,0 +1,231 @@
+package emu.joric.gwt;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.typedarrays.shared.Float32Array;
+import com.google.gwt.typedarrays.shared.TypedArrays;
+
+import emu.joric.sound.AY38912Synthesiser;
+import emu.joric.sound.AudioSink;
+
+/**
+ * GWT/HTML5/Web implementation of the AudioSink. The web worker pushes the samples
+ * into a SharedQueue, from which the AudioWorklet that the UI thread creates pulls
+ * them for playing via the Web Audio API.
+ */
+public class GwtAudioSink implements AudioSink {
+
+    // Samples are generated at the AudioContext's native rate, to avoid the
+    // browser resampling at the context boundary, up to the maximum that the
+    // AY38912Synthesiser supports. The fallback rate is used only if creation
+    // of the AudioContext fails, in which case there is no audio output at all,
+    // but the sample generation maths must remain sane. 22050 was the fixed
+    // rate that was used before host-native rate support was added.
+    public static final int MAX_SAMPLE_RATE = AY38912Synthesiser.MAX_SAMPLE_RATE;
+    public static final int FALLBACK_SAMPLE_RATE = 22050;
+
+    // Target time by which sample generation runs ahead of audio output. This
+    // protects against scheduling delays in the web worker (e.g. a skipped
+    // animation frame) and jitter between us and the hosts audio system, at
+    // the cost of latency between the emulation writing a register and the
+    // result being heard. The equivalent number of samples is derived from
+    // this in sampleLatency.
+    public static final int SAMPLE_LATENCY_MS = 140;
+
+    // Samples are pushed to the shared queue in blocks of 512, i.e. 4 of the
+    // AudioWorklet's fixed 128-sample render quanta. This is push granularity
+    // only, so is independent of sample rate; the latency that is heard is
+    // governed by SAMPLE_LATENCY_MS.
+    private static final int BLOCK_SIZE = 512;
+
+    // The actual sample rate, and the latency derived from it.
+    private int sampleRate;
+    private int sampleLatency;
+
+    private Float32Array sampleBuffer;
+    private SharedQueue sampleSharedQueue;
+
+    private boolean writeSamplesEnabled;
+
+    private PSGAudioWorklet audioWorklet;
+
+    /**
+     * Constructor for GwtAudioSink (invoked by the UI thread).
+     *
+     * @param gwtJOricRunner
+     */
+    public GwtAudioSink(GwtJOricRunner gwtJOricRunner) {
+        this((JavaScriptObject)null, FALLBACK_SAMPLE_RATE);
+        this.audioWorklet = new PSGAudioWorklet(sampleSharedQueue, gwtJOricRunner);
+        // Now that the AudioContext exists, reconfigure for whatever rate it
+        // actually opened at.
+        configureSampleRate(audioWorklet.getSampleRate());
+    }
+
+    /**
+     * Constructor for GwtAudioSink (invoked by the web worker).
+     *
+     * @param audioBufferSAB SharedArrayBuffer for the audio ring buffer.
+     * @param sampleRate The sample rate of the AudioContext created by the UI thread.
+     */
+    public GwtAudioSink(JavaScriptObject audioBufferSAB, int sampleRate) {
+        if (audioBufferSAB == null) {
+            // Sized to hold 1 second at the maximum supported sample rate. The
+            // capacity is primarily headroom; the latency that is heard is
+            // governed by SAMPLE_LATENCY_MS.
+            audioBufferSAB = SharedQueue.getStorageForCapacity(MAX_SAMPLE_RATE);
+        }
+        this.sampleSharedQueue = new SharedQueue(audioBufferSAB);
+        this.sampleBuffer = TypedArrays.createFloat32Array(BLOCK_SIZE);
+
+        configureSampleRate(sampleRate);
+    }
+
+    /**
+     * Sets the sample rate and the latency derived from it. For the UI thread
+     * instance, this is the rate of the AudioContext it created. For the web
+     * worker instance, it is the rate received in the Initialise message.
+     *
+     * @param sampleRate The sample rate that samples will be played at.
+     */
+    private void configureSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+        this.sampleLatency = (sampleRate * SAMPLE_LATENCY_MS) / 1000;
+    }
+
+    @Override
+    public void open() {
+        // The SharedQueue and AudioWorklet are created up front, and live for as
+        // long as the web page does.
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    @Override
+    public void writeSamples(float[] samples, int count) {
+        // No point writing samples until we know that the AudioWorklet is ready.
+        if (writeSamplesEnabled) {
+            for (int i = 0; i < count; i++) {
+                sampleBuffer.set(i, samples[i]);
+            }
+            sampleSharedQueue.push(count == BLOCK_SIZE? sampleBuffer : sampleBuffer.subarray(0, count));
+        }
+    }
+
+    @Override
+    public int getQueuedSampleCount() {
+        return (sampleSharedQueue != null? sampleSharedQueue.availableRead() : -1);
+    }
+
+    @Override
+    public void pause() {
+        if (audioWorklet != null) {
+            audioWorklet.suspend();
+        }
+    }
+
+    /**
+     * Resumes the sound output. Invoked when the Machine is (re)created or unpaused.
+     */
+    @Override
+    public void resume() {
+        if (sampleSharedQueue != null) {
+            if (!sampleSharedQueue.isEmpty()) {
+                // Clear out the old data from when it was last playing.
+                logToJSConsole("Clearing sample queue...");
+                int totalCleared = 0;
+                int itemsRead = 0;
+                Float32Array data = TypedArrays.createFloat32Array(1024);
+                do {
+                    itemsRead = sampleSharedQueue.pop(data);
+                    totalCleared += itemsRead;
+                } while (itemsRead == 1024);
+                logToJSConsole("Cleared " + totalCleared + " old samples.");
+
+                // Now fill with silence, so that we do not slow down emulation rate.
+                int silentSampleCount = sampleLatency - (sampleRate / 60);
+                sampleSharedQueue.push(TypedArrays.createFloat32Array(silentSampleCount));
+            }
+        }
+        if (audioWorklet != null) {
+            logToJSConsole("Resuming PSGAudioWorker...");
+            audioWorklet.resume();
+            if (audioWorklet.isReady()) {
+                audioWorklet.notifyAudioReady();
+            }
+        }
+    }
+
+    /**
+     * Returns true if sound is currently being produce; otherwise false.
+     *
+     * @return
+     */
+    @Override
+    public boolean isPlaying() {
+        if (audioWorklet != null) {
+            logToJSConsole("Audio worklet running? : " + audioWorklet.isRunning());
+            return audioWorklet.isRunning();
+        } else {
+            return writeSamplesEnabled;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        // The SharedQueue and AudioWorklet are reused by the next Machine.
+    }
+
+    /**
+     * Turns on sample writing to the shared queue.
+     */
+    public void enableWriteSamples() {
+        logToJSConsole("Enabling writing of samples...");
+        writeSamplesEnabled = true;
+    }
+
+    /**
+     * Returns whether the sample writing is currently enabled.
+     *
+     * @return true if the sample writing is currently enabled, otherwise false.
+     */
+    public boolean isWriteSamplesEnabled() {
+        return writeSamplesEnabled;
+    }
+
+    /**
+     * Turn off sample writing to the shared queue.
+     */
+    public void disableWriteSamples() {
+        writeSamplesEnabled = false;
+    }
+
+    public SharedQueue getSampleSharedQueue() {
+        return sampleSharedQueue;
+    }
+
+    /**
+     * Returns the target number of samples for the shared queue, i.e.
+     * SAMPLE_LATENCY_MS worth of samples at the current sample rate.
+     *
+     * @return The target number of samples for the shared queue.
+     */
+    public int getSampleLatency() {
+        return sampleLatency;
+    }
+
+    JavaScriptObject getSharedArrayBuffer() {
+        return sampleSharedQueue.getSharedArrayBuffer();
+    }
+
+    private final native void logToJSConsole(String message)/*-{
+        console.log(message);
+    }-*/;
+}
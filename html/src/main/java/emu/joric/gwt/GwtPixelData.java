@@ -4,6 +4,7 @@ import com.badlogic.gdx.graphics.Pixmap;
 import com.google.gwt.canvas.dom.client.Context2d;
 import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.typedarrays.shared.ArrayBufferView;
+import com.google.gwt.typedarrays.shared.DataView;
 import com.google.gwt.typedarrays.shared.Uint8ClampedArray;
 
 import emu.joric.PixelData;
@@ -16,18 +17,36 @@ import emu.joric.PixelData;
  * - It uses a canvas element, not a ByteBuffer, for the pixels.
  * - When the Pixmap is drawn to the Texture, it is directly from the canvas.
  * - Therefore, as long as the canvas is up to date, it will render to the Texture.
- * - And so the updatePixel method simply copies the pixelArray to the canvas image data.
+ * - And so the updatePixmap method converts the colour indexes in the pixelArray to
+ *   RGBA8888 colours in the canvas image data.
  * 
  * Using a SharedArrayBuffer to store the pixel data means that the pixel array 
  * does not need to be transferred to the UI thread after each frame. That would
  * be the alternative approach. We don't really have to worry about synchronising 
  * the SharedArrayBuffer access with Atomics either, as one side is always reading
  * and will not modify.
+ * 
+ * A DataView over the same SharedArrayBuffer is used to write each cell's 6 pixels 
+ * as one 32 bit and one 16 bit little endian write, rather than six single byte writes.
  */
 public class GwtPixelData extends PixelData {
     
+    // The cell masks from PixelData, split into ints, since longs are emulated by GWT.
+    private static final int[] CELL_MASKS_LOW = new int[64];
+    private static final int[] CELL_MASKS_HIGH = new int[64];
+    
+    static {
+        for (int cellData = 0; cellData < 64; cellData++) {
+            CELL_MASKS_LOW[cellData] = (int)CELL_MASKS[cellData];
+            CELL_MASKS_HIGH[cellData] = (int)(CELL_MASKS[cellData] >>> 32);
+        }
+    }
+    
     private Uint8ClampedArray pixelArray;
     
+    // A view of the same SharedArrayBuffer as the pixelArray, for the multi-byte writes.
+    private DataView pixelView;
+    
     /**
      * Constructor for GwtPixelData (used by UI thread)
      */
@@ -41,14 +60,19 @@ public class GwtPixelData extends PixelData {
      */
     public GwtPixelData(JavaScriptObject sharedArrayBuffer) {
         pixelArray = createPixelArray(sharedArrayBuffer);
+        pixelView = createPixelView(sharedArrayBuffer);
     }
     
     private native Uint8ClampedArray createPixelArray(JavaScriptObject sharedArrayBuffer)/*-{
         return new Uint8ClampedArray(sharedArrayBuffer);
     }-*/;
 
+    private native DataView createPixelView(JavaScriptObject sharedArrayBuffer)/*-{
+        return new DataView(sharedArrayBuffer);
+    }-*/;
+
     private native Uint8ClampedArray createPixelArray(int width, int height)/*-{
-        var sharedArrayBuffer = new SharedArrayBuffer(width * height * 4);
+        var sharedArrayBuffer = new SharedArrayBuffer(width * height);
         return new Uint8ClampedArray(sharedArrayBuffer);
     }-*/;
 
@@ -62,17 +86,28 @@ public class GwtPixelData extends PixelData {
         // The actual pixel array is created using a SharedArrayBuffer, so we need
         // to use a native method to do this.
         pixelArray = createPixelArray(width, height);
+        pixelView = createPixelView(getSharedArrayBuffer());
+    }
+
+    @Override
+    public void putPixel(int ulaIndex, int colourIndex) {
+        pixelArray.set(ulaIndex, colourIndex);
     }
 
     @Override
-    public void putPixel(int ulaIndex, int rgba8888Colour) {
-        int index = (ulaIndex << 2);
-        
-        // Adds RGBA8888 colour to byte array in expected R, G, B, A order.
-        pixelArray.set(index, (rgba8888Colour >> 24) & 0xFF);
-        pixelArray.set(index + 1, (rgba8888Colour >> 16) & 0xFF);
-        pixelArray.set(index + 2, (rgba8888Colour >> 8) & 0xFF);
-        pixelArray.set(index + 3, rgba8888Colour & 0xFF);
+    public void putCell(int ulaIndex, int cellData, int ink, int paper) {
+        int lowMask = CELL_MASKS_LOW[cellData & 0x3F];
+        int highMask = CELL_MASKS_HIGH[cellData & 0x3F];
+        int inkBytes = ink * 0x01010101;
+        int paperBytes = paper * 0x01010101;
+        pixelView.setInt32(ulaIndex, (lowMask & inkBytes) | (~lowMask & paperBytes), true);
+        pixelView.setInt16(ulaIndex + 4, (highMask & inkBytes) | (~highMask & paperBytes), true);
+    }
+    
+    @Override
+    public void putCellPixels(int ulaIndex, long pixels) {
+        pixelView.setInt32(ulaIndex, (int)pixels, true);
+        pixelView.setInt16(ulaIndex + 4, (int)(pixels >>> 32), true);
     }
 
     @Override
@@ -83,16 +118,21 @@ public class GwtPixelData extends PixelData {
     }
 
     @Override
-    public void updatePixmap(Pixmap pixmap) {
-        setImageData(pixelArray, pixmap.getWidth(), pixmap.getHeight(), pixmap.getContext());
+    public boolean updatePixmap(Pixmap pixmap) {
+        setImageData(pixelArray, PALETTE, pixmap.getWidth(), pixmap.getHeight(), pixmap.getContext());
+        return true;
     }
     
-    private native static void setImageData (ArrayBufferView pixels, int width, int height, Context2d ctx)/*-{
+    private native static void setImageData (ArrayBufferView pixels, int[] palette, int width, int height, Context2d ctx)/*-{
         var imgData = ctx.createImageData(width, height);
         var data = imgData.data;
     
-        for (var i = 0, len = width * height * 4; i < len; i++) {
-            data[i] = pixels[i] & 0xff;
+        for (var i = 0, j = 0, len = width * height; i < len; i++, j += 4) {
+            var colour = palette[pixels[i]];
+            data[j] = (colour >>> 24) & 0xff;
+            data[j + 1] = (colour >>> 16) & 0xff;
+            data[j + 2] = (colour >>> 8) & 0xff;
+            data[j + 3] = colour & 0xff;
         }
         ctx.putImageData(imgData, 0, 0);
     }-*/;
@@ -32,7 +32,7 @@ public class PSGAudioWorklet {
         this.gwtJOricRunner = gwtJOricRunner;
 
         initialise(sampleSharedQueue.getSharedArrayBuffer(),
-                GwtAYPSG.MAX_SAMPLE_RATE, GwtAYPSG.FALLBACK_SAMPLE_RATE);
+                GwtAudioSink.MAX_SAMPLE_RATE, GwtAudioSink.FALLBACK_SAMPLE_RATE);
     }
 
     /**
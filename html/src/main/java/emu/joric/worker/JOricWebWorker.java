@@ -173,7 +173,7 @@ public class JOricWebWorker extends DedicatedWorkerEntryPoint implements Message
      * each frame. As this is GWT, it does so via a native method below. This particular
      * implementation uses an approach where it only emulates as many cycles required to
      * fill the sample buffer up to a certain number of samples, which is the number of
-     * samples that GwtAYPSG.SAMPLE_LATENCY_MS represents at the current sample rate.
+     * samples that GwtAudioSink.SAMPLE_LATENCY_MS represents at the current sample rate.
      * That value needs to balance protecting against delays in the web worker
      * generating samples, perhaps due to an animation frame being skipped, and not
      * introducing too much delay in the sound that is heard. The 140ms value may not
@@ -228,10 +228,9 @@ public class JOricWebWorker extends DedicatedWorkerEntryPoint implements Message
             }
             
             // Emulate the required number of cycles.
-            do {
-                machine.emulateCycle();
-                cycleCount++;
-            } while (cycleCount <= expectedCycleCount);
+            if (cycleCount <= expectedCycleCount) {
+                cycleCount += machine.runCycles(expectedCycleCount - cycleCount + 1);
+            }
         }
 
         requestNextAnimationFrame();
@@ -254,10 +253,7 @@ public class JOricWebWorker extends DedicatedWorkerEntryPoint implements Message
             // There are 1,000,000 cycles per second, so the delta, which is in
             // milliseconds, so deltaTime * 1000 is the number of cycles to emulate.
             long cyclesToEmulate = Math.round(deltaTime * 1000);
-            do {
-                machine.emulateCycle();
-                cyclesToEmulate--;
-            } while (cyclesToEmulate > 0);
+            machine.runCycles(Math.max(cyclesToEmulate, 1));
         }
         
         lastTime = timestamp;
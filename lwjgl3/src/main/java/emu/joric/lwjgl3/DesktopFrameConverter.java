@@ -0,0 +1,152 @@
+package emu.joric.lwjgl3;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import emu.joric.PixelData;
+
+/**
+ * Converts frames of colour indexes to RGBA8888 colours on desktop, for when the
+ * colours aren't looked up on the GPU by the PaletteShader.
+ *
+ * If the JVM has the incubating jdk.incubator.vector module, i.e. it is JDK 16 or
+ * later and was started with --add-modules jdk.incubator.vector, then the
+ * VectorFrameConverter is used, which converts many pixels at a time with SIMD
+ * instructions. It is loaded by reflection, since it is compiled separately for
+ * Java 17, and it is checked against the scalar conversion before being used. If
+ * it isn't available, or fails that check, then the conversion falls back to the
+ * pairs conversion.
+ *
+ * The pairs conversion reads the colour indexes 2 at a time as a short, and looks
+ * up the pair in a table that holds both RGBA8888 colours in a single long, which
+ * is then written in one go. This halves the number of reads, lookups and writes
+ * of the scalar conversion. The table is indexed directly by the short with the
+ * unused bits of each colour index masked off, so it is sparse, but at 30 KB it
+ * still fits easily in the CPU's cache.
+ *
+ * The FrameConverterBenchmark in the tests compares the speed of the conversions.
+ *
+ * @author Lance Ewing
+ */
+public class DesktopFrameConverter {
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_CONVERTER_CLASS = "emu.joric.lwjgl3.VectorFrameConverter";
+
+    /**
+     * Mask for the colour index bits in a pair of colour indexes read as a short.
+     */
+    private static final int PAIR_MASK = 0x0F0F;
+
+    /**
+     * For each pair of colour indexes, (second << 8) | first, the RGBA8888 colour of
+     * the first index in the high int and the second index in the low int, so that
+     * they're in the right order when written to a big endian buffer.
+     */
+    private static final long[] PAIR_PALETTE = new long[PAIR_MASK + 1];
+
+    static {
+        for (int first = 0; first < 16; first++) {
+            for (int second = 0; second < 16; second++) {
+                PAIR_PALETTE[(second << 8) | first] =
+                        (((long)PixelData.PALETTE[first]) << 32) | (PixelData.PALETTE[second] & 0xFFFFFFFFL);
+            }
+        }
+    }
+
+    /**
+     * The VectorFrameConverter, or null if it isn't available.
+     */
+    private static final FrameConverter VECTOR_CONVERTER = createVectorConverter();
+
+    /**
+     * Converts the given colour indexes to RGBA8888 colours, using the fastest of the
+     * conversions that is available. Invoked by the UI thread.
+     *
+     * @param indexData The colour indexes to convert. Must be little endian.
+     * @param pixels The buffer to write the RGBA8888 colours to, in R, G, B, A byte order.
+     */
+    public static void convert(ByteBuffer indexData, ByteBuffer pixels) {
+        if (VECTOR_CONVERTER != null) {
+            VECTOR_CONVERTER.convert(indexData, pixels);
+        } else {
+            convertPairs(indexData, pixels);
+        }
+    }
+
+    /**
+     * Gets the VectorFrameConverter, if the Vector API is available.
+     *
+     * @return The VectorFrameConverter, or null if it isn't available.
+     */
+    public static FrameConverter getVectorConverter() {
+        return VECTOR_CONVERTER;
+    }
+
+    /**
+     * Loads the VectorFrameConverter, if the Vector API module is present, and checks
+     * that it gives the same colours as the scalar conversion.
+     *
+     * @return The VectorFrameConverter, or null if it isn't available.
+     */
+    private static FrameConverter createVectorConverter() {
+        if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            return null;
+        }
+        try {
+            FrameConverter converter = (FrameConverter)Class.forName(VECTOR_CONVERTER_CLASS)
+                    .getDeclaredConstructor().newInstance();
+
+            // Every pair of colour indexes, plus an odd one on the end.
+            ByteBuffer indexData = ByteBuffer.allocate(513).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < indexData.capacity(); i++) {
+                indexData.put(i, (byte)((i ^ (i >> 4)) & 0x0F));
+            }
+            ByteBuffer expected = ByteBuffer.allocate(indexData.capacity() * 4);
+            ByteBuffer actual = ByteBuffer.allocate(indexData.capacity() * 4);
+            convertScalar(indexData, expected);
+            converter.convert(indexData, actual);
+            return (expected.equals(actual) ? converter : null);
+
+        } catch (Exception | LinkageError e) {
+            // Not compiled in, or compiled for a later Java version than this one.
+            return null;
+        }
+    }
+
+    /**
+     * Converts the given colour indexes to RGBA8888 colours, 2 pixels at a time.
+     *
+     * @param indexData The colour indexes to convert. Must be little endian.
+     * @param pixels The buffer to write the RGBA8888 colours to, in R, G, B, A byte order.
+     */
+    public static void convertPairs(ByteBuffer indexData, ByteBuffer pixels) {
+        ByteBuffer rgbaData = pixels.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int length = indexData.capacity();
+        int pairsLength = (length & ~1);
+
+        // The index buffer is little endian, so the first index is in the low byte.
+        for (int i = 0; i < pairsLength; i += 2) {
+            rgbaData.putLong(i << 2, PAIR_PALETTE[indexData.getShort(i) & PAIR_MASK]);
+        }
+
+        if (pairsLength < length) {
+            rgbaData.putInt(pairsLength << 2, PixelData.PALETTE[indexData.get(pairsLength)]);
+        }
+    }
+
+    /**
+     * Converts the given colour indexes to RGBA8888 colours a pixel at a time. This is
+     * the same as the conversion that the PixelData implementations use by default.
+     *
+     * @param indexData The colour indexes to convert.
+     * @param pixels The buffer to write the RGBA8888 colours to, in R, G, B, A byte order.
+     */
+    public static void convertScalar(ByteBuffer indexData, ByteBuffer pixels) {
+        IntBuffer rgbaData = pixels.duplicate().order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+        for (int i = 0, length = indexData.capacity(); i < length; i++) {
+            rgbaData.put(i, PixelData.PALETTE[indexData.get(i)]);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import java.text.Normalizer.Form;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.utils.TimeUtils;
 
+import emu.joric.AudioClockPacer;
 import emu.joric.JOricRunner;
 import emu.joric.KeyboardMatrix;
 import emu.joric.Machine;
@@ -13,19 +14,29 @@ import emu.joric.MachineType;
 import emu.joric.PixelData;
 import emu.joric.Program;
 import emu.joric.RomConfig;
+import emu.joric.VsyncPacer;
 import emu.joric.config.AppConfigItem;
 import emu.joric.cpu.Cpu6502;
 import emu.joric.memory.RamType;
 import emu.joric.sound.AYPSG;
+import emu.joric.video.FrameScaler;
+import emu.joric.video.PipelinedRasteriser;
+import emu.joric.video.TextureStreamer;
+import emu.joric.video.ThreadedFrameScaler;
 
 public class DesktopJOricRunner extends JOricRunner {
 
     private Thread machineThread;
     
     private Machine machine;
+
+    private AudioClockPacer audioClockPacer;
+    private VsyncPacer vsyncPacer;
     
     public DesktopJOricRunner(KeyboardMatrix keyboardMatrix, PixelData pixelData, AYPSG psg) {
         super(keyboardMatrix, pixelData, psg);
+        this.audioClockPacer = new AudioClockPacer(psg);
+        this.vsyncPacer = new VsyncPacer(psg);
     }
 
     @Override
@@ -65,6 +76,14 @@ public class DesktopJOricRunner extends JOricRunner {
                 MachineType.valueOf(appConfigItem.getMachineType()), 
                 RamType.valueOf(appConfigItem.getRam()));
         
+        // If there is a spare core, then the pixels are rasterised on a separate thread.
+        PipelinedRasteriser rasteriser = null;
+        if (PipelinedRasteriser.isWorthwhile()) {
+            rasteriser = new PipelinedRasteriser(pixelData);
+            rasteriser.start();
+            machine.setRasteriser(rasteriser);
+        }
+
         long lastTime = TimeUtils.nanoTime();
 
         while (true) {
@@ -87,22 +106,41 @@ public class DesktopJOricRunner extends JOricRunner {
 
             if (exit) {
                 // Returning from the method will stop the thread cleanly.
+                if (rasteriser != null) {
+                    rasteriser.stop();
+                }
                 pixelData.clearPixels();
                 break;
             }
 
             // Updates the Machine's state for a frame.
-            machine.update(warpSpeed);
+            machine.setWarpSpeed(warpSpeed);
+            machine.runFrame();
+
+            boolean vsyncPaced = false;
+            if (!warpSpeed && isVsyncPacing() && vsyncPacer.isDisplaySynced()) {
+                // One frame per display refresh, with the audio resampled to match.
+                vsyncPacer.updateAudioRate();
+                vsyncPaced = vsyncPacer.waitForFrame();
+            }
 
-            if (!warpSpeed) {
-                // Throttle at expected FPS. Note that the PSG naturally throttles at 50 FPS
-                // without the yield.
-                while (TimeUtils.nanoTime() - lastTime <= 0L) {
-                    Thread.yield();
-                }
-                lastTime += NANOS_PER_FRAME;
-            } else {
+            if (vsyncPaced) {
                 lastTime = TimeUtils.nanoTime();
+            } else {
+                vsyncPacer.resetAudioRate();
+
+                // The frame length is adjusted to keep pace with the audio output's clock.
+                long frameNanos = audioClockPacer.getFrameNanos(NANOS_PER_FRAME);
+
+                if (!warpSpeed && (frameNanos > 0)) {
+                    // Throttle at expected FPS.
+                    while (TimeUtils.nanoTime() - lastTime <= 0L) {
+                        Thread.yield();
+                    }
+                    lastTime += frameNanos;
+                } else {
+                    lastTime = TimeUtils.nanoTime();
+                }
             }
         }
         
@@ -130,6 +168,11 @@ public class DesktopJOricRunner extends JOricRunner {
         }
     }
     
+    @Override
+    public void displayRefreshed() {
+        vsyncPacer.refresh();
+    }
+
     @Override
     public void reset() {
         exit = false;
@@ -137,6 +180,20 @@ public class DesktopJOricRunner extends JOricRunner {
         machine = null;
     }
 
+    @Override
+    public TextureStreamer createTextureStreamer() {
+        // Stream the screen via pixel buffer objects, if the GL context supports them.
+        if (PboTextureStreamer.isSupported()) {
+            return new PboTextureStreamer();
+        }
+        return super.createTextureStreamer();
+    }
+
+    @Override
+    public FrameScaler createFrameScaler(int width, int height, int scale) {
+        return new ThreadedFrameScaler(pixelData, width, height, scale);
+    }
+
     @Override
     public boolean hasStopped() {
         return ((machineThread != null) && !machineThread.isAlive());
@@ -8,6 +8,8 @@ import com.badlogic.gdx.backends.lwjgl3.Lwjgl3ApplicationConfiguration;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3WindowAdapter;
 
 import emu.joric.JOric;
+import emu.joric.sound.AY38912PSG;
+import emu.joric.sound.RingBufferAudioSink;
 
 /** Launches the desktop (LWJGL3) application. */
 public class DesktopLauncher {
@@ -46,7 +48,7 @@ public class DesktopLauncher {
         DesktopDialogHandler desktopDialogHandler = new DesktopDialogHandler();
         DesktopJOricRunner desktopJOricRunner = new DesktopJOricRunner(
                 new DesktopKeyboardMatrix(), new DesktopPixelData(), 
-                new AY38912PSG());
+                new AY38912PSG(new RingBufferAudioSink(new SourceDataLineAudioSink())));
         JOric joric = new JOric(desktopJOricRunner, desktopDialogHandler, argsMap);
         return new Lwjgl3Application(joric, getDefaultConfiguration(joric));
     }
@@ -0,0 +1,19 @@
+package emu.joric.lwjgl3;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts a frame of colour indexes to RGBA8888 colours.
+ *
+ * @author Lance Ewing
+ */
+public interface FrameConverter {
+
+    /**
+     * Converts the given colour indexes to RGBA8888 colours.
+     *
+     * @param indexData The colour indexes to convert. Must be little endian.
+     * @param pixels The buffer to write the RGBA8888 colours to, in R, G, B, A byte order.
+     */
+    public void convert(ByteBuffer indexData, ByteBuffer pixels);
+}
@@ -0,0 +1,146 @@
+package emu.joric.lwjgl3;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+
+import com.badlogic.gdx.graphics.Texture;
+
+import emu.joric.video.TextureStreamer;
+
+/**
+ * A TextureStreamer that uploads the lines via a ring of pixel buffer objects. The
+ * changed lines are copied into a mapped pixel buffer, and then glTexSubImage2D is
+ * given offsets into that buffer, rather than client memory. This means that the
+ * call returns straight away and the GPU copies the pixels to the Texture in its
+ * own time. Each pixel buffer is orphaned before being mapped, and the buffers are
+ * used in turn, so the CPU never has to wait for the GPU to finish with a buffer.
+ *
+ * @author Lance Ewing
+ */
+public class PboTextureStreamer extends TextureStreamer {
+
+    private static final int NUM_OF_BUFFERS = 3;
+
+    /**
+     * The IDs of the ring of pixel buffer objects.
+     */
+    private int[] bufferIds;
+
+    /**
+     * The index of the pixel buffer object to use for the next upload.
+     */
+    private int nextBuffer;
+
+    /**
+     * The pixel buffer object that is mapped for the current upload.
+     */
+    private ByteBuffer mappedBuffer;
+
+    /**
+     * The start line and number of lines for each run of lines in the current upload.
+     */
+    private int[] runs;
+    private int numOfRuns;
+
+    /**
+     * Whether the current upload fell back to uploading from client memory, due to
+     * the pixel buffer object failing to map.
+     */
+    private boolean fallback;
+
+    /**
+     * Constructor for PboTextureStreamer.
+     */
+    public PboTextureStreamer() {
+        bufferIds = new int[NUM_OF_BUFFERS];
+        GL15.glGenBuffers(bufferIds);
+        runs = new int[0];
+    }
+
+    /**
+     * Checks whether the current GL context supports pixel buffer objects. This must
+     * be called on the GL thread.
+     *
+     * @return true if pixel buffer objects are supported.
+     */
+    public static boolean isSupported() {
+        return GL.getCapabilities().OpenGL21;
+    }
+
+    @Override
+    public void begin(Texture texture, ByteBuffer pixels, int bytesPerPixel, int glFormat, int glType) {
+        this.texture = texture;
+        this.pixels = pixels;
+        this.bytesPerLine = texture.getWidth() * bytesPerPixel;
+        this.glFormat = glFormat;
+        this.glType = glType;
+
+        int size = texture.getHeight() * bytesPerLine;
+        if (runs.length < texture.getHeight() * 2) {
+            runs = new int[texture.getHeight() * 2];
+        }
+        numOfRuns = 0;
+
+        // Orphan the buffer's previous storage, in case the GPU is still reading it.
+        GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, bufferIds[nextBuffer]);
+        GL15.glBufferData(GL21.GL_PIXEL_UNPACK_BUFFER, size, GL15.GL_STREAM_DRAW);
+        mappedBuffer = GL15.glMapBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, GL15.GL_WRITE_ONLY, size, mappedBuffer);
+
+        fallback = (mappedBuffer == null);
+        if (fallback) {
+            GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+            super.begin(texture, pixels, bytesPerPixel, glFormat, glType);
+        }
+    }
+
+    @Override
+    public void drawLines(int startLine, int numOfLines) {
+        if (fallback) {
+            super.drawLines(startLine, numOfLines);
+            return;
+        }
+
+        // Copy the lines into the same position within the mapped buffer.
+        ByteBuffer lines = pixels.duplicate();
+        lines.limit((startLine + numOfLines) * bytesPerLine);
+        lines.position(startLine * bytesPerLine);
+        mappedBuffer.position(startLine * bytesPerLine);
+        mappedBuffer.put(lines);
+
+        runs[numOfRuns++] = startLine;
+        runs[numOfRuns++] = numOfLines;
+    }
+
+    @Override
+    public void end() {
+        if (fallback) {
+            super.end();
+            return;
+        }
+
+        mappedBuffer.clear();
+        GL15.glUnmapBuffer(GL21.GL_PIXEL_UNPACK_BUFFER);
+
+        // The pixels parameter is an offset into the bound pixel buffer object.
+        texture.bind();
+        GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+        for (int i = 0; i < numOfRuns; i += 2) {
+            GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, runs[i], texture.getWidth(), runs[i + 1],
+                    glFormat, glType, (long)runs[i] * bytesPerLine);
+        }
+
+        GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+        nextBuffer = (nextBuffer + 1) % NUM_OF_BUFFERS;
+        texture = null;
+        pixels = null;
+    }
+
+    @Override
+    public void dispose() {
+        GL15.glDeleteBuffers(bufferIds);
+    }
+}
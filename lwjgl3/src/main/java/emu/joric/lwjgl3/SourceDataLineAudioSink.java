@@ -0,0 +1,201 @@
+package emu.joric.lwjgl3;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import emu.joric.sound.AudioSink;
+
+/**
+ * AudioSink for the desktop platform, which plays the samples via a Java Sound
+ * SourceDataLine, as signed 16 bit little endian PCM.
+ *
+ * @author Lance Ewing
+ */
+public class SourceDataLineAudioSink implements AudioSink {
+
+    private static final int SAMPLE_RATE = 22050;
+
+    // The audio line's buffer holds 200ms of samples, which are written in blocks of 20ms.
+    private static final int AUDIO_BUFFER_SIZE = ((((SAMPLE_RATE / 5) * 2) / 10) * 10);
+    private static final int BLOCK_SIZE = (AUDIO_BUFFER_SIZE / 10) / 2;
+
+    // Diagnostic logging in writeSamples (drop events, top-up events, periodic
+    // stats) is gated on this flag. Disabled by default so the released build
+    // is silent. Flip to true when investigating audio drift / glitches on a
+    // specific OS or audio backend; the JIT will eliminate the dead branches
+    // when false so there is no runtime cost in the disabled state.
+    private static final boolean DIAGNOSTIC_LOGGING = false;
+
+    // Counters for top-up / drop events in writeSamples, used only by the
+    // periodic stats logging gated by DIAGNOSTIC_LOGGING. Increments are also
+    // gated so the fields stay at zero in normal runs.
+    private long flushCount = 0;
+    private long topupCount = 0;
+    private long dropCount = 0;
+
+    private SourceDataLine audioLine;
+
+    // The block of samples, converted to bytes for the audio line.
+    private byte[] sampleBuffer;
+
+    /**
+     * Constructor for SourceDataLineAudioSink.
+     */
+    public SourceDataLineAudioSink() {
+        sampleBuffer = new byte[BLOCK_SIZE * 2];
+    }
+
+    @Override
+    public void open() {
+        if (audioLine != null) {
+            return;
+        }
+        try {
+            // PCM SIGNED, 16 bit, mono, 2 bytes/frame, little-endian, 200ms buffer
+            // size. writeSamples manages the buffer usage, targeting 50-60% fullness
+            // which gives us ~120ms latency (same as our web version) with a good
+            // margin for jitter and drift that should minimise audio glitches.
+            AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+            DataLine.Info info = new DataLine.Info(SourceDataLine.class, format, AUDIO_BUFFER_SIZE);
+            audioLine = (SourceDataLine)AudioSystem.getLine(info);
+            // We need to pass AUDIO_BUFFER_SIZE to open(format, bufferSize) explicitly
+            // since the value in the DataLine.Info above is only a hint for line
+            // selection. audioLine.open() with no args uses whatever the
+            // implementation-defined default is (e.g. ~32KB on macOS Java Sound,
+            // regardless of what we requested in the Info).
+            audioLine.open(format, AUDIO_BUFFER_SIZE);
+            audioLine.start();
+        } catch (LineUnavailableException lue) {
+            audioLine = null;
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return SAMPLE_RATE;
+    }
+
+    @Override
+    public int getBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    /**
+     * Converts the block of samples to signed 16 bit PCM and writes it out to the
+     * audio line, with drift management: the block is dropped if the audio line
+     * buffer is already nearly full (indicating over-production drift), or the
+     * buffer is topped up with silence to the mid-point if it's nearly empty
+     * (under-production drift, or initial startup pre-fill). Drift in either
+     * direction can arise from small mismatches between the emulator's effective
+     * sample-production rate (based on system clock) and the audio hardware's
+     * consumption rate (based on audio hardware clock, which may or may not be the
+     * same as the system clock depending on the hardware). Drift correction actions
+     * can result in audible clicks/pops if real audio is being played (non-silence),
+     * but in normal operation of the emulator should occur very infrequently since
+     * the drift rate should be very small and the drift corrections are applied in
+     * relatively large chunks (equivalent to one full block at a time) rather than
+     * in smaller more frequent increments.
+     */
+    @Override
+    public void writeSamples(float[] samples, int count) {
+        if (audioLine == null) {
+            return;
+        }
+
+        for (int i = 0, offset = 0; i < count; i++, offset += 2) {
+            int int16Sample = (int)(samples[i] * 32767f);
+            sampleBuffer[offset + 0] = (byte)(int16Sample & 0x00FF);
+            sampleBuffer[offset + 1] = (byte)((int16Sample & 0xFF00) >> 8);
+        }
+
+        if (DIAGNOSTIC_LOGGING) flushCount++;
+        int audioBufferSize = audioLine.getBufferSize();
+        int flushBytes = count * 2;
+        int midPointBytes = audioBufferSize / 2;
+        int topupThresholdBytes = midPointBytes - 2 * flushBytes;
+        int dropThresholdBytes = midPointBytes + 3 * flushBytes;
+        int fullnessBytes = audioBufferSize - audioLine.available();
+
+        if (fullnessBytes > dropThresholdBytes) {
+            // The audioLine buffer is overly full. Drop this block. Audio line will
+            // drain by one block's worth of playback before the next flush
+            // occurs, pulling fullness back toward the desired mid-point.
+            if (DIAGNOSTIC_LOGGING) {
+                dropCount++;
+                System.out.println("SourceDataLineAudioSink: drop flush, fullness="
+                        + (fullnessBytes * 1000L / (SAMPLE_RATE * 2)) + "ms");
+            }
+        } else if (fullnessBytes < topupThresholdBytes) {
+            // The audioLine buffer is overly empty. Top up with silence to bring
+            // fullness exactly to the mid-point, then perform the flush.
+            int topupBytes = midPointBytes - fullnessBytes;
+            topupBytes = (topupBytes / 2) * 2;   // ensure even (16-bit alignment)
+            if (topupBytes > 0) {
+                byte[] silence = new byte[topupBytes];
+                audioLine.write(silence, 0, silence.length);
+            }
+            audioLine.write(sampleBuffer, 0, flushBytes);
+            if (DIAGNOSTIC_LOGGING) {
+                topupCount++;
+                System.out.println("SourceDataLineAudioSink: top-up flush, fullness="
+                        + (fullnessBytes * 1000L / (SAMPLE_RATE * 2)) + "ms, topup="
+                        + (topupBytes * 1000L / (SAMPLE_RATE * 2)) + "ms");
+            }
+        } else {
+            // Normal flush.
+            audioLine.write(sampleBuffer, 0, flushBytes);
+        }
+
+        // Periodic stats every 500 flushes (~10s at 20ms/flush).
+        if (DIAGNOSTIC_LOGGING && (flushCount % 500) == 0) {
+            int currentFullnessBytes = audioBufferSize - audioLine.available();
+            System.out.println("SourceDataLineAudioSink: stats, flushes=" + flushCount
+                    + ", top-ups=" + topupCount + ", drops=" + dropCount
+                    + ", currentFullness=" + (currentFullnessBytes * 1000L / (SAMPLE_RATE * 2)) + "ms");
+        }
+    }
+
+    @Override
+    public int getQueuedSampleCount() {
+        SourceDataLine line = audioLine;
+        if ((line == null) || !line.isOpen()) {
+            return -1;
+        }
+        return (line.getBufferSize() - line.available()) / 2;
+    }
+
+    @Override
+    public void pause() {
+        if (audioLine != null) {
+            audioLine.stop();
+        }
+    }
+
+    @Override
+    public void resume() {
+        if (audioLine != null) {
+            audioLine.start();
+        }
+    }
+
+    @Override
+    public boolean isPlaying() {
+        if (audioLine != null) {
+            return audioLine.isRunning();
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if (audioLine != null) {
+            audioLine.stop();
+            audioLine.close();
+            audioLine = null;
+        }
+    }
+}
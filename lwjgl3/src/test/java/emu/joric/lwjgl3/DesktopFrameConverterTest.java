@@ -0,0 +1,71 @@
+package emu.joric.lwjgl3;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the DesktopFrameConverter's conversions all produce the same RGBA8888
+ * colours as the scalar conversion. The vector conversion is only tested if the
+ * jdk.incubator.vector module was added to the test JVM.
+ *
+ * @author Lance Ewing
+ */
+public class DesktopFrameConverterTest {
+
+    private static final int WIDTH = 240;
+    private static final int HEIGHT = 224;
+
+    private ByteBuffer indexData;
+
+    private ByteBuffer expected;
+
+    @Before
+    public void setup() {
+        // A frame of random colour indexes, including the inverse video ones, plus
+        // an odd one on the end so that the tail handling is tested.
+        indexData = ByteBuffer.allocateDirect((WIDTH * HEIGHT) + 1).order(ByteOrder.LITTLE_ENDIAN);
+        Random random = new Random(1);
+        for (int i = 0; i < indexData.capacity(); i++) {
+            indexData.put(i, (byte)random.nextInt(16));
+        }
+        expected = ByteBuffer.allocateDirect(indexData.capacity() * 4);
+        DesktopFrameConverter.convertScalar(indexData, expected);
+    }
+
+    private void assertConversion(FrameConverter converter) {
+        ByteBuffer pixels = ByteBuffer.allocateDirect(indexData.capacity() * 4);
+        converter.convert(indexData, pixels);
+        assertEquals(expected, pixels);
+    }
+
+    @Test
+    public void testScalarColours() {
+        for (int i = 0; i < 16; i++) {
+            assertEquals(DesktopPixelData.PALETTE[indexData.get(i)], expected.order(ByteOrder.BIG_ENDIAN).getInt(i * 4));
+        }
+    }
+
+    @Test
+    public void testPairsConversion() {
+        assertConversion(DesktopFrameConverter::convertPairs);
+    }
+
+    @Test
+    public void testVectorConversion() {
+        FrameConverter vectorConverter = DesktopFrameConverter.getVectorConverter();
+        if (vectorConverter != null) {
+            assertConversion(vectorConverter);
+        }
+    }
+
+    @Test
+    public void testConversion() {
+        assertConversion(DesktopFrameConverter::convert);
+    }
+}
@@ -0,0 +1,61 @@
+package emu.joric.lwjgl3;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * Compares the speed of the DesktopFrameConverter's conversions, for frames of the
+ * size that the ULA produces. This isn't run by the build, since timings are only
+ * meaningful on an otherwise idle machine. Run it with the frameConverterBenchmark
+ * Gradle task, which also adds the jdk.incubator.vector module when the JDK has it,
+ * so that the vector conversion is included. That the conversions all produce the
+ * same colours is checked by the DesktopFrameConverterTest.
+ *
+ * @author Lance Ewing
+ */
+public class FrameConverterBenchmark {
+
+    private static final int WIDTH = 240;
+    private static final int HEIGHT = 224;
+    private static final int WARMUP_FRAMES = 20000;
+    private static final int TIMED_FRAMES = 20000;
+
+    public static void main(String[] args) {
+        ByteBuffer indexData = ByteBuffer.allocateDirect(WIDTH * HEIGHT).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer pixels = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4);
+
+        // Random colour indexes, including the inverse video ones.
+        Random random = new Random(1);
+        for (int i = 0; i < indexData.capacity(); i++) {
+            indexData.put(i, (byte)random.nextInt(16));
+        }
+
+        long scalarTime = time(DesktopFrameConverter::convertScalar, indexData, pixels);
+        report("Scalar", scalarTime, scalarTime);
+        report("Pairs", time(DesktopFrameConverter::convertPairs, indexData, pixels), scalarTime);
+
+        FrameConverter vectorConverter = DesktopFrameConverter.getVectorConverter();
+        if (vectorConverter != null) {
+            report("Vector", time(vectorConverter, indexData, pixels), scalarTime);
+        } else {
+            System.out.println("Vector: not available");
+        }
+    }
+
+    private static long time(FrameConverter converter, ByteBuffer indexData, ByteBuffer pixels) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            converter.convert(indexData, pixels);
+        }
+        long startTime = System.nanoTime();
+        for (int i = 0; i < TIMED_FRAMES; i++) {
+            converter.convert(indexData, pixels);
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    private static void report(String name, long time, long scalarTime) {
+        System.out.println(String.format("%-7s %.1f us per frame, %.2fx", name + ":",
+                (time / 1000.0) / TIMED_FRAMES, ((double)scalarTime / time)));
+    }
+}
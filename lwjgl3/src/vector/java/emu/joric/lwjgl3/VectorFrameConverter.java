@@ -0,0 +1,79 @@
+package emu.joric.lwjgl3;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import emu.joric.PixelData;
+
+/**
+ * A FrameConverter that uses the incubating Vector API to convert as many pixels at a
+ * time as the CPU's SIMD registers hold. This is compiled separately from the rest of
+ * the desktop module, for Java 17, and is only loaded by the DesktopFrameConverter if
+ * the jdk.incubator.vector module is present at run time.
+ *
+ * Rather than looking up each colour in the palette, the RGBA8888 colour is worked
+ * out from the bits of the colour index. Bits 0, 1 and 2 are red, green and blue,
+ * and the INVERSE bit inverts all three. Each component is either fully on or off,
+ * and the alpha is always fully on.
+ *
+ * The Vector API's ByteBuffer methods changed between JDK versions, so the frame is
+ * converted between arrays, which are then copied to and from the buffers in bulk.
+ * The colours are worked out with the bytes reversed, so that the copy to the
+ * Pixmap's buffer doesn't have to swap them.
+ * The arrays are reused, so this is not thread safe. It is only used by the UI thread.
+ *
+ * @author Lance Ewing
+ */
+public class VectorFrameConverter implements FrameConverter {
+
+    private static final VectorSpecies<Byte> BYTE_SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+
+    // The number of int vectors that each byte vector of colour indexes widens to.
+    private static final int PARTS = BYTE_SPECIES.length() / INT_SPECIES.length();
+
+    private byte[] indexes = new byte[0];
+    private int[] colours = new int[0];
+
+    @Override
+    public void convert(ByteBuffer indexData, ByteBuffer pixels) {
+        int length = indexData.capacity();
+        if (indexes.length != length) {
+            indexes = new byte[length];
+            colours = new int[length];
+        }
+        indexData.duplicate().position(0).get(indexes);
+
+        int vectorLength = BYTE_SPECIES.loopBound(length);
+        for (int i = 0; i < vectorLength; i += BYTE_SPECIES.length()) {
+            ByteVector indexVector = ByteVector.fromArray(BYTE_SPECIES, indexes, i);
+            for (int part = 0; part < PARTS; part++) {
+                IntVector index = (IntVector)indexVector.convertShape(VectorOperators.B2I, INT_SPECIES, part);
+                // RGB bits, inverted if the INVERSE bit is set.
+                IntVector rgb = index.and(7).lanewise(VectorOperators.XOR,
+                        index.lanewise(VectorOperators.LSHR, 3).and(1).neg().and(7));
+                // Negating a set bit sets all the bits above it, which is then masked
+                // down to that component's byte. The components are in reverse order,
+                // so that the colours are in R, G, B, A byte order when little endian.
+                IntVector colour = rgb.and(1).neg().and(0x000000FF)
+                        .or(rgb.and(2).neg().and(0x0000FF00))
+                        .or(rgb.and(4).neg().and(0x00FF0000))
+                        .or(0xFF000000);
+                colour.intoArray(colours, i + (part * INT_SPECIES.length()));
+            }
+        }
+        for (int i = vectorLength; i < length; i++) {
+            colours[i] = Integer.reverseBytes(PixelData.PALETTE[indexes[i] & 0x0F]);
+        }
+
+        // On little endian CPUs, this is a straight copy.
+        IntBuffer rgbaData = pixels.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        rgbaData.put(colours, 0, length);
+    }
+}